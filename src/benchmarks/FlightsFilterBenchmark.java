@@ -0,0 +1,220 @@
+package benchmarks;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.EpochKernels;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.Operators;
+import com.gridnine.testing.utils.TypeOfFlight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of FlightsFilter on synthetic data from {@link FlightGenerator}.
+ * Throughput (ops/s) and sample time (latency percentiles) are reported for every size,
+ * allocation rate is reported by the GC profiler enabled in {@link #main(String[])}.
+ * Requires jmh-core and jmh-generator-annprocess on the compile classpath. Sizes can be overridden,
+ * e.g. {@code -p size=30000000} for the columnar benchmark still fits the default 4 GB fork: the two epoch columns take
+ * 16 bytes per segment, about 2.5 segments per flight, so 10^8 flights need about 4 GB of columns alone
+ * and a larger heap, e.g. {@code -p size=100000000 -jvmArgsAppend -Xmx10g}.
+ * Object lists above 10^7 flights need a very large heap.
+ * <p>
+ * The Vector API kernels live in the separate source root src/vector, compiled next to the main classes with
+ * {@code javac --add-modules jdk.incubator.vector}; the forks are started with the same flag, so EpochKernels uses them
+ * and {@link #compareScalar} and {@link #compareVector} compare them with the scalar ones.
+ * Without src/vector on the classpath, or with {@code -jvmArgsAppend -Dgridnine.vectorKernels=false}, every batch benchmark
+ * measures the scalar kernels and compareVector equals compareScalar.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class FlightsFilterBenchmark {
+    private static final long SEED = 20240101L;
+    private static final long START_EPOCH = 1_700_000_000L;
+    private static final long WINDOW_SECONDS = Duration.ofDays(30).toSeconds();
+
+    private static FlightGenerator generator(double invalidSegmentRatio) {
+        return new FlightGenerator(SEED)
+                .departures(START_EPOCH, WINDOW_SECONDS)
+                .segments(1, 4)
+                .invalidSegmentRatio(invalidSegmentRatio)
+                .groundTime(FlightGenerator.GroundTime.EXPONENTIAL, Duration.ofMinutes(90).toSeconds());
+    }
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+        @Param({"1000", "100000", "1000000"})
+        public int size;
+
+        @Param({"0.01"})
+        public double invalidSegmentRatio;
+
+        @Param({"false", "true"})
+        public boolean parallel;
+
+        public List<Flight> flightList;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            flightList = generator(invalidSegmentRatio).createFlights(size);
+        }
+
+        FlightsFilter mode(FlightsFilter flightsFilter) {
+            return parallel ? flightsFilter.doParallel() : flightsFilter.doSequential();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColumnarDataset {
+        @Param({"1000", "1000000", "10000000"})
+        public int size;
+
+        @Param({"false", "true"})
+        public boolean parallel;
+
+        public ColumnarDataBase columnarDataBase;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            columnarDataBase = generator(0.01).createColumnarDataBase(size);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class EpochColumn {
+        @Param({"1024", "1000000"})
+        public int size;
+
+        public long[] epochs;
+        public long operand;
+        public long[] mask;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            epochs = new SplittableRandom(SEED).longs(size, START_EPOCH, START_EPOCH + WINDOW_SECONDS).toArray();
+            operand = START_EPOCH + WINDOW_SECONDS / 2;
+            mask = new long[EpochKernels.maskLength(size)];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Condition {
+        @Param({"EQUALS", "GREATER_OR_EQUALS", "GREATER", "LESS", "LESS_OR_EQUALS"})
+        public Operators operator;
+
+        @Param({"ARRIVAL", "DEPARTURE"})
+        public TypeOfFlight typeOfFlight;
+
+        public FlightsFilter flightsFilter;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            FlightsFilterBuilder builder = new FlightsFilterBuilder();
+            builder = typeOfFlight == TypeOfFlight.ARRIVAL ? builder.arrival() : builder.departure();
+            long middleOfWindow = START_EPOCH + WINDOW_SECONDS / 2;
+            switch (operator) {
+                case EQUALS:
+                    builder.equals(middleOfWindow);
+                    break;
+                case GREATER_OR_EQUALS:
+                    builder.greater_or_equals(middleOfWindow);
+                    break;
+                case GREATER:
+                    builder.greater(middleOfWindow);
+                    break;
+                case LESS:
+                    builder.less(middleOfWindow);
+                    break;
+                case LESS_OR_EQUALS:
+                    builder.less_or_equals(middleOfWindow);
+                    break;
+            }
+            flightsFilter = builder.build();
+        }
+    }
+
+    private static final FlightsFilter IDLE_FILTER = new FlightsFilterBuilder()
+            .idleOnTheGround().greater(Duration.ofHours(2).toSeconds())
+            .build();
+
+    private static final FlightsFilter INVALID_FILTER = new FlightsFilterBuilder()
+            .removeInvalidFlights()
+            .build();
+
+    private static final FlightsFilter COMBINED_FILTER = new FlightsFilterBuilder()
+            .departure().greater_or_equals(START_EPOCH + Duration.ofDays(10).toSeconds()).less(START_EPOCH + Duration.ofDays(11).toSeconds())
+            .arrival().less(START_EPOCH + Duration.ofDays(12).toSeconds())
+            .idleOnTheGround().less_or_equals(Duration.ofHours(2).toSeconds())
+            .removeInvalidFlights()
+            .build();
+
+    @Benchmark
+    public List<Flight> condition(Dataset dataset, Condition condition) {
+        return dataset.mode(condition.flightsFilter).filter(dataset.flightList);
+    }
+
+    @Benchmark
+    public List<Flight> idle(Dataset dataset) {
+        return dataset.mode(IDLE_FILTER).filter(dataset.flightList);
+    }
+
+    @Benchmark
+    public List<Flight> invalid(Dataset dataset) {
+        return dataset.mode(INVALID_FILTER).filter(dataset.flightList);
+    }
+
+    @Benchmark
+    public List<Flight> combined(Dataset dataset) {
+        return dataset.mode(COMBINED_FILTER).filter(dataset.flightList);
+    }
+
+    @Benchmark
+    public List<Flight> combinedColumnar(ColumnarDataset dataset) {
+        FlightsFilter flightsFilter = dataset.parallel ? COMBINED_FILTER.doParallel() : COMBINED_FILTER;
+        return flightsFilter.filter(dataset.columnarDataBase);
+    }
+
+    @Benchmark
+    public long[] compareScalar(EpochColumn column) {
+        EpochKernels.compareScalar(column.epochs, 0, column.size, Operators.GREATER_OR_EQUALS, column.operand, column.mask);
+        return column.mask;
+    }
+
+    @Benchmark
+    public long[] compareVector(EpochColumn column) {
+        EpochKernels.compare(column.epochs, 0, column.size, Operators.GREATER_OR_EQUALS, column.operand, column.mask);
+        return column.mask;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FlightsFilterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -2,33 +2,40 @@ package com.gridnine.testing;
 
 import com.gridnine.testing.dataBase.FlightsDB;
 import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.export.FlightExporter;
 import com.gridnine.testing.utils.FlightsFilter;
 import com.gridnine.testing.domain.Flight;
 import com.gridnine.testing.utils.FlightsFilterBuilder;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class Main {
-    private static String listToString(List<?> list) {
-        return list.stream()
-                .map(element -> element.toString() + "\r\n")
-                .collect(Collectors.joining());
+    private static final FlightExporter EXPORTER = new FlightExporter(FlightExporter.Format.TEXT);
+    private static final WritableByteChannel OUT = Channels.newChannel(System.out);
+
+    private static void printList(String title, List<Flight> list) throws IOException {
+        System.out.println(title);
+        System.out.flush();
+        EXPORTER.export(list, OUT);
+        System.out.println();
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         long currentEpoch = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
         List<Flight> flightList = FlightsDB.getInstance(new DataBaseImpl()).getAll();
         FlightsFilter currentTimeFlightsFilter = new FlightsFilterBuilder().departure().less(currentEpoch).build();
         FlightsFilter invalidFlightsFilter = new FlightsFilterBuilder().removeInvalidFlights().build();
         FlightsFilter idleFlightsFilter = new FlightsFilterBuilder().idleOnTheGround().greater(Duration.ofHours(2).toSeconds()).build();
         System.out.println("[Текущее время: " + LocalDateTime.now() + "]");
-        System.out.println("--------------------------------Все вылеты--------------------------------\r\n" + listToString(flightList));
-        System.out.println("--------------------Вылеты до текущего момента времени--------------------\r\n" + listToString(currentTimeFlightsFilter.filter(flightList)));
-        System.out.println("------------Без сегментов с датой прилёта раньше даты вылета--------------\r\n" + listToString(invalidFlightsFilter.filter(flightList)));
-        System.out.println("----------Общее время, проведённое на земле превышает два часа------------\r\n" + listToString(idleFlightsFilter.filter(flightList)));
+        printList("--------------------------------Все вылеты--------------------------------", flightList);
+        printList("--------------------Вылеты до текущего момента времени--------------------", currentTimeFlightsFilter.filter(flightList));
+        printList("------------Без сегментов с датой прилёта раньше даты вылета--------------", invalidFlightsFilter.filter(flightList));
+        printList("----------Общее время, проведённое на земле превышает два часа------------", idleFlightsFilter.filter(flightList));
     }
 }
@@ -0,0 +1,110 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.domain.SegmentView;
+import com.gridnine.testing.interfaces.DataBase;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Колоночное хранилище рейсов поверх NIO-буферов (отображённый в память файл или память вне кучи).
+ * Раскладка та же, что у {@link ColumnarDataBase}: колонки эпох отправления и прибытия и таблица смещений рейсов.
+ * Объекты Flight создаются только по запросу, их сегменты читаются из буферов при каждом обращении.
+ */
+public abstract class BufferDataBase implements DataBase<Flight> {
+    private final LongBuffer departureEpochs;
+    private final LongBuffer arrivalEpochs;
+    private final IntBuffer flightOffsets;
+    private final List<Flight> flightView = new FlightView();
+
+    protected BufferDataBase(LongBuffer departureEpochs, LongBuffer arrivalEpochs, IntBuffer flightOffsets) {
+        if (departureEpochs.limit() != arrivalEpochs.limit())
+            throw new IllegalArgumentException("BufferDataBase: departure and arrival columns differ in length");
+        if (flightOffsets.limit() == 0 || flightOffsets.get(flightOffsets.limit() - 1) != departureEpochs.limit())
+            throw new IllegalArgumentException("BufferDataBase: last flight offset must be equal to the segment count");
+        this.departureEpochs = departureEpochs;
+        this.arrivalEpochs = arrivalEpochs;
+        this.flightOffsets = flightOffsets;
+    }
+
+    public int getFlightCount() {
+        return flightOffsets.limit() - 1;
+    }
+
+    public int getSegmentCount() {
+        return departureEpochs.limit();
+    }
+
+    /**
+     * Buffers are shared, only absolute get methods must be used on them.
+     */
+    public LongBuffer getDepartureEpochs() {
+        return departureEpochs;
+    }
+
+    public LongBuffer getArrivalEpochs() {
+        return arrivalEpochs;
+    }
+
+    public IntBuffer getFlightOffsets() {
+        return flightOffsets;
+    }
+
+    /**
+     * @return flyweight flight whose segments are decoded from the buffers each time they are read
+     */
+    public Flight getFlight(int flightIndex) {
+        return new Flight(new BufferSegments(flightOffsets.get(flightIndex), flightOffsets.get(flightIndex + 1)));
+    }
+
+    private class BufferSegments extends SegmentView {
+        private final int from;
+        private final int to;
+
+        private BufferSegments(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Segment get(int index) {
+            int segmentIndex = from + Objects.checkIndex(index, size());
+            return new Segment(
+                    LocalDateTime.ofEpochSecond(departureEpochs.get(segmentIndex), 0, ZoneOffset.UTC),
+                    LocalDateTime.ofEpochSecond(arrivalEpochs.get(segmentIndex), 0, ZoneOffset.UTC));
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * Returns a read-only view that decodes flights on access.
+     */
+    @Override
+    public List<Flight> getAll() {
+        return flightView;
+    }
+
+    private class FlightView extends AbstractList<Flight> implements RandomAccess {
+        @Override
+        public Flight get(int index) {
+            return getFlight(Objects.checkIndex(index, size()));
+        }
+
+        @Override
+        public int size() {
+            return getFlightCount();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightBuilder;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.domain.SegmentView;
+import com.gridnine.testing.interfaces.DataBase;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Колоночное хранилище рейсов. Сегменты хранятся в виде параллельных массивов
+ * departureEpochs / arrivalEpochs (секунды UTC), а flightOffsets[i]..flightOffsets[i + 1]
+ * задаёт диапазон сегментов рейса i. Объекты Flight создаются только по запросу.
+ * Для пропуска данных при фильтрации хранилище строит сводки по блокам рейсов ({@link ZoneMap}).
+ */
+public class ColumnarDataBase implements DataBase<Flight> {
+    private final long[] departureEpochs;
+    private final long[] arrivalEpochs;
+    private final int[] flightOffsets;
+    private final List<Flight> flightView = new FlightView();
+    private volatile ZoneMap zoneMap;
+
+    public ColumnarDataBase() {
+        this(FlightBuilder.createFlights());
+    }
+
+    public ColumnarDataBase(List<Flight> flightList) {
+        int segmentCount = 0;
+        for (Flight flight : flightList) {
+            segmentCount += flight.getSegments().size();
+        }
+        departureEpochs = new long[segmentCount];
+        arrivalEpochs = new long[segmentCount];
+        flightOffsets = new int[flightList.size() + 1];
+        int segmentIndex = 0;
+        for (int flightIndex = 0; flightIndex < flightList.size(); flightIndex++) {
+            flightOffsets[flightIndex] = segmentIndex;
+            for (Segment segment : flightList.get(flightIndex).getSegments()) {
+                departureEpochs[segmentIndex] = segment.getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+                arrivalEpochs[segmentIndex] = segment.getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+                segmentIndex++;
+            }
+        }
+        flightOffsets[flightList.size()] = segmentIndex;
+    }
+
+    /**
+     * @param departureEpochs departure time of every segment, epoch seconds UTC
+     * @param arrivalEpochs   arrival time of every segment, epoch seconds UTC
+     * @param flightOffsets   index of the first segment of every flight, followed by the total segment count
+     */
+    public ColumnarDataBase(long[] departureEpochs, long[] arrivalEpochs, int[] flightOffsets) {
+        if (departureEpochs.length != arrivalEpochs.length)
+            throw new IllegalArgumentException("ColumnarDataBase: departure and arrival columns differ in length");
+        if (flightOffsets.length == 0 || flightOffsets[flightOffsets.length - 1] != departureEpochs.length)
+            throw new IllegalArgumentException("ColumnarDataBase: last flight offset must be equal to the segment count");
+        this.departureEpochs = departureEpochs;
+        this.arrivalEpochs = arrivalEpochs;
+        this.flightOffsets = flightOffsets;
+    }
+
+    public int getFlightCount() {
+        return flightOffsets.length - 1;
+    }
+
+    public int getSegmentCount() {
+        return departureEpochs.length;
+    }
+
+    public long[] getDepartureEpochs() {
+        return departureEpochs;
+    }
+
+    public long[] getArrivalEpochs() {
+        return arrivalEpochs;
+    }
+
+    public int[] getFlightOffsets() {
+        return flightOffsets;
+    }
+
+    /**
+     * @return block summaries, built with the default block size on first use
+     */
+    public ZoneMap getZoneMap() {
+        ZoneMap result = zoneMap;
+        if (result == null) {
+            synchronized (this) {
+                result = zoneMap;
+                if (result == null)
+                    zoneMap = result = new ZoneMap(departureEpochs, arrivalEpochs, flightOffsets, ZoneMap.DEFAULT_BLOCK_SIZE);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the block summaries with another block size.
+     */
+    public synchronized ZoneMap createZoneMap(int blockSize) {
+        zoneMap = new ZoneMap(departureEpochs, arrivalEpochs, flightOffsets, blockSize);
+        return zoneMap;
+    }
+
+    public Flight getFlight(int flightIndex) {
+        int from = flightOffsets[flightIndex];
+        int to = flightOffsets[flightIndex + 1];
+        Segment[] segments = new Segment[to - from];
+        for (int segmentIndex = from; segmentIndex < to; segmentIndex++) {
+            segments[segmentIndex - from] = new Segment(
+                    LocalDateTime.ofEpochSecond(departureEpochs[segmentIndex], 0, ZoneOffset.UTC),
+                    LocalDateTime.ofEpochSecond(arrivalEpochs[segmentIndex], 0, ZoneOffset.UTC));
+        }
+        // the array belongs to this flight only, Flight keeps it without a copy
+        return new Flight(SegmentView.of(segments));
+    }
+
+    /**
+     * Returns a read-only view that decodes flights on access.
+     */
+    @Override
+    public List<Flight> getAll() {
+        return flightView;
+    }
+
+    private class FlightView extends AbstractList<Flight> implements RandomAccess {
+        @Override
+        public Flight get(int index) {
+            return getFlight(Objects.checkIndex(index, size()));
+        }
+
+        @Override
+        public int size() {
+            return getFlightCount();
+        }
+    }
+}
@@ -4,13 +4,141 @@ import com.gridnine.testing.interfaces.DataBase;
 import com.gridnine.testing.domain.Flight;
 import com.gridnine.testing.domain.FlightBuilder;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
+/**
+ * Хранилище рейсов в памяти. Рейсы лежат в массиве слотов, удалённый рейс оставляет пустой слот,
+ * а индекс слота каждого рейса хранится в IdentityHashMap, поэтому update() и remove() работают за O(1).
+ * Пустые слоты убираются, когда их становится больше, чем рейсов.
+ * getAll() отдаёт неизменяемый снимок, который строится один раз после изменения и безопасен для чтения во время записи.
+ */
 public class DataBaseImpl implements DataBase<Flight> {
-    private final List<Flight> flightList = FlightBuilder.createFlights();
+    private static final int MIN_COMPACTION_SLOTS = 64;
 
+    private Flight[] slots;
+    private int slotCount;
+    private int flightCount;
+    // slot of every stored flight; for an instance stored several times, of its first occurrence
+    private final Map<Flight, Integer> slotOf = new IdentityHashMap<>();
+    // number of stored occurrences of instances that are stored more than once
+    private int repeatedCount;
+    private volatile List<Flight> snapshot;
+
+    public DataBaseImpl() {
+        this(FlightBuilder.createFlights());
+    }
+
+    public DataBaseImpl(List<Flight> flightList) {
+        slots = new Flight[Math.max(16, flightList.size())];
+        for (Flight flight : flightList) {
+            add(flight);
+        }
+    }
+
+    /**
+     * @return immutable snapshot of the flights in insertion order, reused until the next change
+     */
     @Override
     public List<Flight> getAll() {
-        return flightList;
+        List<Flight> result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    Flight[] flights = new Flight[flightCount];
+                    int position = 0;
+                    for (int slot = 0; slot < slotCount; slot++) {
+                        if (slots[slot] != null)
+                            flights[position++] = slots[slot];
+                    }
+                    snapshot = Collections.unmodifiableList(Arrays.asList(flights));
+                }
+                result = snapshot;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void add(Flight flight) {
+        Objects.requireNonNull(flight, "DataBaseImpl: flight is null");
+        if (slotCount == slots.length)
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        if (slotOf.putIfAbsent(flight, slotCount) != null)
+            repeatedCount++;
+        slots[slotCount++] = flight;
+        flightCount++;
+        snapshot = null;
+    }
+
+    @Override
+    public synchronized boolean update(Flight oldFlight, Flight newFlight) {
+        Objects.requireNonNull(newFlight, "DataBaseImpl: flight is null");
+        Integer slot = release(oldFlight);
+        if (slot == null)
+            return false;
+        slots[slot] = newFlight;
+        if (slotOf.putIfAbsent(newFlight, slot) != null) {
+            repeatedCount++;
+            // the new occurrence may precede the one found by the map
+            if (slotOf.get(newFlight) > slot)
+                slotOf.put(newFlight, slot);
+        }
+        snapshot = null;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(Flight flight) {
+        Integer slot = release(flight);
+        if (slot == null)
+            return false;
+        slots[slot] = null;
+        flightCount--;
+        snapshot = null;
+        if (slotCount - flightCount > Math.max(MIN_COMPACTION_SLOTS, flightCount))
+            compact();
+        return true;
+    }
+
+    /**
+     * Forgets the first occurrence of the flight, the slot itself is left to the caller.
+     *
+     * @return slot of the occurrence, null if the flight is not stored
+     */
+    private Integer release(Flight flight) {
+        Integer slot = slotOf.remove(flight);
+        if (slot == null || repeatedCount == 0)
+            return slot;
+        // only instances stored more than once need a scan for their next occurrence
+        for (int next = slot + 1; next < slotCount; next++) {
+            if (slots[next] == flight) {
+                slotOf.put(flight, next);
+                repeatedCount--;
+                break;
+            }
+        }
+        return slot;
+    }
+
+    private void compact() {
+        int position = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            Flight flight = slots[slot];
+            if (flight == null)
+                continue;
+            slots[position] = flight;
+            // keeps the first occurrence of repeated instances
+            Integer firstSlot = slotOf.get(flight);
+            if (firstSlot != null && firstSlot == slot)
+                slotOf.put(flight, position);
+            position++;
+        }
+        Arrays.fill(slots, position, slotCount, null);
+        slotCount = position;
     }
 }
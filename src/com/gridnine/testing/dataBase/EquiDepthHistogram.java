@@ -0,0 +1,97 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.utils.Operators;
+
+import java.util.Arrays;
+
+/**
+ * Гистограмма равной глубины: границы делят отсортированные значения на bucketCount частей
+ * с одинаковым числом значений. Используется для оценки доли значений, удовлетворяющих условию.
+ * Внутри части значения считаются распределёнными равномерно.
+ */
+public class EquiDepthHistogram {
+    public static final int DEFAULT_BUCKET_COUNT = 64;
+
+    private final long[] bounds;
+    private final long valueCount;
+
+    /**
+     * @param values      values to describe, the array is sorted in place
+     * @param bucketCount number of buckets, reduced to the number of values when there are fewer values
+     */
+    public EquiDepthHistogram(long[] values, int bucketCount) {
+        if (bucketCount <= 0)
+            throw new IllegalArgumentException("EquiDepthHistogram: bucket count must be positive");
+        Arrays.sort(values);
+        valueCount = values.length;
+        if (values.length == 0) {
+            bounds = new long[0];
+            return;
+        }
+        int buckets = Math.min(bucketCount, values.length);
+        // bounds[0] is the minimum, bounds[i] the upper bound of bucket i - 1
+        bounds = new long[buckets + 1];
+        for (int i = 0; i <= buckets; i++) {
+            bounds[i] = values[(int) Math.min(values.length - 1, (long) values.length * i / buckets)];
+        }
+        bounds[buckets] = values[values.length - 1];
+    }
+
+    public long getValueCount() {
+        return valueCount;
+    }
+
+    public int getBucketCount() {
+        return Math.max(0, bounds.length - 1);
+    }
+
+    /**
+     * @return estimated share of values below the operand, or not above it when inclusive
+     */
+    private double cumulativeShare(long operand, boolean inclusive) {
+        int buckets = bounds.length - 1;
+        if (operand < bounds[0] || !inclusive && operand == bounds[0])
+            return 0;
+        if (operand > bounds[buckets] || inclusive && operand == bounds[buckets])
+            return 1;
+        // the last bound below (or not above) the operand
+        int low = 0;
+        int high = buckets;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (bounds[middle] < operand || inclusive && bounds[middle] == operand)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        double insideBucket = bounds[low + 1] > bounds[low]
+                ? (double) (operand - bounds[low]) / (bounds[low + 1] - bounds[low])
+                : 0;
+        return (low + insideBucket) / buckets;
+    }
+
+    /**
+     * @return estimated share of values satisfying {@code value <operator> operand}, 0 without values
+     */
+    public double selectivity(Operators operators, long operand) {
+        if (valueCount == 0)
+            return 0;
+        switch (operators) {
+            case LESS:
+                return cumulativeShare(operand, false);
+            case LESS_OR_EQUALS:
+                return cumulativeShare(operand, true);
+            case GREATER:
+                return 1 - cumulativeShare(operand, true);
+            case GREATER_OR_EQUALS:
+                return 1 - cumulativeShare(operand, false);
+            case EQUALS:
+                if (operand < bounds[0] || operand > bounds[bounds.length - 1])
+                    return 0;
+                // at least one value is assumed to match inside the observed range
+                return Math.max(cumulativeShare(operand, true) - cumulativeShare(operand, false), 1.0 / valueCount);
+            default:
+                throw new IllegalStateException("EquiDepthHistogram: unknown operator " + operators);
+        }
+    }
+}
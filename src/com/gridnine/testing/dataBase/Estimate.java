@@ -0,0 +1,97 @@
+package com.gridnine.testing.dataBase;
+
+/**
+ * Приближённое значение доли или числа рейсов с доверительным интервалом, посчитанное по выборке.
+ * Интервал - интервал Уилсона с поправкой на конечность совокупности: если в выборке все рейсы,
+ * значение точное и интервал нулевой ширины.
+ */
+public final class Estimate {
+    private final double value;
+    private final double lower;
+    private final double upper;
+    private final double confidence;
+    private final int sampleSize;
+    private final long population;
+
+    private Estimate(double value, double lower, double upper, double confidence, int sampleSize, long population) {
+        this.value = value;
+        this.lower = lower;
+        this.upper = upper;
+        this.confidence = confidence;
+        this.sampleSize = sampleSize;
+        this.population = population;
+    }
+
+    /**
+     * @param matches    number of matching flights of the sample
+     * @param confidence probability that the interval holds the true share, in (0, 1)
+     */
+    static Estimate share(int matches, int sampleSize, long population, double confidence) {
+        if (!(confidence > 0 && confidence < 1))
+            throw new IllegalArgumentException("Estimate: confidence must be in (0, 1)");
+        if (sampleSize == 0)
+            return new Estimate(0, 0, 1, confidence, 0, population);
+        double share = (double) matches / sampleSize;
+        // sampling without replacement, the variance shrinks to 0 when the sample is the whole population
+        double finitePopulation = population > 1 ? Math.max(0, (double) (population - sampleSize) / (population - 1)) : 0;
+        double z = normalQuantile(confidence) * Math.sqrt(finitePopulation);
+        double z2 = z * z;
+        double denominator = 1 + z2 / sampleSize;
+        double center = (share + z2 / (2.0 * sampleSize)) / denominator;
+        double halfWidth = z / denominator * Math.sqrt(share * (1 - share) / sampleSize + z2 / (4.0 * sampleSize * sampleSize));
+        return new Estimate(share, Math.max(0, center - halfWidth), Math.min(1, center + halfWidth), confidence, sampleSize, population);
+    }
+
+    /**
+     * @return estimate of the number of flights, the share multiplied by the population
+     */
+    Estimate toCount() {
+        return new Estimate(value * population, lower * population, upper * population, confidence, sampleSize, population);
+    }
+
+    /**
+     * Two-sided quantile of the standard normal distribution, Abramowitz and Stegun 26.2.23 (error below 4.5e-4).
+     */
+    private static double normalQuantile(double confidence) {
+        double tail = (1 - confidence) / 2;
+        double t = Math.sqrt(-2 * Math.log(tail));
+        return t - (2.515517 + 0.802853 * t + 0.010328 * t * t) / (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public double getLower() {
+        return lower;
+    }
+
+    public double getUpper() {
+        return upper;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return number of flights the sample was drawn from
+     */
+    public long getPopulation() {
+        return population;
+    }
+
+    public boolean isExact() {
+        return sampleSize == population;
+    }
+
+    @Override
+    public String toString() {
+        return "Estimate{" + value + " in [" + lower + ", " + upper + "] at " + confidence
+                + ", sample " + sampleSize + " of " + population + '}';
+    }
+}
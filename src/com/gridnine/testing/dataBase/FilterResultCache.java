@@ -0,0 +1,157 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FilterSpec;
+import com.gridnine.testing.utils.FlightsFilter;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш результатов фильтров перед FlightsDB. Ключ - {@link FilterSpec}, поэтому одинаковые фильтры,
+ * собранные независимо, попадают в одну запись. Размер ограничен числом записей и суммарным весом
+ * (числом рейсов во всех результатах), вытесняются давно не использованные записи (LRU).
+ * Весь кэш сбрасывается, как только меняется версия FlightsDB, то есть только при изменениях через FlightsDB:
+ * если менять обёрнутый DataBase напрямую, кэш продолжит отдавать старые результаты до {@link #invalidate()}.
+ */
+public class FilterResultCache {
+    /**
+     * Longer times to live are treated as no expiration: System.nanoTime() differences are only
+     * comparable within 2^63 nanoseconds, i.e. about 292 years.
+     */
+    private static final Duration MAX_TIME_TO_LIVE = Duration.ofNanos(Long.MAX_VALUE / 2);
+
+    private final FlightsDB flightsDB;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Map<FilterSpec, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long cachedVersion;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private static final class Entry {
+        private final List<Flight> result;
+        private final boolean expires;
+        private final long expiresAtNanos;
+
+        private Entry(List<Flight> result, boolean expires, long expiresAtNanos) {
+            this.result = result;
+            this.expires = expires;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        /**
+         * Compares by the difference of nanoTime values, which stays correct when nanoTime() is negative or wraps.
+         */
+        private boolean isLive(long nowNanos) {
+            return !expires || expiresAtNanos - nowNanos > 0;
+        }
+    }
+
+    /**
+     * @param flightsDB  source of the flights
+     * @param maxEntries maximum number of cached results
+     * @param maxWeight  maximum number of flights in all cached results together
+     */
+    public FilterResultCache(FlightsDB flightsDB, int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0)
+            throw new IllegalArgumentException("FilterResultCache: maxEntries and maxWeight must be positive");
+        this.flightsDB = flightsDB;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.cachedVersion = flightsDB.getVersion();
+    }
+
+    public List<Flight> filter(FlightsFilter flightsFilter) {
+        return filter(flightsFilter, null);
+    }
+
+    /**
+     * @param timeToLive how long the result stays valid, e.g. for conditions relative to "now"; null means until a change of FlightsDB
+     * @return unmodifiable result shared between callers
+     */
+    public List<Flight> filter(FlightsFilter flightsFilter, Duration timeToLive) {
+        FilterSpec spec = flightsFilter.getSpec();
+        long version = flightsDB.getVersion();
+        synchronized (this) {
+            invalidateIfChanged(version);
+            Entry entry = entries.get(spec);
+            if (entry != null && entry.isLive(System.nanoTime())) {
+                hitCount.increment();
+                return entry.result;
+            }
+            if (entry != null)
+                removeEntry(spec);
+        }
+        missCount.increment();
+        // the filter runs outside the lock, concurrent misses of the same spec may compute it twice
+        List<Flight> result = Collections.unmodifiableList(flightsDB.filter(flightsFilter));
+        boolean expires = timeToLive != null && timeToLive.compareTo(MAX_TIME_TO_LIVE) < 0;
+        long expiresAtNanos = expires ? System.nanoTime() + timeToLive.toNanos() : 0;
+        synchronized (this) {
+            invalidateIfChanged(version);
+            if (version == cachedVersion && result.size() <= maxWeight) {
+                Entry previous = entries.put(spec, new Entry(result, expires, expiresAtNanos));
+                if (previous != null)
+                    weight -= previous.result.size();
+                weight += result.size();
+                evict();
+            }
+        }
+        return result;
+    }
+
+    private void invalidateIfChanged(long version) {
+        if (version > cachedVersion) {
+            invalidate();
+            cachedVersion = version;
+        }
+    }
+
+    private void removeEntry(FilterSpec spec) {
+        Entry removed = entries.remove(spec);
+        if (removed != null)
+            weight -= removed.result.size();
+    }
+
+    private void evict() {
+        Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && leastRecentlyUsed.hasNext()) {
+            weight -= leastRecentlyUsed.next().result.size();
+            leastRecentlyUsed.remove();
+            evictionCount.increment();
+        }
+    }
+
+    public synchronized void invalidate() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+}
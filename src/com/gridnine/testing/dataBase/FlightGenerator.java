@@ -0,0 +1,174 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор синтетических рейсов для нагрузочных тестов. Один и тот же seed с теми же настройками
+ * всегда даёт один и тот же набор данных. Рейсы равномерно распределены по окну вылетов,
+ * количество сегментов, доля некорректных сегментов и распределение времени на земле настраиваются.
+ */
+public class FlightGenerator {
+    public enum GroundTime {
+        /**
+         * Ground time uniformly distributed between 0 and twice the mean.
+         */
+        UNIFORM,
+        /**
+         * Exponentially distributed ground time: mostly short connections with a long tail.
+         */
+        EXPONENTIAL
+    }
+
+    private final long seed;
+    private long startEpoch = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+    private long departureWindowSeconds = Duration.ofDays(30).toSeconds();
+    private int minSegments = 1;
+    private int maxSegments = 4;
+    private double invalidSegmentRatio = 0.01;
+    private GroundTime groundTime = GroundTime.EXPONENTIAL;
+    private long meanGroundSeconds = Duration.ofMinutes(90).toSeconds();
+    private long minFlightSeconds = Duration.ofMinutes(30).toSeconds();
+    private long maxFlightSeconds = Duration.ofHours(12).toSeconds();
+
+    public FlightGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param startEpoch             first possible departure, epoch seconds UTC
+     * @param departureWindowSeconds first departures are spread uniformly over this window
+     */
+    public FlightGenerator departures(long startEpoch, long departureWindowSeconds) {
+        if (departureWindowSeconds <= 0)
+            throw new IllegalArgumentException("FlightGenerator: departure window must be positive");
+        this.startEpoch = startEpoch;
+        this.departureWindowSeconds = departureWindowSeconds;
+        return this;
+    }
+
+    public FlightGenerator segments(int minSegments, int maxSegments) {
+        if (minSegments < 1 || maxSegments < minSegments)
+            throw new IllegalArgumentException("FlightGenerator: expected 1 <= minSegments <= maxSegments");
+        this.minSegments = minSegments;
+        this.maxSegments = maxSegments;
+        return this;
+    }
+
+    /**
+     * @param invalidSegmentRatio share of segments that arrive before they depart
+     */
+    public FlightGenerator invalidSegmentRatio(double invalidSegmentRatio) {
+        if (invalidSegmentRatio < 0 || invalidSegmentRatio > 1)
+            throw new IllegalArgumentException("FlightGenerator: invalid segment ratio must be in [0, 1]");
+        this.invalidSegmentRatio = invalidSegmentRatio;
+        return this;
+    }
+
+    public FlightGenerator groundTime(GroundTime groundTime, long meanGroundSeconds) {
+        if (meanGroundSeconds < 0)
+            throw new IllegalArgumentException("FlightGenerator: mean ground time must not be negative");
+        this.groundTime = groundTime;
+        this.meanGroundSeconds = meanGroundSeconds;
+        return this;
+    }
+
+    public FlightGenerator flightDuration(long minFlightSeconds, long maxFlightSeconds) {
+        if (minFlightSeconds < 0 || maxFlightSeconds < minFlightSeconds)
+            throw new IllegalArgumentException("FlightGenerator: expected 0 <= minFlightSeconds <= maxFlightSeconds");
+        this.minFlightSeconds = minFlightSeconds;
+        this.maxFlightSeconds = maxFlightSeconds;
+        return this;
+    }
+
+    /**
+     * Receives every generated segment in order, so that both object and columnar stores
+     * are filled from the same sequence.
+     */
+    private interface SegmentSink {
+        void accept(int flightIndex, long departureEpoch, long arrivalEpoch);
+    }
+
+    private void generate(int flightCount, int[] segmentCounts, SegmentSink sink) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int flightIndex = 0; flightIndex < flightCount; flightIndex++) {
+            int segmentCount = minSegments + random.nextInt(maxSegments - minSegments + 1);
+            if (segmentCounts != null)
+                segmentCounts[flightIndex] = segmentCount;
+            long departureEpoch = startEpoch + random.nextLong(departureWindowSeconds);
+            for (int segmentIndex = 0; segmentIndex < segmentCount; segmentIndex++) {
+                long flightSeconds = minFlightSeconds + random.nextLong(maxFlightSeconds - minFlightSeconds + 1);
+                long arrivalEpoch = departureEpoch + flightSeconds;
+                if (random.nextDouble() < invalidSegmentRatio)
+                    arrivalEpoch = departureEpoch - Math.max(1, flightSeconds);
+                sink.accept(flightIndex, departureEpoch, arrivalEpoch);
+                departureEpoch = Math.max(departureEpoch, arrivalEpoch) + nextGroundSeconds(random);
+            }
+        }
+    }
+
+    private long nextGroundSeconds(SplittableRandom random) {
+        if (meanGroundSeconds == 0)
+            return 0;
+        switch (groundTime) {
+            case UNIFORM:
+                return random.nextLong(meanGroundSeconds * 2 + 1);
+            default:
+            case EXPONENTIAL:
+                return (long) (-meanGroundSeconds * Math.log(1 - random.nextDouble()));
+        }
+    }
+
+    public List<Flight> createFlights(int flightCount) {
+        List<List<Segment>> segmentLists = new ArrayList<>(flightCount);
+        generate(flightCount, null, (flightIndex, departureEpoch, arrivalEpoch) -> {
+            if (flightIndex == segmentLists.size())
+                segmentLists.add(new ArrayList<>(maxSegments));
+            segmentLists.get(flightIndex).add(new Segment(
+                    LocalDateTime.ofEpochSecond(departureEpoch, 0, ZoneOffset.UTC),
+                    LocalDateTime.ofEpochSecond(arrivalEpoch, 0, ZoneOffset.UTC)));
+        });
+        // Flight copies its segments, so it is created once they are all generated
+        List<Flight> flightList = new ArrayList<>(flightCount);
+        for (List<Segment> segments : segmentLists) {
+            flightList.add(new Flight(segments));
+        }
+        return flightList;
+    }
+
+    /**
+     * Generates the same flights as {@link #createFlights(int)} straight into epoch columns,
+     * without creating Flight or Segment objects. Suitable for datasets that do not fit the heap as objects.
+     */
+    public ColumnarDataBase createColumnarDataBase(int flightCount) {
+        int[] segmentCounts = new int[flightCount];
+        // the first pass only counts segments, the second one fills the columns of the exact size
+        generate(flightCount, segmentCounts, (flightIndex, departureEpoch, arrivalEpoch) -> {
+        });
+        int[] flightOffsets = new int[flightCount + 1];
+        long totalSegments = 0;
+        for (int flightIndex = 0; flightIndex < flightCount; flightIndex++) {
+            flightOffsets[flightIndex] = (int) totalSegments;
+            totalSegments += segmentCounts[flightIndex];
+            if (totalSegments > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("FlightGenerator: too many segments for one columnar store");
+        }
+        flightOffsets[flightCount] = (int) totalSegments;
+        long[] departureEpochs = new long[(int) totalSegments];
+        long[] arrivalEpochs = new long[(int) totalSegments];
+        int[] position = {0};
+        generate(flightCount, null, (flightIndex, departureEpoch, arrivalEpoch) -> {
+            departureEpochs[position[0]] = departureEpoch;
+            arrivalEpochs[position[0]] = arrivalEpoch;
+            position[0]++;
+        });
+        return new ColumnarDataBase(departureEpochs, arrivalEpochs, flightOffsets);
+    }
+}
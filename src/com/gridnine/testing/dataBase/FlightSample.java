@@ -0,0 +1,124 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.LogHistogram;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Равномерная выборка рейсов (reservoir sampling) и скетч времени на земле для приближённых запросов FlightsDB.
+ * Выборка обновляется при каждом изменении: добавленный рейс попадает в неё с вероятностью capacity / N,
+ * заменённый рейс заменяется и в выборке, удалённый - удаляется. Скетч - LogHistogram всех интервалов
+ * между сегментами, из него берутся перцентили с относительной ошибкой не больше 1/16.
+ */
+final class FlightSample {
+    /**
+     * After removals the sample is rebuilt once it holds less than this share of its capacity.
+     */
+    private static final double MIN_FILL_SHARE = 0.9;
+
+    private final int capacity;
+    private final Random random;
+    private final List<Flight> flights;
+    private final LogHistogram groundSketch = new LogHistogram();
+    private long population;
+
+    FlightSample(int capacity, long seed, List<Flight> flightList) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("FlightSample: capacity must be positive");
+        this.capacity = capacity;
+        this.random = new Random(seed);
+        this.flights = new ArrayList<>(Math.min(capacity, flightList.size()));
+        for (Flight flight : flightList) {
+            add(flight);
+        }
+    }
+
+    synchronized void add(Flight flight) {
+        population++;
+        recordGaps(flight, true);
+        // the sample holds every flight until it is full, after removals it stays smaller until it is rebuilt
+        if (flights.size() == population - 1 && flights.size() < capacity) {
+            flights.add(flight);
+        } else {
+            long slot = random.nextLong(population);
+            if (slot < flights.size())
+                flights.set((int) slot, flight);
+        }
+    }
+
+    synchronized void update(Flight oldFlight, Flight newFlight) {
+        recordGaps(oldFlight, false);
+        recordGaps(newFlight, true);
+        int index = indexOf(oldFlight);
+        if (index >= 0)
+            flights.set(index, newFlight);
+    }
+
+    synchronized void remove(Flight flight) {
+        population--;
+        recordGaps(flight, false);
+        int index = indexOf(flight);
+        if (index >= 0) {
+            flights.set(index, flights.get(flights.size() - 1));
+            flights.remove(flights.size() - 1);
+        }
+    }
+
+    /**
+     * @return true if removals shrank the sample and it should be drawn again
+     */
+    synchronized boolean isDepleted() {
+        return flights.size() < capacity * MIN_FILL_SHARE && population > flights.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    private int indexOf(Flight flight) {
+        for (int i = 0; i < flights.size(); i++) {
+            if (flights.get(i) == flight)
+                return i;
+        }
+        return -1;
+    }
+
+    private void recordGaps(Flight flight, boolean add) {
+        List<Segment> segments = flight.getSegments();
+        for (int i = 1; i < segments.size(); i++) {
+            long groundSeconds = segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC)
+                    - segments.get(i - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+            if (add)
+                groundSketch.record(groundSeconds);
+            else
+                groundSketch.remove(groundSeconds);
+        }
+    }
+
+    synchronized Estimate estimateShare(FlightsFilter flightsFilter, double confidence) {
+        int matches = 0;
+        for (Flight flight : flights) {
+            if (flightsFilter.test(flight))
+                matches++;
+        }
+        return Estimate.share(matches, flights.size(), population, confidence);
+    }
+
+    synchronized long groundTimePercentile(double percentile) {
+        return groundSketch.getPercentile(percentile);
+    }
+
+    /**
+     * @return share of the ground intervals longer than the given seconds, counted by whole sketch buckets
+     */
+    synchronized double groundTimeShareGreater(long seconds) {
+        long total = groundSketch.getTotalCount();
+        return total == 0 ? 0 : 1 - (double) groundSketch.countAtMost(seconds) / total;
+    }
+}
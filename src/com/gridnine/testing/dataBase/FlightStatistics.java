@@ -0,0 +1,141 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.utils.Operators;
+
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Статистика набора рейсов для планировщика фильтра: гистограммы равной глубины времени отправления,
+ * прибытия и времени на земле, распределение числа сегментов и доля некорректных рейсов.
+ * Оценивает долю рейсов, проходящих условие, считая сегменты рейса независимыми.
+ */
+public class FlightStatistics {
+    /**
+     * Flights with more segments are counted in the last slot of the segment count distribution.
+     */
+    public static final int MAX_TRACKED_SEGMENT_COUNT = 16;
+
+    private final int flightCount;
+    private final EquiDepthHistogram departureHistogram;
+    private final EquiDepthHistogram arrivalHistogram;
+    private final EquiDepthHistogram gapHistogram;
+    private final long[] segmentCountFrequencies = new long[MAX_TRACKED_SEGMENT_COUNT + 1];
+    private final double invalidFlightShare;
+    private final double averageSegmentCount;
+
+    public FlightStatistics(List<Flight> flightList) {
+        this(flightList, EquiDepthHistogram.DEFAULT_BUCKET_COUNT);
+    }
+
+    public FlightStatistics(List<Flight> flightList, int bucketCount) {
+        flightCount = flightList.size();
+        int segmentCount = 0;
+        for (Flight flight : flightList) {
+            segmentCount += flight.getSegments().size();
+        }
+        long[] departureEpochs = new long[segmentCount];
+        long[] arrivalEpochs = new long[segmentCount];
+        long[] gaps = new long[Math.max(0, segmentCount - flightCount)];
+        int segmentIndex = 0;
+        int gapIndex = 0;
+        int invalidFlights = 0;
+        for (Flight flight : flightList) {
+            List<Segment> segments = flight.getSegments();
+            segmentCountFrequencies[Math.min(MAX_TRACKED_SEGMENT_COUNT, segments.size())]++;
+            boolean valid = true;
+            for (int i = 0; i < segments.size(); i++) {
+                departureEpochs[segmentIndex] = segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+                arrivalEpochs[segmentIndex] = segments.get(i).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+                valid &= arrivalEpochs[segmentIndex] >= departureEpochs[segmentIndex];
+                if (i > 0)
+                    gaps[gapIndex++] = departureEpochs[segmentIndex] - arrivalEpochs[segmentIndex - 1];
+                segmentIndex++;
+            }
+            if (!valid)
+                invalidFlights++;
+        }
+        departureHistogram = new EquiDepthHistogram(departureEpochs, bucketCount);
+        arrivalHistogram = new EquiDepthHistogram(arrivalEpochs, bucketCount);
+        // flights without segments leave no gaps, the array may be longer than needed
+        gapHistogram = new EquiDepthHistogram(gapIndex == gaps.length ? gaps : Arrays.copyOf(gaps, gapIndex), bucketCount);
+        invalidFlightShare = flightCount == 0 ? 0 : (double) invalidFlights / flightCount;
+        averageSegmentCount = flightCount == 0 ? 0 : (double) segmentCount / flightCount;
+    }
+
+    public int getFlightCount() {
+        return flightCount;
+    }
+
+    public EquiDepthHistogram getDepartureHistogram() {
+        return departureHistogram;
+    }
+
+    public EquiDepthHistogram getArrivalHistogram() {
+        return arrivalHistogram;
+    }
+
+    public EquiDepthHistogram getGapHistogram() {
+        return gapHistogram;
+    }
+
+    /**
+     * @return number of flights with the given number of segments, the last slot counts all longer flights
+     */
+    public long getSegmentCountFrequency(int segmentCount) {
+        return segmentCountFrequencies[Math.min(MAX_TRACKED_SEGMENT_COUNT, segmentCount)];
+    }
+
+    public double getAverageSegmentCount() {
+        return averageSegmentCount;
+    }
+
+    public double getInvalidFlightShare() {
+        return invalidFlightShare;
+    }
+
+    /**
+     * @param segmentShare share of segments (or ground intervals) satisfying a condition
+     * @param perGap       true for idle conditions, which are checked on the intervals between segments
+     * @return estimated share of flights with at least one segment (or interval) satisfying the condition
+     */
+    public double flightShare(double segmentShare, boolean perGap) {
+        if (flightCount == 0)
+            return 0;
+        double share = 0;
+        for (int segmentCount = 0; segmentCount <= MAX_TRACKED_SEGMENT_COUNT; segmentCount++) {
+            int candidates = perGap ? segmentCount - 1 : segmentCount;
+            if (segmentCountFrequencies[segmentCount] == 0 || candidates <= 0)
+                continue;
+            share += segmentCountFrequencies[segmentCount] * (1 - Math.pow(1 - segmentShare, candidates));
+        }
+        return share / flightCount;
+    }
+
+    /**
+     * @return estimated share of flights satisfying every arrival (or departure) condition of the map
+     */
+    public double segmentConditionsShare(Map<Operators, Long> statementsMap, boolean arrival) {
+        EquiDepthHistogram histogram = arrival ? arrivalHistogram : departureHistogram;
+        double share = 1;
+        for (Map.Entry<Operators, Long> condition : statementsMap.entrySet()) {
+            share *= flightShare(histogram.selectivity(condition.getKey(), condition.getValue()), false);
+        }
+        return share;
+    }
+
+    /**
+     * @return estimated share of flights satisfying every idle condition of the map
+     */
+    public double idleConditionsShare(Map<Operators, Long> statementsMap) {
+        double share = 1;
+        for (Map.Entry<Operators, Long> condition : statementsMap.entrySet()) {
+            share *= flightShare(gapHistogram.selectivity(condition.getKey(), condition.getValue()), true);
+        }
+        return share;
+    }
+}
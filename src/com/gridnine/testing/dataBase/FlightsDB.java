@@ -2,12 +2,83 @@ package com.gridnine.testing.dataBase;
 
 import com.gridnine.testing.interfaces.DataBase;
 import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FilterSpec;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsQuery;
+import com.gridnine.testing.utils.MultiFilterExecutor;
+import com.gridnine.testing.utils.Operators;
+import com.gridnine.testing.utils.RoaringBitmap;
+import com.gridnine.testing.utils.TypeOfFlight;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Фильтрация рейсов хранилища DataBase с индексами, статистикой планировщика, кэшем битмапов и представлениями.
+ * Все изменения должны идти через add/addAll/update/remove этого FlightsDB: от них растёт {@link #getVersion()},
+ * по которому сбрасываются производные данные здесь и в {@link FilterResultCache}. Изменение обёрнутого
+ * DataBase напрямую версию не меняет, и закэшированные результаты остаются устаревшими.
+ */
 public class FlightsDB {
+    /**
+     * Indexes are used only when the narrowest condition covers at most this share of all segments,
+     * otherwise a full scan is cheaper than collecting the candidates.
+     */
+    private static final double MAX_INDEX_SELECTIVITY = 0.25;
+    /**
+     * The next filter() starts a background analyze() once more than this share of flights was changed after the last one,
+     * until it finishes filters are planned with the older statistics.
+     */
+    private static final double STALE_STATISTICS_SHARE = 0.1;
+    private static final int DEFAULT_MAX_CACHED_BITMAPS = 256;
+    private static final long DEFAULT_MAX_CACHED_BITMAP_BYTES = 64L << 20;
     private static FlightsDB instance;
     DataBase<Flight> db;
+    // set by createIndexes(): the indexes of a changed store are rebuilt by the next filter()
+    private volatile boolean indexed;
+    private volatile Indexes indexes;
+    private final List<FlightsView> views = new CopyOnWriteArrayList<>();
+    // position of every flight while views are registered: increasing in the order of getAll(), kept by update()
+    private final Map<Flight, Long> orderKeys = new IdentityHashMap<>();
+    private long nextOrderKey;
+    private volatile long version;
+    private volatile FlightStatistics statistics;
+    private volatile long statisticsVersion;
+    private final AtomicBoolean analyzeScheduled = new AtomicBoolean();
+    // flights of the leaf filters of queries, valid until the next change; LRU bounded by count and bytes, guarded by this
+    private final Map<FilterSpec, RoaringBitmap> leafBitmaps = new LinkedHashMap<>(16, 0.75f, true);
+    private long leafBitmapBytes;
+    private int maxCachedBitmaps = DEFAULT_MAX_CACHED_BITMAPS;
+    private long maxCachedBitmapBytes = DEFAULT_MAX_CACHED_BITMAP_BYTES;
+    private volatile FlightSample sample;
+    private long sampleSeed;
+
+    /**
+     * Departure and arrival indexes together with the result of getAll() and the version they were built from:
+     * flight ids of the indexes are positions in exactly that list. The version matters for stores
+     * whose getAll() is the same live view after a change.
+     */
+    private static final class Indexes {
+        private final List<Flight> flightList;
+        private final long version;
+        private final SegmentTimeIndex departures;
+        private final SegmentTimeIndex arrivals;
+
+        private Indexes(List<Flight> flightList, long version) {
+            this.flightList = flightList;
+            this.version = version;
+            departures = new SegmentTimeIndex(flightList, TypeOfFlight.DEPARTURE);
+            arrivals = new SegmentTimeIndex(flightList, TypeOfFlight.ARRIVAL);
+        }
+    }
 
     private FlightsDB(DataBase<Flight> db) {
         this.db = db;
@@ -20,7 +91,423 @@ public class FlightsDB {
         return instance;
     }
 
+    /**
+     * Creates a separate, not shared instance, e.g. for a second store or for tests.
+     */
+    public static FlightsDB newInstance(DataBase<Flight> db) {
+        return new FlightsDB(db);
+    }
+
+    /**
+     * @return flights of the store; over {@link SnapshotDataBase} an immutable snapshot safe to read during writes
+     */
     public List<Flight> getAll() {
         return db.getAll();
     }
+
+    /**
+     * @return number of changes made through this FlightsDB, used to detect stale cached results;
+     * direct changes of the wrapped DataBase are not counted
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Adds the flight and updates every registered view. Indexes become stale and are rebuilt by the next filter().
+     */
+    public synchronized void add(Flight flight) {
+        // derived metrics are computed at insert time instead of by the first filter
+        flight.getMetrics();
+        db.add(flight);
+        clearLeafBitmaps();
+        version++;
+        if (sample != null)
+            sample.add(flight);
+        if (!views.isEmpty()) {
+            long orderKey = newOrderKey(flight);
+            for (FlightsView view : views) {
+                view.onAdd(flight, orderKey);
+            }
+        }
+    }
+
+    private long newOrderKey(Flight flight) {
+        long orderKey = nextOrderKey++;
+        orderKeys.putIfAbsent(flight, orderKey);
+        return orderKey;
+    }
+
+    /**
+     * Adds the flights under one lock, e.g. a batch of streamed flights.
+     */
+    public synchronized void addAll(List<Flight> flights) {
+        if (flights.isEmpty())
+            return;
+        for (Flight flight : flights) {
+            flight.getMetrics();
+        }
+        db.addAll(flights);
+        clearLeafBitmaps();
+        version += flights.size();
+        if (sample != null) {
+            for (Flight flight : flights) {
+                sample.add(flight);
+            }
+        }
+        if (!views.isEmpty()) {
+            for (Flight flight : flights) {
+                long orderKey = newOrderKey(flight);
+                for (FlightsView view : views) {
+                    view.onAdd(flight, orderKey);
+                }
+            }
+        }
+    }
+
+    public synchronized boolean update(Flight oldFlight, Flight newFlight) {
+        newFlight.getMetrics();
+        if (!db.update(oldFlight, newFlight))
+            return false;
+        clearLeafBitmaps();
+        version++;
+        if (sample != null)
+            sample.update(oldFlight, newFlight);
+        if (!views.isEmpty()) {
+            Long oldOrderKey = orderKeys.remove(oldFlight);
+            long orderKey = oldOrderKey != null ? oldOrderKey : nextOrderKey++;
+            orderKeys.putIfAbsent(newFlight, orderKey);
+            for (FlightsView view : views) {
+                view.onUpdate(oldFlight, newFlight, orderKey);
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean remove(Flight flight) {
+        if (!db.remove(flight))
+            return false;
+        clearLeafBitmaps();
+        version++;
+        if (sample != null)
+            sample.remove(flight);
+        if (!views.isEmpty()) {
+            orderKeys.remove(flight);
+            for (FlightsView view : views) {
+                view.onRemove(flight);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers a long-lived filter whose result is kept up to date on every change made through this FlightsDB.
+     */
+    public synchronized FlightsView registerView(FlightsFilter flightsFilter) {
+        List<Flight> flightList = db.getAll();
+        if (views.isEmpty()) {
+            for (Flight flight : flightList) {
+                newOrderKey(flight);
+            }
+        }
+        FlightsView view = new FlightsView(flightsFilter, flightList, orderKeys);
+        views.add(view);
+        return view;
+    }
+
+    public synchronized void unregisterView(FlightsView view) {
+        views.remove(view);
+        if (views.isEmpty())
+            orderKeys.clear();
+    }
+
+    /**
+     * Builds sorted departure and arrival indexes used by {@link #filter(FlightsFilter)}.
+     * They stay enabled until dropIndexes(): after a change the next filter() rebuilds them from the new flights.
+     */
+    public synchronized void createIndexes() {
+        indexed = true;
+        indexes = new Indexes(db.getAll(), version);
+    }
+
+    public synchronized void dropIndexes() {
+        indexed = false;
+        indexes = null;
+    }
+
+    public boolean hasIndexes() {
+        return indexed;
+    }
+
+    /**
+     * @return true if the indexes were built from the current flights, so the next filter() uses them without a rebuild
+     */
+    public boolean hasCurrentIndexes() {
+        Indexes currentIndexes = indexes;
+        return indexed && currentIndexes != null && currentIndexes.version == version
+                && currentIndexes.flightList == db.getAll();
+    }
+
+    /**
+     * Builds the indexes of the flights outside the lock, so writers are not blocked by the sort.
+     * They are published unless dropIndexes() was called meanwhile; a later change only makes them stale again.
+     */
+    private Indexes rebuildIndexes(List<Flight> flightList, long flightsVersion) {
+        Indexes rebuilt = new Indexes(flightList, flightsVersion);
+        synchronized (this) {
+            if (indexed)
+                indexes = rebuilt;
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Collects the statistics used by {@link #filter(FlightsFilter)} to order the stages of the filter.
+     * The scan runs outside the lock, so writers are not blocked by it.
+     */
+    public FlightStatistics analyze() {
+        List<Flight> flightList;
+        long analyzedVersion;
+        synchronized (this) {
+            flightList = db.getAll();
+            analyzedVersion = version;
+        }
+        FlightStatistics collected = new FlightStatistics(flightList);
+        synchronized (this) {
+            // a concurrent analyze() of a later version wins
+            if (statistics == null || analyzedVersion >= statisticsVersion) {
+                statisticsVersion = analyzedVersion;
+                statistics = collected;
+            }
+        }
+        return collected;
+    }
+
+    /**
+     * @return statistics collected by the last analyze(), null if it was never called
+     */
+    public FlightStatistics getStatistics() {
+        return statistics;
+    }
+
+    private FlightsFilter plan(FlightsFilter flightsFilter) {
+        FlightStatistics currentStatistics = statistics;
+        if (currentStatistics == null || flightsFilter.getStageOrder() != null)
+            return flightsFilter;
+        if (version - statisticsVersion > Math.max(1, currentStatistics.getFlightCount() * STALE_STATISTICS_SHARE))
+            scheduleAnalyze();
+        return flightsFilter.planned(currentStatistics);
+    }
+
+    /**
+     * Starts analyze() in the common pool unless one is already running, the caller does not wait for it.
+     */
+    private void scheduleAnalyze() {
+        if (analyzeScheduled.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    analyze();
+                } finally {
+                    analyzeScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs the filter over all flights. After analyze() the stages of the filter are checked
+     * cheapest and most selective first, see {@link com.gridnine.testing.utils.FilterPlanner}. When indexes exist, the narrowest arrival or departure condition
+     * is resolved by binary search and only the flights it selects are checked by the filter.
+     * The indexes are used only with the very list they were built from: after a change they are rebuilt
+     * from the list read by this call instead of mixing positions of two versions.
+     */
+    public List<Flight> filter(FlightsFilter flightsFilter) {
+        flightsFilter = plan(flightsFilter);
+        Indexes currentIndexes = indexes;
+        long currentVersion = version;
+        List<Flight> flightList = db.getAll();
+        if (!indexed)
+            return flightsFilter.filter(flightList);
+        if (currentIndexes == null || currentIndexes.version != currentVersion || currentIndexes.flightList != flightList)
+            currentIndexes = rebuildIndexes(flightList, currentVersion);
+        SegmentTimeIndex bestIndex = null;
+        int[] bestRange = null;
+        for (SegmentTimeIndex index : new SegmentTimeIndex[]{currentIndexes.departures, currentIndexes.arrivals}) {
+            Map<Operators, Long> statementsMap = index.getTypeOfFlight() == TypeOfFlight.ARRIVAL
+                    ? flightsFilter.getArrivalStatementsMap()
+                    : flightsFilter.getDepartureStatementsMap();
+            for (Map.Entry<Operators, Long> conditions : statementsMap.entrySet()) {
+                int[] range = index.range(conditions.getKey(), conditions.getValue());
+                if (bestRange == null || range[1] - range[0] < bestRange[1] - bestRange[0]) {
+                    bestIndex = index;
+                    bestRange = range;
+                }
+            }
+        }
+        if (bestRange == null || bestRange[1] - bestRange[0] > bestIndex.size() * MAX_INDEX_SELECTIVITY)
+            return flightsFilter.filter(flightList);
+        BitSet candidates = bestIndex.flightIds(bestRange);
+        List<Flight> filteredFlights = new ArrayList<>();
+        for (int flightId = candidates.nextSetBit(0); flightId >= 0; flightId = candidates.nextSetBit(flightId + 1)) {
+            Flight flight = flightList.get(flightId);
+            if (flightsFilter.test(flight))
+                filteredFlights.add(flight);
+        }
+        return filteredFlights;
+    }
+
+    /**
+     * Runs all filters in one shared scan over the flights, see {@link MultiFilterExecutor}.
+     *
+     * @return matching flights of every filter in the order of the filters
+     */
+    public List<List<Flight>> filterAll(List<FlightsFilter> flightsFilters) {
+        return new MultiFilterExecutor(flightsFilters).doParallel().filter(db.getAll());
+    }
+
+    private RoaringBitmap leafBitmap(FlightsFilter flightsFilter, List<Flight> flightList, long scannedVersion) {
+        synchronized (this) {
+            RoaringBitmap bitmap = scannedVersion == version ? leafBitmaps.get(flightsFilter.getSpec()) : null;
+            if (bitmap != null)
+                return bitmap;
+        }
+        RoaringBitmap bitmap = FlightsQuery.matches(flightsFilter, flightList);
+        synchronized (this) {
+            // a bitmap of flights changed during the scan is used once and not cached
+            if (scannedVersion == version && bitmap.getSizeInBytes() <= maxCachedBitmapBytes) {
+                RoaringBitmap previous = leafBitmaps.put(flightsFilter.getSpec(), bitmap);
+                if (previous != null)
+                    leafBitmapBytes -= previous.getSizeInBytes();
+                leafBitmapBytes += bitmap.getSizeInBytes();
+                evictLeafBitmaps();
+            }
+        }
+        return bitmap;
+    }
+
+    private void evictLeafBitmaps() {
+        Iterator<RoaringBitmap> leastRecentlyUsed = leafBitmaps.values().iterator();
+        while ((leafBitmaps.size() > maxCachedBitmaps || leafBitmapBytes > maxCachedBitmapBytes) && leastRecentlyUsed.hasNext()) {
+            leafBitmapBytes -= leastRecentlyUsed.next().getSizeInBytes();
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private void clearLeafBitmaps() {
+        leafBitmaps.clear();
+        leafBitmapBytes = 0;
+    }
+
+    /**
+     * Bounds the bitmaps cached for {@link #filter(FlightsQuery)}, the least recently used are evicted first.
+     * A bitmap larger than maxBytes is used by its query and not cached.
+     *
+     * @param maxEntries maximum number of cached bitmaps, 256 by default
+     * @param maxBytes   maximum {@link RoaringBitmap#getSizeInBytes()} of all cached bitmaps together, 64 MB by default
+     */
+    public synchronized void setBitmapCacheLimits(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0)
+            throw new IllegalArgumentException("FlightsDB: bitmap cache limits must be positive");
+        maxCachedBitmaps = maxEntries;
+        maxCachedBitmapBytes = maxBytes;
+        evictLeafBitmaps();
+    }
+
+    /**
+     * Evaluates the query over bitmaps of flight numbers. The bitmap of every leaf filter is cached by its
+     * {@link FilterSpec} until the next change, so queries sharing filters only combine cached bitmaps.
+     *
+     * @return matching flights in the order of getAll()
+     */
+    public List<Flight> filter(FlightsQuery flightsQuery) {
+        List<Flight> flightList;
+        long scannedVersion;
+        synchronized (this) {
+            flightList = db.getAll();
+            scannedVersion = version;
+        }
+        RoaringBitmap flightIds = flightsQuery.evaluate(flightList.size(),
+                flightsFilter -> leafBitmap(flightsFilter, flightList, scannedVersion));
+        return FlightsQuery.select(flightIds, flightList);
+    }
+
+    /**
+     * @return number of leaf filter bitmaps cached for {@link #filter(FlightsQuery)}
+     */
+    public synchronized int getCachedBitmapCount() {
+        return leafBitmaps.size();
+    }
+
+    /**
+     * @return approximate memory of the bitmaps cached for {@link #filter(FlightsQuery)}
+     */
+    public synchronized long getCachedBitmapBytes() {
+        return leafBitmapBytes;
+    }
+
+    /**
+     * Starts the approximate mode: draws a uniform sample of the flights, kept up to date by every change
+     * made through this FlightsDB, and a sketch of the ground times. A larger sample gives narrower intervals,
+     * the estimates cost a scan of the sample only.
+     *
+     * @param sampleSize number of sampled flights
+     * @param seed       seed of the sampling, fixed for reproducible estimates
+     */
+    public synchronized void enableSampling(int sampleSize, long seed) {
+        sampleSeed = seed;
+        sample = new FlightSample(sampleSize, seed, db.getAll());
+    }
+
+    public void enableSampling(int sampleSize) {
+        enableSampling(sampleSize, System.nanoTime());
+    }
+
+    public synchronized void disableSampling() {
+        sample = null;
+    }
+
+    private FlightSample sample() {
+        FlightSample currentSample = sample;
+        if (currentSample == null)
+            throw new IllegalStateException("FlightsDB: sampling is not enabled, call enableSampling() first");
+        if (currentSample.isDepleted()) {
+            synchronized (this) {
+                if (sample != null && sample.isDepleted())
+                    sample = new FlightSample(sample.getCapacity(), ++sampleSeed, db.getAll());
+                if (sample != null)
+                    currentSample = sample;
+            }
+        }
+        return currentSample;
+    }
+
+    /**
+     * @param confidence probability that the interval holds the true share, e.g. 0.95
+     * @return estimated share of the flights matching the filter
+     */
+    public Estimate estimateShare(FlightsFilter flightsFilter, double confidence) {
+        return sample().estimateShare(flightsFilter, confidence);
+    }
+
+    /**
+     * @return estimated number of the flights matching the filter
+     */
+    public Estimate estimateCount(FlightsFilter flightsFilter, double confidence) {
+        return estimateShare(flightsFilter, confidence).toCount();
+    }
+
+    /**
+     * @param percentile value in [0, 100]
+     * @return percentile of all ground times between segments with a relative error of at most 1/16
+     */
+    public long estimateGroundTimePercentile(double percentile) {
+        return sample().groundTimePercentile(percentile);
+    }
+
+    /**
+     * @return share of all ground times between segments longer than the seconds, with the error of one sketch bucket
+     */
+    public double estimateGroundTimeShareGreater(long seconds) {
+        return sample().groundTimeShareGreater(seconds);
+    }
 }
@@ -0,0 +1,79 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FlightsFilter;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Материализованный результат фильтра. Создаётся через {@link FlightsDB#registerView(FlightsFilter)}
+ * и обновляется при каждом изменении FlightsDB проверкой только изменённых рейсов.
+ * Рейсы упорядочены по ключу порядка из FlightsDB, поэтому результат совпадает с filter() по getAll()
+ * и после update(), заменяющего рейс на его месте.
+ * Неизменяемый снимок результата строится один раз после изменения и затем отдаётся за O(1).
+ */
+public class FlightsView {
+    private final FlightsFilter flightsFilter;
+    private final NavigableMap<Long, Flight> matchedFlights = new TreeMap<>();
+    private final Map<Flight, Long> orderKeys = new IdentityHashMap<>();
+    private List<Flight> snapshot;
+
+    /**
+     * @param orderKeys key of every flight of the list, increasing in the order of the list
+     */
+    FlightsView(FlightsFilter flightsFilter, List<Flight> flightList, Map<Flight, Long> orderKeys) {
+        this.flightsFilter = flightsFilter;
+        for (Flight flight : flightsFilter.filter(flightList)) {
+            put(flight, orderKeys.get(flight));
+        }
+    }
+
+    public FlightsFilter getFlightsFilter() {
+        return flightsFilter;
+    }
+
+    /**
+     * @return immutable list of the matching flights, reused until the next change of the view
+     */
+    public synchronized List<Flight> getResult() {
+        if (snapshot == null)
+            snapshot = List.copyOf(matchedFlights.values());
+        return snapshot;
+    }
+
+    public synchronized int size() {
+        return matchedFlights.size();
+    }
+
+    private void put(Flight flight, long orderKey) {
+        if (orderKeys.putIfAbsent(flight, orderKey) == null)
+            matchedFlights.put(orderKey, flight);
+    }
+
+    synchronized void onAdd(Flight flight, long orderKey) {
+        if (flightsFilter.test(flight)) {
+            put(flight, orderKey);
+            snapshot = null;
+        }
+    }
+
+    synchronized void onRemove(Flight flight) {
+        Long orderKey = orderKeys.remove(flight);
+        if (orderKey != null) {
+            matchedFlights.remove(orderKey);
+            snapshot = null;
+        }
+    }
+
+    /**
+     * @param orderKey key of the old flight, the new flight takes its place
+     */
+    synchronized void onUpdate(Flight oldFlight, Flight newFlight, long orderKey) {
+        onRemove(oldFlight);
+        onAdd(newFlight, orderKey);
+    }
+}
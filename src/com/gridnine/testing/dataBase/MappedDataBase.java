@@ -0,0 +1,128 @@
+package com.gridnine.testing.dataBase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Хранилище рейсов, отображённое в память из двоичного файла. Файл читается страницами по мере обращения,
+ * поэтому запуск не зависит от размера данных, а кэш страниц ОС может держать больше, чем помещается в кучу.
+ * <p>
+ * Формат файла (little-endian):
+ * <pre>
+ * int  magic          'GNFL'
+ * int  version        1
+ * int  flightCount
+ * int  segmentCount
+ * int  flightOffsets[flightCount + 1]   index of the first segment of every flight, then segmentCount
+ * ...  padding up to 8 bytes
+ * long departureEpochs[segmentCount]    epoch seconds UTC
+ * long arrivalEpochs[segmentCount]      epoch seconds UTC
+ * </pre>
+ * Each column must fit into a single mapping of at most 2 GB.
+ */
+public class MappedDataBase extends BufferDataBase {
+    public static final int MAGIC = 0x474E464C;
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    public MappedDataBase(Path path) throws IOException {
+        this(map(path));
+    }
+
+    private MappedDataBase(MappedByteBuffer[] columns) {
+        super(columns[1].asLongBuffer(), columns[2].asLongBuffer(), columns[0].asIntBuffer());
+    }
+
+    private static long offsetsSize(int flightCount) {
+        return (flightCount + 1L) * Integer.BYTES;
+    }
+
+    private static long departuresPosition(int flightCount) {
+        long position = HEADER_SIZE + offsetsSize(flightCount);
+        return (position + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+    }
+
+    /**
+     * @return read-only mappings of the offsets, departure and arrival columns
+     */
+    private static MappedByteBuffer[] map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0)
+                    break;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+                throw new IOException("MappedDataBase: " + path + " is not a flight file");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("MappedDataBase: unsupported flight file version " + version);
+            int flightCount = header.getInt();
+            int segmentCount = header.getInt();
+            long departuresPosition = departuresPosition(flightCount);
+            long columnSize = (long) segmentCount * Long.BYTES;
+            if (flightCount < 0 || segmentCount < 0 || channel.size() < departuresPosition + 2 * columnSize)
+                throw new IOException("MappedDataBase: " + path + " is truncated");
+            // the channel can be closed right away, mappings stay valid until they are garbage collected
+            return new MappedByteBuffer[]{
+                    mapColumn(channel, HEADER_SIZE, offsetsSize(flightCount)),
+                    mapColumn(channel, departuresPosition, columnSize),
+                    mapColumn(channel, departuresPosition + columnSize, columnSize)
+            };
+        }
+    }
+
+    private static MappedByteBuffer mapColumn(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("MappedDataBase: column of " + size + " bytes does not fit into one mapping");
+        MappedByteBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        column.order(ByteOrder.LITTLE_ENDIAN);
+        return column;
+    }
+
+    /**
+     * Writes the flights in the format read by {@link #MappedDataBase(Path)}, replacing the file if it exists.
+     */
+    public static void write(Path path, ColumnarDataBase columnarDataBase) throws IOException {
+        int flightCount = columnarDataBase.getFlightCount();
+        int segmentCount = columnarDataBase.getSegmentCount();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(flightCount).putInt(segmentCount);
+            for (int offset : columnarDataBase.getFlightOffsets()) {
+                if (buffer.remaining() < Integer.BYTES)
+                    drain(channel, buffer);
+                buffer.putInt(offset);
+            }
+            long padding = departuresPosition(flightCount) - HEADER_SIZE - offsetsSize(flightCount);
+            if (buffer.remaining() < Long.BYTES)
+                drain(channel, buffer);
+            for (int i = 0; i < padding; i++) {
+                buffer.put((byte) 0);
+            }
+            for (long[] column : new long[][]{columnarDataBase.getDepartureEpochs(), columnarDataBase.getArrivalEpochs()}) {
+                for (long epoch : column) {
+                    if (buffer.remaining() < Long.BYTES)
+                        drain(channel, buffer);
+                    buffer.putLong(epoch);
+                }
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,78 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Хранилище рейсов в памяти вне кучи (direct ByteBuffer): колонки эпох и таблица смещений
+ * не создают объектов в куче, поэтому размер данных не влияет на паузы сборщика мусора.
+ * Память освобождается, когда хранилище становится недостижимым.
+ * Рейсы выдаются как лёгкие представления поверх буферов, см. {@link BufferDataBase#getFlight(int)}.
+ */
+public class OffHeapDataBase extends BufferDataBase {
+    public OffHeapDataBase(List<Flight> flightList) {
+        this(columns(flightList));
+    }
+
+    public OffHeapDataBase(ColumnarDataBase columnarDataBase) {
+        this(new Columns(
+                allocateLongs(columnarDataBase.getSegmentCount()).put(columnarDataBase.getDepartureEpochs()).clear(),
+                allocateLongs(columnarDataBase.getSegmentCount()).put(columnarDataBase.getArrivalEpochs()).clear(),
+                allocateInts(columnarDataBase.getFlightOffsets().length).put(columnarDataBase.getFlightOffsets()).clear()));
+    }
+
+    private OffHeapDataBase(Columns columns) {
+        super(columns.departureEpochs, columns.arrivalEpochs, columns.flightOffsets);
+    }
+
+    private static final class Columns {
+        private final LongBuffer departureEpochs;
+        private final LongBuffer arrivalEpochs;
+        private final IntBuffer flightOffsets;
+
+        private Columns(LongBuffer departureEpochs, LongBuffer arrivalEpochs, IntBuffer flightOffsets) {
+            this.departureEpochs = departureEpochs;
+            this.arrivalEpochs = arrivalEpochs;
+            this.flightOffsets = flightOffsets;
+        }
+    }
+
+    private static LongBuffer allocateLongs(int count) {
+        return ByteBuffer.allocateDirect(Math.multiplyExact(count, Long.BYTES)).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    private static IntBuffer allocateInts(int count) {
+        return ByteBuffer.allocateDirect(Math.multiplyExact(count, Integer.BYTES)).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * Writes the flights straight into direct buffers without intermediate arrays on the heap.
+     */
+    private static Columns columns(List<Flight> flightList) {
+        int segmentCount = 0;
+        for (Flight flight : flightList) {
+            segmentCount = Math.addExact(segmentCount, flight.getSegments().size());
+        }
+        LongBuffer departureEpochs = allocateLongs(segmentCount);
+        LongBuffer arrivalEpochs = allocateLongs(segmentCount);
+        IntBuffer flightOffsets = allocateInts(flightList.size() + 1);
+        int segmentIndex = 0;
+        for (Flight flight : flightList) {
+            flightOffsets.put(segmentIndex);
+            for (Segment segment : flight.getSegments()) {
+                departureEpochs.put(segmentIndex, segment.getDepartureDate().toEpochSecond(ZoneOffset.UTC));
+                arrivalEpochs.put(segmentIndex, segment.getArrivalDate().toEpochSecond(ZoneOffset.UTC));
+                segmentIndex++;
+            }
+        }
+        flightOffsets.put(segmentIndex).clear();
+        return new Columns(departureEpochs, arrivalEpochs, flightOffsets);
+    }
+}
@@ -0,0 +1,187 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.utils.Operators;
+import com.gridnine.testing.utils.TypeOfFlight;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Отсортированный индекс эпох сегментов (прибытия или отправления).
+ * sortedEpochs хранит эпохи по возрастанию, flightIds[i] - номер рейса, которому принадлежит sortedEpochs[i].
+ * Условие сравнения превращается в непрерывный диапазон этих массивов, который находится двоичным поиском.
+ * Если эпохи укладываются в 2^31 секунд, пары сортируются упакованными в long, иначе - сортировкой слиянием
+ * двух параллельных массивов.
+ */
+public class SegmentTimeIndex {
+    private final TypeOfFlight typeOfFlight;
+    private final long[] sortedEpochs;
+    private final int[] flightIds;
+
+    public SegmentTimeIndex(List<Flight> flightList, TypeOfFlight typeOfFlight) {
+        this.typeOfFlight = typeOfFlight;
+        int segmentCount = 0;
+        long minEpoch = Long.MAX_VALUE;
+        long maxEpoch = Long.MIN_VALUE;
+        for (Flight flight : flightList) {
+            for (Segment segment : flight.getSegments()) {
+                long epoch = epochOf(segment);
+                minEpoch = Math.min(minEpoch, epoch);
+                maxEpoch = Math.max(maxEpoch, epoch);
+                segmentCount++;
+            }
+        }
+        sortedEpochs = new long[segmentCount];
+        flightIds = new int[segmentCount];
+        if (segmentCount == 0)
+            return;
+        if (maxEpoch - minEpoch > Integer.MAX_VALUE) {
+            sortUnpacked(flightList);
+            return;
+        }
+        // (epoch offset, flight id) are packed into one long, so that a primitive sort orders both columns at once
+        long[] packed = new long[segmentCount];
+        int position = 0;
+        for (int flightId = 0; flightId < flightList.size(); flightId++) {
+            for (Segment segment : flightList.get(flightId).getSegments()) {
+                packed[position++] = (epochOf(segment) - minEpoch) << 32 | flightId;
+            }
+        }
+        Arrays.parallelSort(packed);
+        for (int i = 0; i < segmentCount; i++) {
+            sortedEpochs[i] = (packed[i] >>> 32) + minEpoch;
+            flightIds[i] = (int) packed[i];
+        }
+    }
+
+    /**
+     * Sorts the epochs and flight ids as parallel arrays when the offsets do not fit the packed layout.
+     * The bottom-up merge sort is stable, so equal epochs keep the ascending flight ids as the packed sort does.
+     */
+    private void sortUnpacked(List<Flight> flightList) {
+        int position = 0;
+        for (int flightId = 0; flightId < flightList.size(); flightId++) {
+            for (Segment segment : flightList.get(flightId).getSegments()) {
+                sortedEpochs[position] = epochOf(segment);
+                flightIds[position++] = flightId;
+            }
+        }
+        int length = sortedEpochs.length;
+        long[] epochs = sortedEpochs;
+        int[] ids = flightIds;
+        long[] epochBuffer = new long[length];
+        int[] idBuffer = new int[length];
+        for (int width = 1; width < length; width *= 2) {
+            for (int from = 0; from < length; from += 2 * width) {
+                int middle = Math.min(from + width, length);
+                int to = Math.min(from + 2 * width, length);
+                int left = from;
+                int right = middle;
+                for (int i = from; i < to; i++) {
+                    if (left < middle && (right == to || epochs[left] <= epochs[right])) {
+                        epochBuffer[i] = epochs[left];
+                        idBuffer[i] = ids[left++];
+                    } else {
+                        epochBuffer[i] = epochs[right];
+                        idBuffer[i] = ids[right++];
+                    }
+                }
+            }
+            long[] swappedEpochs = epochs;
+            epochs = epochBuffer;
+            epochBuffer = swappedEpochs;
+            int[] swappedIds = ids;
+            ids = idBuffer;
+            idBuffer = swappedIds;
+        }
+        if (epochs != sortedEpochs) {
+            System.arraycopy(epochs, 0, sortedEpochs, 0, length);
+            System.arraycopy(ids, 0, flightIds, 0, length);
+        }
+    }
+
+    private long epochOf(Segment segment) {
+        LocalDateTime dateTime = typeOfFlight == TypeOfFlight.ARRIVAL ? segment.getArrivalDate() : segment.getDepartureDate();
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public TypeOfFlight getTypeOfFlight() {
+        return typeOfFlight;
+    }
+
+    public int size() {
+        return sortedEpochs.length;
+    }
+
+    /**
+     * @return first position whose epoch is not less than epochTime
+     */
+    private int lowerBound(long epochTime) {
+        int low = 0;
+        int high = sortedEpochs.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedEpochs[middle] < epochTime)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return first position whose epoch is greater than epochTime
+     */
+    private int upperBound(long epochTime) {
+        int low = 0;
+        int high = sortedEpochs.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedEpochs[middle] <= epochTime)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return two positions [from, to) of the segments matching the condition
+     */
+    public int[] range(Operators operators, long epochTime) {
+        switch (operators) {
+            case EQUALS:
+                return new int[]{lowerBound(epochTime), upperBound(epochTime)};
+            case GREATER_OR_EQUALS:
+                return new int[]{lowerBound(epochTime), sortedEpochs.length};
+            case GREATER:
+                return new int[]{upperBound(epochTime), sortedEpochs.length};
+            case LESS:
+                return new int[]{0, lowerBound(epochTime)};
+            case LESS_OR_EQUALS:
+                return new int[]{0, upperBound(epochTime)};
+            default:
+                return new int[]{0, 0};
+        }
+    }
+
+    /**
+     * @return ids of the flights having at least one segment in the range, in ascending order
+     */
+    public BitSet flightIds(int[] range) {
+        BitSet result = new BitSet();
+        for (int i = range[0]; i < range[1]; i++) {
+            result.set(flightIds[i]);
+        }
+        return result;
+    }
+
+    public BitSet flightIds(Operators operators, long epochTime) {
+        return flightIds(range(operators, epochTime));
+    }
+}
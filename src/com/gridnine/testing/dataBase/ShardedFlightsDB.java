@@ -0,0 +1,433 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.interfaces.DataBase;
+import com.gridnine.testing.utils.FlightsFilter;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Хранилище рейсов, разбитое на N шардов по диапазонам времени первого вылета или по хешу.
+ * Фильтр выполняется на всех шардах одновременно, шарды, чей диапазон времени не может удовлетворить
+ * условиям прибытия и отправления, пропускаются. Результаты сливаются в исходном порядке рейсов.
+ * Изменения идут только через add(), update() и remove() этого класса: они поддерживают порядковые номера
+ * рейсов и диапазоны времени шардов, getShard() отдаёт шард только для чтения.
+ */
+public class ShardedFlightsDB implements AutoCloseable {
+    public enum Partitioning {
+        /**
+         * Each shard holds a contiguous range of first departure times, shards are of about equal size.
+         */
+        DEPARTURE_RANGE,
+        /**
+         * Flights are spread by a hash of their position, shards hold every time range.
+         */
+        HASH
+    }
+
+    private final Shard[] shards;
+    private final Partitioning partitioning;
+    // upper bounds of the first departures of the shards for DEPARTURE_RANGE
+    private final long[] departureBounds;
+    private int flightCount;
+    private long nextOrdinal;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    /**
+     * State of a shard, changed only under the lock of ShardedFlightsDB.
+     */
+    private static final class Shard {
+        private final DataBase<Flight> db;
+        // flights of db.getAll() and their positions in the original order, null after a change until the next filter()
+        private List<Flight> flights;
+        private long[] ordinals;
+        // positions of every stored occurrence of an instance in ascending order, which is also their storage order;
+        // built by the first change of the shard
+        private Map<Flight, long[]> ordinalsOf;
+        // removals do not narrow the ranges, they stay valid bounds for pruning
+        private long minDeparture = Long.MAX_VALUE;
+        private long maxDeparture = Long.MIN_VALUE;
+        private long minArrival = Long.MAX_VALUE;
+        private long maxArrival = Long.MIN_VALUE;
+
+        private Shard(DataBase<Flight> db, long[] ordinals) {
+            this.db = db;
+            this.flights = db.getAll();
+            this.ordinals = ordinals;
+            for (Flight flight : flights) {
+                widenRanges(flight);
+            }
+        }
+
+        private void widenRanges(Flight flight) {
+            for (Segment segment : flight.getSegments()) {
+                long departureEpoch = segment.getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+                long arrivalEpoch = segment.getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+                minDeparture = Math.min(minDeparture, departureEpoch);
+                maxDeparture = Math.max(maxDeparture, departureEpoch);
+                minArrival = Math.min(minArrival, arrivalEpoch);
+                maxArrival = Math.max(maxArrival, arrivalEpoch);
+            }
+        }
+
+        private boolean canMatch(FlightsFilter flightsFilter) {
+            return flightsFilter.canMatchTimeRange(minDeparture, maxDeparture, minArrival, maxArrival);
+        }
+
+        /**
+         * Call before a change of db, the positions are built from the flights it held until then.
+         */
+        private Map<Flight, long[]> ordinalsOf() {
+            if (ordinalsOf == null) {
+                ordinalsOf = new IdentityHashMap<>(flights.size());
+                for (int i = 0; i < flights.size(); i++) {
+                    addOrdinal(flights.get(i), ordinals[i]);
+                }
+            }
+            return ordinalsOf;
+        }
+
+        private void addOrdinal(Flight flight, long ordinal) {
+            long[] current = ordinalsOf.get(flight);
+            if (current == null) {
+                ordinalsOf.put(flight, new long[]{ordinal});
+                return;
+            }
+            long[] next = Arrays.copyOf(current, current.length + 1);
+            int position = current.length;
+            while (position > 0 && next[position - 1] > ordinal) {
+                next[position] = next[position - 1];
+                position--;
+            }
+            next[position] = ordinal;
+            ordinalsOf.put(flight, next);
+        }
+
+        /**
+         * update() and remove() of a DataBase act on the first stored occurrence, which has the smallest position.
+         */
+        private long removeFirstOrdinal(Flight flight) {
+            long[] current = ordinalsOf.get(flight);
+            if (current.length == 1)
+                ordinalsOf.remove(flight);
+            else
+                ordinalsOf.put(flight, Arrays.copyOfRange(current, 1, current.length));
+            return current[0];
+        }
+
+        /**
+         * Rebuilds the positions of the flights after a change, the k-th occurrence of an instance takes its k-th position.
+         */
+        private void refresh() {
+            if (flights != null)
+                return;
+            List<Flight> current = db.getAll();
+            long[] currentOrdinals = new long[current.size()];
+            // occurrences already numbered, only for instances stored more than once
+            Map<Flight, Integer> occurrences = null;
+            for (int i = 0; i < currentOrdinals.length; i++) {
+                Flight flight = current.get(i);
+                long[] own = ordinalsOf.get(flight);
+                int occurrence = 0;
+                if (own.length > 1) {
+                    if (occurrences == null)
+                        occurrences = new IdentityHashMap<>();
+                    occurrence = occurrences.merge(flight, 1, Integer::sum) - 1;
+                }
+                currentOrdinals[i] = own[occurrence];
+            }
+            flights = current;
+            ordinals = currentOrdinals;
+        }
+    }
+
+    /**
+     * Read-only view of a shard, changes must go through ShardedFlightsDB.
+     */
+    private static final class ReadOnlyShard implements DataBase<Flight> {
+        private final DataBase<Flight> db;
+
+        private ReadOnlyShard(DataBase<Flight> db) {
+            this.db = db;
+        }
+
+        @Override
+        public List<Flight> getAll() {
+            return Collections.unmodifiableList(db.getAll());
+        }
+    }
+
+    public ShardedFlightsDB(List<Flight> flightList, int shardCount, Partitioning partitioning) {
+        this(flightList, shardCount, partitioning, DataBaseImpl::new, Executors.newFixedThreadPool(shardCount), true);
+    }
+
+    /**
+     * @param shardFactory creates the backend of a shard from its flights
+     * @param executor     runs the shard scans, not shut down by {@link #close()}
+     */
+    public ShardedFlightsDB(List<Flight> flightList, int shardCount, Partitioning partitioning,
+                            Function<List<Flight>, DataBase<Flight>> shardFactory, ExecutorService executor) {
+        this(flightList, shardCount, partitioning, shardFactory, executor, false);
+    }
+
+    private ShardedFlightsDB(List<Flight> flightList, int shardCount, Partitioning partitioning,
+                             Function<List<Flight>, DataBase<Flight>> shardFactory, ExecutorService executor, boolean ownsExecutor) {
+        if (shardCount <= 0)
+            throw new IllegalArgumentException("ShardedFlightsDB: shard count must be positive");
+        this.flightCount = flightList.size();
+        this.nextOrdinal = flightList.size();
+        this.partitioning = partitioning;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        long[] firstDepartures = new long[flightList.size()];
+        for (int ordinal = 0; ordinal < flightList.size(); ordinal++) {
+            firstDepartures[ordinal] = firstDeparture(flightList.get(ordinal));
+        }
+        departureBounds = partitioning == Partitioning.DEPARTURE_RANGE ? departureBounds(firstDepartures, shardCount) : null;
+        int[] shardOfFlight = new int[flightList.size()];
+        for (int ordinal = 0; ordinal < flightList.size(); ordinal++) {
+            shardOfFlight[ordinal] = shardOf(firstDepartures[ordinal], ordinal, shardCount);
+        }
+        List<List<Flight>> shardFlights = new ArrayList<>(shardCount);
+        int[] shardSizes = new int[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardFlights.add(new ArrayList<>());
+        }
+        for (int shard : shardOfFlight) {
+            shardSizes[shard]++;
+        }
+        long[][] ordinals = new long[shardCount][];
+        for (int shard = 0; shard < shardCount; shard++) {
+            ordinals[shard] = new long[shardSizes[shard]];
+            shardSizes[shard] = 0;
+        }
+        for (int ordinal = 0; ordinal < flightList.size(); ordinal++) {
+            int shard = shardOfFlight[ordinal];
+            shardFlights.get(shard).add(flightList.get(ordinal));
+            ordinals[shard][shardSizes[shard]++] = ordinal;
+        }
+        shards = new Shard[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards[shard] = new Shard(shardFactory.apply(shardFlights.get(shard)), ordinals[shard]);
+        }
+    }
+
+    private static long firstDeparture(Flight flight) {
+        List<Segment> segments = flight.getSegments();
+        return segments.isEmpty() ? Long.MIN_VALUE : segments.get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * @return upper bounds of the first shardCount - 1 shards taken at equal quantiles of the first departures
+     */
+    private static long[] departureBounds(long[] firstDepartures, int shardCount) {
+        long[] sorted = firstDepartures.clone();
+        Arrays.sort(sorted);
+        long[] bounds = new long[shardCount - 1];
+        for (int shard = 0; shard < bounds.length; shard++) {
+            bounds[shard] = sorted.length == 0 ? Long.MAX_VALUE : sorted[(int) ((long) sorted.length * (shard + 1) / shardCount)];
+        }
+        return bounds;
+    }
+
+    private int shardOf(long firstDeparture, long ordinal, int shardCount) {
+        if (partitioning == Partitioning.HASH) {
+            int hash = Long.hashCode(ordinal) * 0x9E3779B9;
+            return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+        }
+        // the first shard whose upper bound is not below the departure, equal departures share a shard
+        int low = 0;
+        int high = departureBounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (departureBounds[middle] < firstDeparture)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return read-only view of the shard, changes go through {@link #add(Flight)}, {@link #update(Flight, Flight)}
+     * and {@link #remove(Flight)}
+     */
+    public DataBase<Flight> getShard(int shard) {
+        return new ReadOnlyShard(shards[shard].db);
+    }
+
+    public synchronized int size() {
+        return flightCount;
+    }
+
+    /**
+     * Adds the flight after all flights, to the shard chosen by the partitioning.
+     */
+    public synchronized void add(Flight flight) {
+        long ordinal = nextOrdinal;
+        Shard shard = shards[shardOf(firstDeparture(flight), ordinal, shards.length)];
+        shard.ordinalsOf();
+        shard.db.add(flight);
+        nextOrdinal++;
+        flightCount++;
+        shard.addOrdinal(flight, ordinal);
+        changed(shard, flight);
+    }
+
+    /**
+     * Replaces the flight on its place, the new flight stays in the shard of the old one.
+     *
+     * @return false if oldFlight is not stored
+     */
+    public synchronized boolean update(Flight oldFlight, Flight newFlight) {
+        Shard shard = shardOfFirstOccurrence(oldFlight);
+        if (shard == null || !shard.db.update(oldFlight, newFlight))
+            return false;
+        // the new flight takes the place, and the position, of the first occurrence of the old one
+        shard.addOrdinal(newFlight, shard.removeFirstOrdinal(oldFlight));
+        changed(shard, newFlight);
+        return true;
+    }
+
+    /**
+     * @return false if the flight is not stored
+     */
+    public synchronized boolean remove(Flight flight) {
+        Shard shard = shardOfFirstOccurrence(flight);
+        if (shard == null || !shard.db.remove(flight))
+            return false;
+        shard.removeFirstOrdinal(flight);
+        flightCount--;
+        shard.flights = null;
+        return true;
+    }
+
+    /**
+     * @return shard holding the occurrence of the flight with the smallest position, null if the flight is not stored
+     */
+    private Shard shardOfFirstOccurrence(Flight flight) {
+        Shard first = null;
+        long firstOrdinal = Long.MAX_VALUE;
+        for (Shard shard : shards) {
+            long[] ordinals = shard.ordinalsOf().get(flight);
+            if (ordinals != null && ordinals[0] < firstOrdinal) {
+                first = shard;
+                firstOrdinal = ordinals[0];
+            }
+        }
+        return first;
+    }
+
+    private void changed(Shard shard, Flight flight) {
+        shard.widenRanges(flight);
+        shard.flights = null;
+    }
+
+    /**
+     * Matching flights of one shard and their positions in the original list, both in ascending position order.
+     */
+    private static final class ShardResult {
+        private final List<Flight> flights = new ArrayList<>();
+        private long[] ordinals = new long[16];
+
+        private void add(Flight flight, long ordinal) {
+            if (flights.size() == ordinals.length)
+                ordinals = Arrays.copyOf(ordinals, ordinals.length * 2);
+            ordinals[flights.size()] = ordinal;
+            flights.add(flight);
+        }
+    }
+
+    private static ShardResult filterShard(List<Flight> flightList, long[] ordinals, FlightsFilter flightsFilter) {
+        ShardResult result = new ShardResult();
+        for (int i = 0; i < flightList.size(); i++) {
+            Flight flight = flightList.get(i);
+            if (flightsFilter.test(flight))
+                result.add(flight, ordinals[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the filter on every shard that can contain matches and merges the results in original order.
+     * The flights of the shards are taken under the lock, the scans run outside of it.
+     */
+    public List<Flight> filter(FlightsFilter flightsFilter) {
+        List<Future<ShardResult>> futures = new ArrayList<>(shards.length);
+        synchronized (this) {
+            for (Shard shard : shards) {
+                if (!shard.canMatch(flightsFilter))
+                    continue;
+                shard.refresh();
+                List<Flight> flightList = shard.flights;
+                long[] ordinals = shard.ordinals;
+                futures.add(executor.submit(() -> filterShard(flightList, ordinals, flightsFilter)));
+            }
+        }
+        List<ShardResult> shardResults = new ArrayList<>(futures.size());
+        int resultSize = 0;
+        try {
+            for (Future<ShardResult> future : futures) {
+                ShardResult shardResult = future.get();
+                shardResults.add(shardResult);
+                resultSize += shardResult.flights.size();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("ShardedFlightsDB: filter was interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("ShardedFlightsDB: shard filter failed", e.getCause());
+        }
+        return merge(shardResults, resultSize);
+    }
+
+    private static List<Flight> merge(List<ShardResult> shardResults, int resultSize) {
+        List<Flight> merged = new ArrayList<>(resultSize);
+        // cursor[0] - shard result, cursor[1] - position inside it
+        PriorityQueue<int[]> cursors = new PriorityQueue<>(Math.max(1, shardResults.size()),
+                (left, right) -> Long.compare(
+                        shardResults.get(left[0]).ordinals[left[1]],
+                        shardResults.get(right[0]).ordinals[right[1]]));
+        for (int shard = 0; shard < shardResults.size(); shard++) {
+            if (!shardResults.get(shard).flights.isEmpty())
+                cursors.add(new int[]{shard, 0});
+        }
+        while (!cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            ShardResult shardResult = shardResults.get(cursor[0]);
+            merged.add(shardResult.flights.get(cursor[1]));
+            if (++cursor[1] < shardResult.flights.size())
+                cursors.add(cursor);
+        }
+        return merged;
+    }
+
+    /**
+     * Shuts down the executor if it was created by this ShardedFlightsDB.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor)
+            executor.shutdown();
+    }
+}
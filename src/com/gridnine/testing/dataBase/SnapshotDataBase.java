@@ -0,0 +1,179 @@
+package com.gridnine.testing.dataBase;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightBuilder;
+import com.gridnine.testing.interfaces.DataBase;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Хранилище рейсов с неизменяемыми версиями (MVCC). getAll() возвращает снимок, который не меняется,
+ * пока его держит читатель, поэтому FlightsFilter работает по согласованным данным без блокировок.
+ * Запись строит новую версию и публикует её через compareAndSet, повторяя попытку при гонке.
+ * Версии хранятся блоками по 256 рейсов, и новая версия переиспользует все блоки, которые не изменились:
+ * добавление копирует последний блок и массив ссылок на блоки, замена - один блок, удаление - блок
+ * удалённого рейса и все следующие. Старые версии собирает GC, когда их больше никто не держит.
+ */
+public class SnapshotDataBase implements DataBase<Flight> {
+    private static final int CHUNK_SHIFT = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final AtomicReference<Snapshot> current;
+
+    public SnapshotDataBase() {
+        this(FlightBuilder.createFlights());
+    }
+
+    public SnapshotDataBase(List<Flight> flightList) {
+        current = new AtomicReference<>(Snapshot.EMPTY.withAdded(flightList));
+    }
+
+    /**
+     * Immutable version of the flights. Every full chunk holds CHUNK_SIZE flights, only the last one may be shorter.
+     */
+    public static final class Snapshot extends AbstractList<Flight> implements RandomAccess {
+        private static final Snapshot EMPTY = new Snapshot(new Flight[0][], 0, 0);
+
+        private final Flight[][] chunks;
+        private final int size;
+        private final long version;
+
+        private Snapshot(Flight[][] chunks, int size, long version) {
+            this.chunks = chunks;
+            this.size = size;
+            this.version = version;
+        }
+
+        /**
+         * @return number of the version, every write increases it by one
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        @Override
+        public Flight get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("SnapshotDataBase: index " + index + ", size " + size);
+            return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private Snapshot withAdded(List<Flight> flights) {
+            int newSize = size + flights.size();
+            Flight[][] newChunks = Arrays.copyOf(chunks, (newSize + CHUNK_MASK) >>> CHUNK_SHIFT);
+            int index = size;
+            for (Flight flight : flights) {
+                int chunk = index >>> CHUNK_SHIFT;
+                int offset = index & CHUNK_MASK;
+                // the last chunk of this snapshot is copied before it is extended, new chunks are filled in place
+                if (offset == 0 || index == size)
+                    newChunks[chunk] = offset == 0
+                            ? new Flight[Math.min(CHUNK_SIZE, newSize - index)]
+                            : Arrays.copyOf(chunks[chunk], Math.min(CHUNK_SIZE, newSize - (index - offset)));
+                newChunks[chunk][offset] = flight;
+                index++;
+            }
+            return new Snapshot(newChunks, newSize, version + 1);
+        }
+
+        private Snapshot withReplaced(int index, Flight flight) {
+            Flight[][] newChunks = chunks.clone();
+            int chunk = index >>> CHUNK_SHIFT;
+            newChunks[chunk] = chunks[chunk].clone();
+            newChunks[chunk][index & CHUNK_MASK] = flight;
+            return new Snapshot(newChunks, size, version + 1);
+        }
+
+        private Snapshot withRemoved(int index) {
+            int newSize = size - 1;
+            Flight[][] newChunks = Arrays.copyOf(chunks, (newSize + CHUNK_MASK) >>> CHUNK_SHIFT);
+            // chunks before the removed flight are shared, the following ones are shifted by one flight
+            for (int chunk = index >>> CHUNK_SHIFT; chunk < newChunks.length; chunk++) {
+                int from = chunk << CHUNK_SHIFT;
+                Flight[] flights = new Flight[Math.min(CHUNK_SIZE, newSize - from)];
+                for (int offset = 0; offset < flights.length; offset++) {
+                    int oldIndex = from + offset;
+                    flights[offset] = get(oldIndex < index ? oldIndex : oldIndex + 1);
+                }
+                newChunks[chunk] = flights;
+            }
+            return new Snapshot(newChunks, newSize, version + 1);
+        }
+
+        private int identityIndexOf(Flight flight) {
+            for (int index = 0; index < size; index++) {
+                if (chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] == flight)
+                    return index;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * @return current snapshot, not changed by later writes
+     */
+    @Override
+    public Snapshot getAll() {
+        return current.get();
+    }
+
+    @Override
+    public void add(Flight flight) {
+        addAll(List.of(flight));
+    }
+
+    /**
+     * Publishes all flights as one version.
+     */
+    @Override
+    public void addAll(List<Flight> flights) {
+        if (flights.isEmpty())
+            return;
+        Snapshot snapshot;
+        do {
+            snapshot = current.get();
+        } while (!current.compareAndSet(snapshot, snapshot.withAdded(flights)));
+    }
+
+    @Override
+    public boolean update(Flight oldFlight, Flight newFlight) {
+        Snapshot snapshot;
+        Snapshot next;
+        do {
+            snapshot = current.get();
+            int index = snapshot.identityIndexOf(oldFlight);
+            if (index < 0)
+                return false;
+            next = snapshot.withReplaced(index, newFlight);
+        } while (!current.compareAndSet(snapshot, next));
+        return true;
+    }
+
+    @Override
+    public boolean remove(Flight flight) {
+        Snapshot snapshot;
+        Snapshot next;
+        do {
+            snapshot = current.get();
+            int index = snapshot.identityIndexOf(flight);
+            if (index < 0)
+                return false;
+            next = snapshot.withRemoved(index);
+        } while (!current.compareAndSet(snapshot, next));
+        return true;
+    }
+
+    public long getVersion() {
+        return current.get().getVersion();
+    }
+}
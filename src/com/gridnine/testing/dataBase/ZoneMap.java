@@ -0,0 +1,119 @@
+package com.gridnine.testing.dataBase;
+
+/**
+ * Сводки по блокам рейсов колоночного хранилища: минимум и максимум времени отправления, прибытия
+ * и времени на земле, минимальное число сегментов и признак "все сегменты корректны".
+ * Блок содержит blockSize подряд идущих рейсов. По сводкам фильтр пропускает блоки, в которых
+ * ни один рейс не может подойти, и принимает целиком блоки, где подходят все.
+ */
+public class ZoneMap {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final int blockSize;
+    private final int flightCount;
+    private final long[] minDeparture;
+    private final long[] maxDeparture;
+    private final long[] minArrival;
+    private final long[] maxArrival;
+    private final long[] minGap;
+    private final long[] maxGap;
+    private final int[] minSegmentCount;
+    private final boolean[] allValid;
+
+    public ZoneMap(long[] departureEpochs, long[] arrivalEpochs, int[] flightOffsets, int blockSize) {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("ZoneMap: block size must be positive");
+        this.blockSize = blockSize;
+        this.flightCount = flightOffsets.length - 1;
+        int blockCount = (flightCount + blockSize - 1) / blockSize;
+        minDeparture = new long[blockCount];
+        maxDeparture = new long[blockCount];
+        minArrival = new long[blockCount];
+        maxArrival = new long[blockCount];
+        minGap = new long[blockCount];
+        maxGap = new long[blockCount];
+        minSegmentCount = new int[blockCount];
+        allValid = new boolean[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            minDeparture[block] = Long.MAX_VALUE;
+            maxDeparture[block] = Long.MIN_VALUE;
+            minArrival[block] = Long.MAX_VALUE;
+            maxArrival[block] = Long.MIN_VALUE;
+            minGap[block] = Long.MAX_VALUE;
+            maxGap[block] = Long.MIN_VALUE;
+            minSegmentCount[block] = Integer.MAX_VALUE;
+            allValid[block] = true;
+            int lastFlight = Math.min(flightCount, (block + 1) * blockSize);
+            for (int flightIndex = block * blockSize; flightIndex < lastFlight; flightIndex++) {
+                int from = flightOffsets[flightIndex];
+                int to = flightOffsets[flightIndex + 1];
+                minSegmentCount[block] = Math.min(minSegmentCount[block], to - from);
+                for (int segmentIndex = from; segmentIndex < to; segmentIndex++) {
+                    long departureEpoch = departureEpochs[segmentIndex];
+                    long arrivalEpoch = arrivalEpochs[segmentIndex];
+                    minDeparture[block] = Math.min(minDeparture[block], departureEpoch);
+                    maxDeparture[block] = Math.max(maxDeparture[block], departureEpoch);
+                    minArrival[block] = Math.min(minArrival[block], arrivalEpoch);
+                    maxArrival[block] = Math.max(maxArrival[block], arrivalEpoch);
+                    allValid[block] &= arrivalEpoch >= departureEpoch;
+                    if (segmentIndex > from) {
+                        long gap = departureEpoch - arrivalEpochs[segmentIndex - 1];
+                        minGap[block] = Math.min(minGap[block], gap);
+                        maxGap[block] = Math.max(maxGap[block], gap);
+                    }
+                }
+            }
+        }
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getBlockCount() {
+        return minDeparture.length;
+    }
+
+    public int getFirstFlight(int block) {
+        return block * blockSize;
+    }
+
+    public int getLastFlight(int block) {
+        return Math.min(flightCount, (block + 1) * blockSize);
+    }
+
+    /**
+     * Min/max getters return Long.MAX_VALUE/Long.MIN_VALUE for blocks without segments (or without gaps).
+     */
+    public long getMinDeparture(int block) {
+        return minDeparture[block];
+    }
+
+    public long getMaxDeparture(int block) {
+        return maxDeparture[block];
+    }
+
+    public long getMinArrival(int block) {
+        return minArrival[block];
+    }
+
+    public long getMaxArrival(int block) {
+        return maxArrival[block];
+    }
+
+    public long getMinGap(int block) {
+        return minGap[block];
+    }
+
+    public long getMaxGap(int block) {
+        return maxGap[block];
+    }
+
+    public int getMinSegmentCount(int block) {
+        return minSegmentCount[block];
+    }
+
+    public boolean isAllValid(int block) {
+        return allValid[block];
+    }
+}
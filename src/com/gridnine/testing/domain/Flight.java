@@ -1,22 +1,47 @@
 package com.gridnine.testing.domain;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class Flight {
     private final List<Segment> segments;
+    // computed on the first use, racing threads compute equal values
+    private FlightMetrics metrics;
 
+    /**
+     * @param segs segments of the flight; copied so that later changes of the list cannot make the cached metrics stale,
+     *             unless it is an immutable {@link SegmentView}
+     */
     public Flight(final List<Segment> segs) {
-        segments = segs;
+        segments = segs instanceof SegmentView ? segs : List.copyOf(segs);
     }
 
+    /**
+     * @return immutable list of the segments
+     */
     public List<Segment> getSegments() {
         return segments;
     }
 
+    /**
+     * @return derived metrics of the segments, computed once
+     */
+    public FlightMetrics getMetrics() {
+        FlightMetrics result = metrics;
+        if (result == null) {
+            result = new FlightMetrics(segments);
+            metrics = result;
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
-        return segments.stream().map(Object::toString)
-                .collect(Collectors.joining(" "));
+        StringBuilder result = new StringBuilder(segments.size() * 36);
+        for (int i = 0; i < segments.size(); i++) {
+            if (i > 0)
+                result.append(' ');
+            result.append(segments.get(i));
+        }
+        return result.toString();
     }
 }
@@ -0,0 +1,107 @@
+package com.gridnine.testing.domain;
+
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Производные показатели рейса, вычисляемые один раз по его сегментам: суммарное, максимальное и минимальное
+ * время на земле между сегментами, время первого вылета и последнего прилёта (секунды эпохи UTC),
+ * число сегментов и корректность (ни один сегмент не прилетает раньше, чем вылетает).
+ * С ними проверки простоя и корректности в FlightsFilter сводятся к сравнениям чисел.
+ */
+public final class FlightMetrics {
+    private final int segmentCount;
+    private final long totalGroundSeconds;
+    private final long maxGapSeconds;
+    private final long minGapSeconds;
+    private final long firstDepartureEpoch;
+    private final long lastArrivalEpoch;
+    private final boolean valid;
+
+    public FlightMetrics(List<Segment> segments) {
+        segmentCount = segments.size();
+        long total = 0;
+        long max = Long.MIN_VALUE;
+        long min = Long.MAX_VALUE;
+        long firstDeparture = Long.MIN_VALUE;
+        long previousArrival = Long.MIN_VALUE;
+        boolean allValid = true;
+        for (int i = 0; i < segmentCount; i++) {
+            long departureEpoch = segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+            long arrivalEpoch = segments.get(i).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+            allValid &= arrivalEpoch >= departureEpoch;
+            if (i == 0) {
+                firstDeparture = departureEpoch;
+            } else {
+                long gap = departureEpoch - previousArrival;
+                total += gap;
+                max = Math.max(max, gap);
+                min = Math.min(min, gap);
+            }
+            previousArrival = arrivalEpoch;
+        }
+        totalGroundSeconds = total;
+        maxGapSeconds = max;
+        minGapSeconds = min;
+        firstDepartureEpoch = firstDeparture;
+        lastArrivalEpoch = previousArrival;
+        valid = allValid;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return number of ground intervals, i.e. pairs of adjacent segments
+     */
+    public int getGapCount() {
+        return Math.max(0, segmentCount - 1);
+    }
+
+    /**
+     * @return sum of the ground times between segments, 0 with less than two segments
+     */
+    public long getTotalGroundSeconds() {
+        return totalGroundSeconds;
+    }
+
+    /**
+     * @return Long.MIN_VALUE with less than two segments
+     */
+    public long getMaxGapSeconds() {
+        return maxGapSeconds;
+    }
+
+    /**
+     * @return Long.MAX_VALUE with less than two segments
+     */
+    public long getMinGapSeconds() {
+        return minGapSeconds;
+    }
+
+    /**
+     * @return Long.MIN_VALUE without segments
+     */
+    public long getFirstDepartureEpoch() {
+        return firstDepartureEpoch;
+    }
+
+    /**
+     * @return Long.MIN_VALUE without segments
+     */
+    public long getLastArrivalEpoch() {
+        return lastArrivalEpoch;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public String toString() {
+        return "FlightMetrics{segments=" + segmentCount + ", totalGroundSeconds=" + totalGroundSeconds
+                + ", maxGapSeconds=" + maxGapSeconds + ", minGapSeconds=" + minGapSeconds
+                + ", firstDeparture=" + firstDepartureEpoch + ", lastArrival=" + lastArrivalEpoch + ", valid=" + valid + '}';
+    }
+}
@@ -5,6 +5,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 
 public class Segment {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
+
     private final LocalDateTime departureDate;
 
     private final LocalDateTime arrivalDate;
@@ -24,9 +26,7 @@ public class Segment {
 
     @Override
     public String toString() {
-        DateTimeFormatter fmt =
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
-        return '[' + departureDate.format(fmt) + '|' + arrivalDate.format(fmt)
+        return '[' + departureDate.format(FORMATTER) + '|' + arrivalDate.format(FORMATTER)
                 + ']';
     }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.gridnine.testing.domain;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Неизменяемый список сегментов, который {@link Flight} принимает без копирования: лёгкие представления
+ * поверх колонок хранилищ или массив, созданный для одного рейса. Содержимое не должно меняться после создания рейса,
+ * иначе закэшированные FlightMetrics устареют. Остальные списки Flight копирует.
+ */
+public abstract class SegmentView extends AbstractList<Segment> implements RandomAccess {
+    /**
+     * @param segments array owned by the view, the caller must not change it afterwards
+     * @return view over the array without copying it
+     */
+    public static SegmentView of(Segment... segments) {
+        return new SegmentView() {
+            @Override
+            public Segment get(int index) {
+                return segments[index];
+            }
+
+            @Override
+            public int size() {
+                return segments.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,226 @@
+package com.gridnine.testing.export;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Потоковая выгрузка рейсов в WritableByteChannel или файл, по строке на рейс:
+ * <ul>
+ * <li>TEXT: как Flight.toString(), {@code [2024-01-01T10:15|2024-01-01T12:00] [...]};</li>
+ * <li>CSV: {@code departure,arrival[,departure,arrival...]};</li>
+ * <li>NDJSON: {@code {"segments":[{"departure":"...","arrival":"..."}, ...]}}, как в ответах FlightsQueryServer.</li>
+ * </ul>
+ * CSV и NDJSON читаются обратно FlightParser. Время переводится из секунд эпохи в ISO-8601 вручную и пишется
+ * сразу в байты переиспользуемого direct-буфера, поэтому на строку не создаются ни String, ни форматтеры.
+ * Экземпляр не потокобезопасен: у каждого потока свой экспортёр.
+ */
+public class FlightExporter {
+    public enum Format {
+        TEXT, CSV, NDJSON
+    }
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Longest segment: two times of up to 20 bytes (signed 10-digit year) and the NDJSON keys.
+     */
+    private static final int MAX_SEGMENT_BYTES = 96;
+    private static final byte[] LINE_SEPARATOR = {'\r', '\n'};
+    private static final byte[] JSON_FLIGHT_START = ascii("{\"segments\":[");
+    private static final byte[] JSON_DEPARTURE = ascii("{\"departure\":\"");
+    private static final byte[] JSON_ARRIVAL = ascii("\",\"arrival\":\"");
+    private static final byte[] JSON_SEGMENT_END = ascii("\"}");
+    private static final byte[] JSON_FLIGHT_END = ascii("]}");
+
+    private static final long SECONDS_PER_DAY = 86_400;
+    private static final int DAYS_PER_ERA = 146_097;
+    // days from 0000-03-01 to 1970-01-01
+    private static final long EPOCH_DAY_SHIFT = 719_468;
+
+    private final Format format;
+    private final ByteBuffer buffer;
+
+    public FlightExporter(Format format) {
+        this(format, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize size of the direct buffer, filled before each write to the channel
+     */
+    public FlightExporter(Format format, int bufferSize) {
+        if (bufferSize < MAX_SEGMENT_BYTES)
+            throw new IllegalArgumentException("FlightExporter: bufferSize must be at least " + MAX_SEGMENT_BYTES);
+        this.format = format;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    private static byte[] ascii(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return bytes;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Writes the flights and flushes the buffer, the channel stays open.
+     *
+     * @param flights e.g. a lazy result of FlightsFilter.filter(Iterator)
+     * @return number of written flights
+     */
+    public long export(Iterator<Flight> flights, WritableByteChannel channel) throws IOException {
+        long count = 0;
+        try {
+            while (flights.hasNext()) {
+                writeFlight(flights.next(), channel);
+                count++;
+            }
+            flush(channel);
+        } finally {
+            buffer.clear();
+        }
+        return count;
+    }
+
+    public long export(List<Flight> flights, WritableByteChannel channel) throws IOException {
+        return export(flights.iterator(), channel);
+    }
+
+    /**
+     * Replaces the file with the exported flights.
+     */
+    public long export(Iterator<Flight> flights, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return export(flights, channel);
+        }
+    }
+
+    public long export(List<Flight> flights, Path path) throws IOException {
+        return export(flights.iterator(), path);
+    }
+
+    private void flush(WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensure(int bytes, WritableByteChannel channel) throws IOException {
+        if (buffer.remaining() < bytes)
+            flush(channel);
+    }
+
+    private void writeFlight(Flight flight, WritableByteChannel channel) throws IOException {
+        List<Segment> segments = flight.getSegments();
+        ensure(JSON_FLIGHT_START.length, channel);
+        if (format == Format.NDJSON)
+            buffer.put(JSON_FLIGHT_START);
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            long departureEpoch = segment.getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+            long arrivalEpoch = segment.getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+            ensure(MAX_SEGMENT_BYTES, channel);
+            switch (format) {
+                case TEXT:
+                    if (i > 0)
+                        buffer.put((byte) ' ');
+                    buffer.put((byte) '[');
+                    writeDateTime(buffer, departureEpoch, false);
+                    buffer.put((byte) '|');
+                    writeDateTime(buffer, arrivalEpoch, false);
+                    buffer.put((byte) ']');
+                    break;
+                case CSV:
+                    if (i > 0)
+                        buffer.put((byte) ',');
+                    writeDateTime(buffer, departureEpoch, true);
+                    buffer.put((byte) ',');
+                    writeDateTime(buffer, arrivalEpoch, true);
+                    break;
+                default:
+                case NDJSON:
+                    if (i > 0)
+                        buffer.put((byte) ',');
+                    buffer.put(JSON_DEPARTURE);
+                    writeDateTime(buffer, departureEpoch, true);
+                    buffer.put(JSON_ARRIVAL);
+                    writeDateTime(buffer, arrivalEpoch, true);
+                    buffer.put(JSON_SEGMENT_END);
+            }
+        }
+        ensure(JSON_FLIGHT_END.length + LINE_SEPARATOR.length, channel);
+        if (format == Format.NDJSON)
+            buffer.put(JSON_FLIGHT_END);
+        buffer.put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the UTC time of the epoch second as {@code yyyy-MM-ddTHH:mm[:ss]}. The date is computed
+     * with the days-from-civil inverse over 400-year eras, years beyond 9999 get a sign as in ISO-8601.
+     */
+    static void writeDateTime(ByteBuffer target, long epochSecond, boolean withSeconds) {
+        long epochDay = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        long days = epochDay + EPOCH_DAY_SHIFT;
+        long era = Math.floorDiv(days, DAYS_PER_ERA);
+        int dayOfEra = (int) (days - era * DAYS_PER_ERA);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        // months counted from March
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year < 0) {
+            target.put((byte) '-');
+            writeYear(target, -year);
+        } else {
+            if (year > 9999)
+                target.put((byte) '+');
+            writeYear(target, year);
+        }
+        target.put((byte) '-');
+        writeTwoDigits(target, month);
+        target.put((byte) '-');
+        writeTwoDigits(target, day);
+        target.put((byte) 'T');
+        writeTwoDigits(target, secondOfDay / 3600);
+        target.put((byte) ':');
+        writeTwoDigits(target, secondOfDay / 60 % 60);
+        if (withSeconds) {
+            target.put((byte) ':');
+            writeTwoDigits(target, secondOfDay % 60);
+        }
+    }
+
+    private static void writeYear(ByteBuffer target, long year) {
+        long divisor = 1000;
+        while (divisor * 10 <= year) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            target.put((byte) ('0' + year / divisor % 10));
+        }
+    }
+
+    private static void writeTwoDigits(ByteBuffer target, int value) {
+        target.put((byte) ('0' + value / 10));
+        target.put((byte) ('0' + value % 10));
+    }
+}
@@ -0,0 +1,226 @@
+package com.gridnine.testing.ingest;
+
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FlightsFilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Потоковая загрузка рейсов на java.util.concurrent.Flow. Строки CSV или NDJSON разбираются пачками
+ * по batchSize рейсов и публикуются через SubmissionPublisher с буфером не больше bufferCapacity пачек
+ * на подписчика: если подписчик не успевает, ingest() ждёт освобождения буфера.
+ * Каждая пачка добавляется в FlightsDB, а подписки с фильтром получают только новые подходящие рейсы,
+ * без повторной фильтрации всего хранилища.
+ */
+public class FlightIngestion implements AutoCloseable {
+    private final SubmissionPublisher<List<Flight>> publisher;
+    private final Executor executor;
+    private final int batchSize;
+    private final int bufferCapacity;
+    private final CompletableFuture<Void> appended = new CompletableFuture<>();
+
+    /**
+     * Delivers the batches on a pool of its own: the filter subscriptions block in submit() while their subscribers
+     * are slow, which must not occupy the threads of the common pool.
+     */
+    public FlightIngestion(FlightsDB flightsDB, int batchSize, int bufferCapacity) {
+        this(flightsDB, batchSize, bufferCapacity, newDeliveryExecutor());
+    }
+
+    /**
+     * @param executor delivers the batches to the subscribers; every subscription may block one of its threads
+     */
+    public FlightIngestion(FlightsDB flightsDB, int batchSize, int bufferCapacity, Executor executor) {
+        if (batchSize <= 0 || bufferCapacity <= 0)
+            throw new IllegalArgumentException("FlightIngestion: batch size and buffer capacity must be positive");
+        this.batchSize = batchSize;
+        this.bufferCapacity = bufferCapacity;
+        this.executor = executor;
+        this.publisher = new SubmissionPublisher<>(executor, bufferCapacity);
+        publisher.subscribe(new Appender(flightsDB));
+    }
+
+    /**
+     * Unbounded pool of daemon threads that end after a minute without batches, so it is never shut down
+     * and batches published before close() are still delivered after it.
+     */
+    private static ExecutorService newDeliveryExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1, TimeUnit.MINUTES, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "flight-ingestion-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Appends every batch to the FlightsDB one batch at a time.
+     */
+    private final class Appender implements Flow.Subscriber<List<Flight>> {
+        private final FlightsDB flightsDB;
+        private Flow.Subscription subscription;
+
+        private Appender(FlightsDB flightsDB) {
+            this.flightsDB = flightsDB;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<Flight> batch) {
+            flightsDB.addAll(batch);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            appended.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            appended.complete(null);
+        }
+    }
+
+    /**
+     * Passes on the flights of each batch that match the filter. Stops reading batches
+     * once its only subscriber has cancelled.
+     */
+    private static final class FilterProcessor extends SubmissionPublisher<Flight> implements Flow.Processor<List<Flight>, Flight> {
+        private final FlightsFilter flightsFilter;
+        private Flow.Subscription subscription;
+
+        private FilterProcessor(FlightsFilter flightsFilter, Executor executor, int bufferCapacity) {
+            super(executor, bufferCapacity);
+            this.flightsFilter = flightsFilter;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<Flight> batch) {
+            if (!hasSubscribers()) {
+                subscription.cancel();
+                close();
+                return;
+            }
+            for (Flight flight : batch) {
+                if (flightsFilter.test(flight))
+                    submit(flight);
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            closeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+        }
+    }
+
+    /**
+     * Subscribes to the flights ingested from now on that match the filter.
+     * The subscriber controls the flow with Subscription.request() and stops it with cancel().
+     */
+    public void subscribe(FlightsFilter flightsFilter, Flow.Subscriber<? super Flight> subscriber) {
+        FilterProcessor processor = new FilterProcessor(flightsFilter, executor, bufferCapacity * batchSize);
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+    }
+
+    /**
+     * Parses the lines and publishes them in batches, blocking while the buffers of the subscribers are full.
+     *
+     * @return number of published flights
+     * @throws IllegalArgumentException with the line number if a line is malformed, earlier batches stay published
+     */
+    public long ingest(Reader reader, FlightParser.Format format) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        long published = 0;
+        long lineNumber = 0;
+        List<Flight> batch = new ArrayList<>(batchSize);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            Flight flight;
+            try {
+                flight = FlightParser.parse(line, format);
+            } catch (IllegalArgumentException e) {
+                publish(batch);
+                throw new IllegalArgumentException("FlightIngestion: line " + lineNumber + ": " + e.getMessage(), e);
+            }
+            if (flight == null)
+                continue;
+            batch.add(flight);
+            if (batch.size() == batchSize) {
+                published += publish(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        return published + publish(batch);
+    }
+
+    /**
+     * Same as {@link #ingest(Reader, FlightParser.Format)} for a UTF-8 file, the format is taken
+     * from the extension: .csv for CSV, anything else for NDJSON.
+     */
+    public long ingest(Path path) throws IOException {
+        FlightParser.Format format = path.getFileName().toString().endsWith(".csv") ? FlightParser.Format.CSV : FlightParser.Format.NDJSON;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return ingest(reader, format);
+        }
+    }
+
+    private int publish(List<Flight> batch) {
+        if (batch.isEmpty())
+            return 0;
+        publisher.submit(Collections.unmodifiableList(batch));
+        return batch.size();
+    }
+
+    /**
+     * @return completes when every batch published before close() was added to the FlightsDB
+     */
+    public CompletableFuture<Void> getAppended() {
+        return appended;
+    }
+
+    /**
+     * Stops accepting flights; subscribers receive onComplete after the remaining batches.
+     */
+    @Override
+    public void close() {
+        publisher.close();
+    }
+}
@@ -0,0 +1,126 @@
+package com.gridnine.testing.ingest;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор одного рейса из строки входного файла. Время задаётся в формате ISO-8601 без зоны
+ * ({@code 2024-01-01T10:15}) или числом секунд эпохи UTC.
+ * <ul>
+ * <li>CSV: {@code departure,arrival[,departure,arrival...]}, строки, начинающиеся с '#' или "departure", пропускаются;</li>
+ * <li>NDJSON: {@code {"segments":[{"departure":"...","arrival":"..."}, ...]}} - формат ответа FlightsQueryServer.</li>
+ * </ul>
+ */
+public final class FlightParser {
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private FlightParser() {
+    }
+
+    /**
+     * @return parsed flight, null for blank, comment and header lines
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    public static Flight parse(String line, Format format) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#"))
+            return null;
+        return format == Format.CSV ? parseCsv(trimmed) : parseJson(trimmed);
+    }
+
+    private static Flight parseCsv(String line) {
+        if (line.startsWith("departure"))
+            return null;
+        String[] fields = line.split(",", -1);
+        if (fields.length % 2 != 0)
+            throw new IllegalArgumentException("expected departure,arrival pairs, got " + fields.length + " fields");
+        List<Segment> segments = new ArrayList<>(fields.length / 2);
+        for (int i = 0; i < fields.length; i += 2) {
+            segments.add(new Segment(parseTime(fields[i]), parseTime(fields[i + 1])));
+        }
+        return new Flight(segments);
+    }
+
+    /**
+     * Reads the "departure" and "arrival" members in the order they appear, other members are ignored.
+     */
+    private static Flight parseJson(String line) {
+        if (line.charAt(0) != '{')
+            throw new IllegalArgumentException("expected a JSON object");
+        List<Segment> segments = new ArrayList<>();
+        LocalDateTime departure = null;
+        int position = 0;
+        while (true) {
+            int keyStart = line.indexOf('"', position);
+            if (keyStart < 0)
+                break;
+            int keyEnd = line.indexOf('"', keyStart + 1);
+            if (keyEnd < 0)
+                throw new IllegalArgumentException("unterminated string");
+            String key = line.substring(keyStart + 1, keyEnd);
+            position = keyEnd + 1;
+            if (!key.equals("departure") && !key.equals("arrival"))
+                continue;
+            int colon = skipSpaces(line, position);
+            if (colon >= line.length() || line.charAt(colon) != ':')
+                continue;
+            int valueStart = skipSpaces(line, colon + 1);
+            int valueEnd;
+            String value;
+            if (valueStart < line.length() && line.charAt(valueStart) == '"') {
+                valueEnd = line.indexOf('"', valueStart + 1);
+                if (valueEnd < 0)
+                    throw new IllegalArgumentException("unterminated string");
+                value = line.substring(valueStart + 1, valueEnd);
+                valueEnd++;
+            } else {
+                valueEnd = valueStart;
+                while (valueEnd < line.length() && (Character.isDigit(line.charAt(valueEnd)) || line.charAt(valueEnd) == '-'))
+                    valueEnd++;
+                value = line.substring(valueStart, valueEnd);
+            }
+            position = valueEnd;
+            LocalDateTime time = parseTime(value);
+            if (key.equals("departure")) {
+                if (departure != null)
+                    throw new IllegalArgumentException("departure without arrival");
+                departure = time;
+            } else {
+                if (departure == null)
+                    throw new IllegalArgumentException("arrival without departure");
+                segments.add(new Segment(departure, time));
+                departure = null;
+            }
+        }
+        if (departure != null)
+            throw new IllegalArgumentException("departure without arrival");
+        return new Flight(segments);
+    }
+
+    private static int skipSpaces(String line, int position) {
+        while (position < line.length() && Character.isWhitespace(line.charAt(position)))
+            position++;
+        return position;
+    }
+
+    private static LocalDateTime parseTime(String field) {
+        String value = field.trim();
+        if (value.isEmpty())
+            throw new IllegalArgumentException("empty time");
+        try {
+            if (value.chars().allMatch(c -> Character.isDigit(c) || c == '-') && value.indexOf('-', 1) < 0)
+                return LocalDateTime.ofEpochSecond(Long.parseLong(value), 0, ZoneOffset.UTC);
+            return LocalDateTime.parse(value);
+        } catch (NumberFormatException | DateTimeException e) {
+            throw new IllegalArgumentException("not a time: '" + value + "'", e);
+        }
+    }
+}
@@ -2,6 +2,41 @@ package com.gridnine.testing.interfaces;
 
 import java.util.List;
 
+/**
+ * Хранилище элементов. Элементы сравниваются по ссылке, один экземпляр может храниться несколько раз:
+ * add() добавляет в конец, update() и remove() меняют первое по порядку getAll() вхождение.
+ */
 public interface DataBase<T> {
     List<T> getAll();
+
+    default void add(T element) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is read-only");
+    }
+
+    /**
+     * Adds the elements in order, stores may publish them at once.
+     */
+    default void addAll(List<T> elements) {
+        for (T element : elements) {
+            add(element);
+        }
+    }
+
+    /**
+     * Replaces the first occurrence of oldElement on its place.
+     *
+     * @return false if oldElement is not stored
+     */
+    default boolean update(T oldElement, T newElement) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is read-only");
+    }
+
+    /**
+     * Removes the first occurrence of the element.
+     *
+     * @return false if element is not stored
+     */
+    default boolean remove(T element) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is read-only");
+    }
 }
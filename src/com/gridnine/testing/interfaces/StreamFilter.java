@@ -0,0 +1,23 @@
+package com.gridnine.testing.interfaces;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy counterpart of {@link Filter}: elements are checked one by one as the consumer pulls them,
+ * no intermediate collections are built and short-circuit operations stop reading the source.
+ */
+public interface StreamFilter<T> {
+    Stream<T> filter(Stream<T> source);
+
+    default Spliterator<T> filter(Spliterator<T> source) {
+        return filter(StreamSupport.stream(source, false)).spliterator();
+    }
+
+    default Iterator<T> filter(Iterator<T> source) {
+        return Spliterators.iterator(filter(Spliterators.spliteratorUnknownSize(source, Spliterator.ORDERED)));
+    }
+}
@@ -0,0 +1,100 @@
+package com.gridnine.testing.server;
+
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Разбор строки запроса в FlightsFilter. Условия задаются так же, как в FlightsFilterBuilder:
+ * {@code arrival=gt:1700000000&departure=lte:1700003600&idle=gte:7200&invalid=remove},
+ * {@code totalIdle} и {@code maxIdle} - условия на суммарное и самое длинное время на земле.
+ * Операторы: eq, gte, gt, lt, lte. Один и тот же параметр можно повторять для нескольких условий.
+ */
+public final class FlightsQueryParser {
+    private FlightsQueryParser() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the query contains an unknown parameter, operator or value
+     * @throws IllegalStateException    if the query contains no conditions
+     */
+    public static FlightsFilter parse(String rawQuery) {
+        FlightsFilterBuilder builder = new FlightsFilterBuilder();
+        if (rawQuery != null && !rawQuery.isEmpty()) {
+            for (String parameter : rawQuery.split("&")) {
+                if (parameter.isEmpty())
+                    continue;
+                int separator = parameter.indexOf('=');
+                String name = decode(separator < 0 ? parameter : parameter.substring(0, separator));
+                String value = separator < 0 ? "" : decode(parameter.substring(separator + 1));
+                apply(builder, name, value);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String decode(String text) {
+        return URLDecoder.decode(text, StandardCharsets.UTF_8);
+    }
+
+    private static void apply(FlightsFilterBuilder builder, String name, String value) {
+        switch (name) {
+            case "arrival":
+                condition(builder.arrival(), value);
+                break;
+            case "departure":
+                condition(builder.departure(), value);
+                break;
+            case "idle":
+                condition(builder.idleOnTheGround(), value);
+                break;
+            case "totalIdle":
+                condition(builder.totalIdleOnTheGround(), value);
+                break;
+            case "maxIdle":
+                condition(builder.maxIdleOnTheGround(), value);
+                break;
+            case "invalid":
+                if (!"remove".equals(value))
+                    throw new IllegalArgumentException("invalid: only 'remove' is supported, got '" + value + "'");
+                builder.removeInvalidFlights();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown parameter '" + name + "'");
+        }
+    }
+
+    private static void condition(FlightsFilterBuilder builder, String value) {
+        int separator = value.indexOf(':');
+        if (separator < 0)
+            throw new IllegalArgumentException("condition must look like operator:seconds, got '" + value + "'");
+        long seconds;
+        try {
+            seconds = Long.parseLong(value.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number of seconds: '" + value.substring(separator + 1) + "'", e);
+        }
+        String operator = value.substring(0, separator);
+        switch (operator) {
+            case "eq":
+                builder.equals(seconds);
+                break;
+            case "gte":
+                builder.greater_or_equals(seconds);
+                break;
+            case "gt":
+                builder.greater(seconds);
+                break;
+            case "lt":
+                builder.less(seconds);
+                break;
+            case "lte":
+                builder.less_or_equals(seconds);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown operator '" + operator + "'");
+        }
+    }
+}
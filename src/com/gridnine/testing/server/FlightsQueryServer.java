@@ -0,0 +1,217 @@
+package com.gridnine.testing.server;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.export.FlightExporter;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Встроенный HTTP-сервер запросов к FlightsDB на JDK HttpServer.
+ * <ul>
+ * <li>{@code GET /flights?arrival=gt:...&idle=gte:...} - один фильтр, синтаксис см. {@link FlightsQueryParser};</li>
+ * <li>{@code POST /flights/batch} - несколько фильтров, по одной строке запроса на строку тела,
+ * они проверяются за один общий проход {@link FlightsDB#filterAll}. Результаты идут в порядке запросов,
+ * перед каждым строка {@code {"query":i,"count":n}}.</li>
+ * </ul>
+ * Фильтры выполняет FlightsDB со своими индексами, планировщиком и кэшами. Рейсы отдаются с chunked-кодированием
+ * в формате NDJSON {@link FlightExporter}, по рейсу на строку, так же как при выгрузке в файл.
+ * Каждый запрос обрабатывается в своём виртуальном потоке, если их поддерживает JVM (Java 21+),
+ * иначе в потоке из кэширующего пула. Одновременно выполняется не больше maxConcurrentQueries запросов,
+ * остальные ждут не дольше queueTimeout и получают 503 с Retry-After.
+ */
+public class FlightsQueryServer {
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int EXPORT_BUFFER_SIZE = 8 * 1024;
+
+    private final FlightsDB flightsDB;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final long queueTimeoutNanos;
+
+    public FlightsQueryServer(FlightsDB flightsDB, InetSocketAddress address, int maxConcurrentQueries, Duration queueTimeout) throws IOException {
+        if (maxConcurrentQueries <= 0)
+            throw new IllegalArgumentException("FlightsQueryServer: maxConcurrentQueries must be positive");
+        this.flightsDB = flightsDB;
+        this.permits = new Semaphore(maxConcurrentQueries, true);
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.executor = newThreadPerRequestExecutor();
+        this.httpServer = HttpServer.create(address, 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/flights/batch", exchange -> handle(exchange, "/flights/batch", "POST", this::batch));
+        httpServer.createContext("/flights", exchange -> handle(exchange, "/flights", "GET", this::single));
+    }
+
+    /**
+     * Uses Executors.newVirtualThreadPerTaskExecutor() when the running JVM has it; the project itself targets Java 17.
+     */
+    private static ExecutorService newThreadPerRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, waits up to delay for running ones and releases the threads.
+     */
+    public void stop(Duration delay) {
+        httpServer.stop((int) Math.max(0, delay.toSeconds()));
+        executor.shutdown();
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * @param path contexts match every path that starts with their own, other paths are answered with 404
+     */
+    private void handle(HttpExchange exchange, String path, String method, Handler handler) throws IOException {
+        try (exchange) {
+            if (!path.equals(exchange.getRequestURI().getPath())) {
+                sendError(exchange, 404, "unknown path");
+                return;
+            }
+            if (!method.equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "expected " + method);
+                return;
+            }
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(queueTimeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "interrupted");
+                return;
+            }
+            if (!acquired) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "too many concurrent queries");
+                return;
+            }
+            try {
+                handler.handle(exchange);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void single(HttpExchange exchange) throws IOException {
+        FlightsFilter flightsFilter;
+        try {
+            flightsFilter = FlightsQueryParser.parse(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        List<Flight> matches = flightsDB.filter(flightsFilter);
+        try (WritableByteChannel channel = startNdjson(exchange)) {
+            new FlightExporter(FlightExporter.Format.NDJSON, EXPORT_BUFFER_SIZE).export(matches, channel);
+        }
+    }
+
+    private void batch(HttpExchange exchange) throws IOException {
+        List<FlightsFilter> flightsFilters = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty())
+                    continue;
+                if (flightsFilters.size() == MAX_BATCH_SIZE) {
+                    sendError(exchange, 413, "at most " + MAX_BATCH_SIZE + " queries per batch");
+                    return;
+                }
+                flightsFilters.add(FlightsQueryParser.parse(line.startsWith("?") ? line.substring(1) : line));
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        List<List<Flight>> results = flightsDB.filterAll(flightsFilters);
+        try (WritableByteChannel channel = startNdjson(exchange)) {
+            FlightExporter exporter = new FlightExporter(FlightExporter.Format.NDJSON, EXPORT_BUFFER_SIZE);
+            for (int i = 0; i < results.size(); i++) {
+                String header = "{\"query\":" + i + ",\"count\":" + results.get(i).size() + "}\r\n";
+                ByteBuffer headerBytes = ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII));
+                while (headerBytes.hasRemaining()) {
+                    channel.write(headerBytes);
+                }
+                exporter.export(results.get(i), channel);
+            }
+        }
+    }
+
+    private static WritableByteChannel startNdjson(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        // length 0 switches the response to chunked transfer encoding
+        exchange.sendResponseHeaders(200, 0);
+        return Channels.newChannel(exchange.getResponseBody());
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = ("{\"error\":\"" + jsonEscape(message) + "\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static String jsonEscape(String text) {
+        if (text == null)
+            return "";
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\')
+                escaped.append('\\').append(c);
+            else if (c < 0x20)
+                escaped.append(String.format("\\u%04x", (int) c));
+            else
+                escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Starts the server on the sample flights, e.g. for local load tests.
+     *
+     * @param args optional port (8080) and concurrency limit (available processors * 4)
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int maxConcurrentQueries = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 4;
+        FlightsQueryServer server = new FlightsQueryServer(FlightsDB.getInstance(new DataBaseImpl()),
+                new InetSocketAddress(port), maxConcurrentQueries, Duration.ofSeconds(1));
+        server.start();
+        System.out.println("FlightsQueryServer is listening on port " + server.getPort());
+    }
+}
@@ -0,0 +1,200 @@
+package com.gridnine.testing.utils;
+
+/**
+ * Пакетные ядра сравнения колонок эпох: условие проверяется сразу для диапазона значений,
+ * результат записывается в битовую маску (бит i соответствует значению from + i).
+ * Ядра на Vector API (VectorEpochKernels) лежат в отдельном корне исходников src/vector, который компилируется
+ * с {@code --add-modules jdk.incubator.vector}, основное дерево src/com собирается обычным JDK 17 без предупреждений.
+ * Если класс есть на classpath и модуль подключён при запуске, compare(), invalidSegments() и gaps() выполняются им.
+ * Иначе, а также при {@code -Dgridnine.vectorKernels=false}, работают скалярные ядра без ветвлений по данным
+ * (compareScalar() и т.д.): в JDK 17 C2 не векторизует такие циклы со сдвигами, это запасной путь.
+ */
+public final class EpochKernels {
+    /**
+     * System property that turns the Vector API kernels off, e.g. to compare with the scalar ones.
+     */
+    public static final String VECTOR_KERNELS_PROPERTY = "gridnine.vectorKernels";
+
+    /**
+     * Kernels that can replace the scalar ones, implemented by VectorEpochKernels from src/vector.
+     */
+    interface Kernel {
+        void compare(long[] values, int from, int to, Operators operators, long operand, long[] mask);
+
+        void invalidSegments(long[] departureEpochs, long[] arrivalEpochs, int from, int to, long[] mask);
+
+        void gaps(long[] departureEpochs, long[] arrivalEpochs, int from, int to, long[] gaps);
+    }
+
+    // null when the Vector API is not available, a constant for the JIT either way
+    private static final Kernel VECTOR_KERNEL = loadVectorKernel();
+
+    private EpochKernels() {
+    }
+
+    /**
+     * Loads the vector kernels by name, so this class compiles and links without src/vector and jdk.incubator.vector.
+     */
+    private static Kernel loadVectorKernel() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTOR_KERNELS_PROPERTY, "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return null;
+        try {
+            return (Kernel) Class.forName(EpochKernels.class.getPackageName() + ".VectorEpochKernels")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if compare(), invalidSegments() and gaps() use the Vector API
+     */
+    public static boolean isVectorized() {
+        return VECTOR_KERNEL != null;
+    }
+
+    /**
+     * @return number of long words needed for a mask of the given number of bits
+     */
+    public static int maskLength(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * @return 1 if x < y, 0 otherwise, without a branch and without overflow
+     */
+    private static long lessBit(long x, long y) {
+        long difference = x - y;
+        return (difference ^ ((x ^ y) & (difference ^ x))) >>> 63;
+    }
+
+    /**
+     * @return 1 if x == y, 0 otherwise, without a branch
+     */
+    private static long equalBit(long x, long y) {
+        long difference = x ^ y;
+        return ((difference | -difference) >>> 63) ^ 1;
+    }
+
+    /**
+     * Sets bit i of the mask when {@code values[from + i] <operator> operand}, clears it otherwise.
+     *
+     * @param mask at least maskLength(to - from) words
+     */
+    public static void compare(long[] values, int from, int to, Operators operators, long operand, long[] mask) {
+        if (VECTOR_KERNEL != null)
+            VECTOR_KERNEL.compare(values, from, to, operators, operand, mask);
+        else
+            compareScalar(values, from, to, operators, operand, mask);
+    }
+
+    /**
+     * Scalar {@link #compare(long[], int, int, Operators, long, long[])}.
+     */
+    public static void compareScalar(long[] values, int from, int to, Operators operators, long operand, long[] mask) {
+        int length = to - from;
+        for (int word = 0; word < maskLength(length); word++) {
+            int start = from + (word << 6);
+            int end = Math.min(to, start + 64);
+            long bits = 0;
+            // one loop per operator keeps the loop bodies free of the operator switch
+            switch (operators) {
+                case EQUALS:
+                    for (int i = start; i < end; i++) {
+                        bits |= equalBit(values[i], operand) << (i - start);
+                    }
+                    break;
+                case GREATER_OR_EQUALS:
+                    for (int i = start; i < end; i++) {
+                        bits |= (lessBit(values[i], operand) ^ 1) << (i - start);
+                    }
+                    break;
+                case GREATER:
+                    for (int i = start; i < end; i++) {
+                        bits |= lessBit(operand, values[i]) << (i - start);
+                    }
+                    break;
+                case LESS:
+                    for (int i = start; i < end; i++) {
+                        bits |= lessBit(values[i], operand) << (i - start);
+                    }
+                    break;
+                case LESS_OR_EQUALS:
+                    for (int i = start; i < end; i++) {
+                        bits |= (lessBit(operand, values[i]) ^ 1) << (i - start);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("EpochKernels: unknown operator " + operators);
+            }
+            mask[word] = bits;
+        }
+    }
+
+    /**
+     * Sets bit i of the mask when {@code arrivalEpochs[from + i] < departureEpochs[from + i]}.
+     */
+    public static void invalidSegments(long[] departureEpochs, long[] arrivalEpochs, int from, int to, long[] mask) {
+        if (VECTOR_KERNEL != null)
+            VECTOR_KERNEL.invalidSegments(departureEpochs, arrivalEpochs, from, to, mask);
+        else
+            invalidSegmentsScalar(departureEpochs, arrivalEpochs, from, to, mask);
+    }
+
+    public static void invalidSegmentsScalar(long[] departureEpochs, long[] arrivalEpochs, int from, int to, long[] mask) {
+        int length = to - from;
+        for (int word = 0; word < maskLength(length); word++) {
+            int start = from + (word << 6);
+            int end = Math.min(to, start + 64);
+            long bits = 0;
+            for (int i = start; i < end; i++) {
+                bits |= lessBit(arrivalEpochs[i], departureEpochs[i]) << (i - start);
+            }
+            mask[word] = bits;
+        }
+    }
+
+    /**
+     * Writes {@code departureEpochs[from + i] - arrivalEpochs[from + i - 1]} to gaps[i] for i >= 1 and 0 to gaps[0].
+     * The value at the first segment of a flight crosses a flight boundary and has to be ignored by the caller.
+     *
+     * @param gaps at least to - from values
+     */
+    public static void gaps(long[] departureEpochs, long[] arrivalEpochs, int from, int to, long[] gaps) {
+        if (VECTOR_KERNEL != null)
+            VECTOR_KERNEL.gaps(departureEpochs, arrivalEpochs, from, to, gaps);
+        else
+            gapsScalar(departureEpochs, arrivalEpochs, from, to, gaps);
+    }
+
+    public static void gapsScalar(long[] departureEpochs, long[] arrivalEpochs, int from, int to, long[] gaps) {
+        if (to <= from)
+            return;
+        gaps[0] = 0;
+        for (int i = from + 1; i < to; i++) {
+            gaps[i - from] = departureEpochs[i] - arrivalEpochs[i - 1];
+        }
+    }
+
+    /**
+     * @return true if any bit in [from, to) of the mask is set
+     */
+    public static boolean anySet(long[] mask, int from, int to) {
+        if (from >= to)
+            return false;
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstBits = -1L << from;
+        long lastBits = -1L >>> -to;
+        if (firstWord == lastWord)
+            return (mask[firstWord] & firstBits & lastBits) != 0;
+        if ((mask[firstWord] & firstBits) != 0)
+            return true;
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            if (mask[word] != 0)
+                return true;
+        }
+        return (mask[lastWord] & lastBits) != 0;
+    }
+}
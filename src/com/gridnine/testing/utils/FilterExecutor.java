@@ -0,0 +1,172 @@
+package com.gridnine.testing.utils;
+
+import com.gridnine.testing.domain.Flight;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Исполнитель фильтров, который сам выбирает последовательный или параллельный режим.
+ * Решение принимается по размеру входа и измеренной стоимости проверки одного рейса:
+ * если ожидаемое время последовательного прохода меньше parallelThresholdNanos, фильтр выполняется в
+ * вызывающем потоке, иначе список делится на равные диапазоны, которые обрабатываются в выделенном ForkJoinPool.
+ */
+public class FilterExecutor implements AutoCloseable {
+    private static final long DEFAULT_PARALLEL_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final int DEFAULT_MIN_CHUNK_SIZE = 4096;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final double INITIAL_FLIGHT_COST_NANOS = 50;
+    private static final double COST_SMOOTHING = 0.2;
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int minChunkSize;
+    private final long parallelThresholdNanos;
+    private volatile double flightCostNanos = INITIAL_FLIGHT_COST_NANOS;
+
+    /**
+     * Creates an executor with its own pool of availableProcessors threads.
+     */
+    public FilterExecutor() {
+        this(new ForkJoinPool(Runtime.getRuntime().availableProcessors()), true, DEFAULT_MIN_CHUNK_SIZE, DEFAULT_PARALLEL_THRESHOLD_NANOS);
+    }
+
+    /**
+     * @param pool                   pool for parallel runs, not shut down by {@link #close()}
+     * @param minChunkSize           smallest number of flights given to one task
+     * @param parallelThresholdNanos expected sequential time above which the filter runs in parallel
+     */
+    public FilterExecutor(ForkJoinPool pool, int minChunkSize, long parallelThresholdNanos) {
+        this(pool, false, minChunkSize, parallelThresholdNanos);
+    }
+
+    private FilterExecutor(ForkJoinPool pool, boolean ownsPool, int minChunkSize, long parallelThresholdNanos) {
+        if (minChunkSize <= 0 || parallelThresholdNanos < 0)
+            throw new IllegalArgumentException("FilterExecutor: minChunkSize must be positive and parallelThresholdNanos not negative");
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.minChunkSize = minChunkSize;
+        this.parallelThresholdNanos = parallelThresholdNanos;
+    }
+
+    /**
+     * @return smoothed cost of checking one flight on one thread, measured on previous runs
+     */
+    public double getFlightCostNanos() {
+        return flightCostNanos;
+    }
+
+    public boolean isParallelFor(List<Flight> flightList) {
+        return flightList instanceof RandomAccess
+                && pool.getParallelism() > 1
+                && flightList.size() >= 2L * minChunkSize
+                && flightList.size() * flightCostNanos >= parallelThresholdNanos;
+    }
+
+    public List<Flight> filter(FlightsFilter flightsFilter, List<Flight> flightList) {
+        return filter((Predicate<Flight>) flightsFilter, flightList);
+    }
+
+    /**
+     * Same as {@link #filter(FlightsFilter, List)} for any thread-safe predicate, e.g. a filter that also counts its drops.
+     */
+    List<Flight> filter(Predicate<Flight> flightsFilter, List<Flight> flightList) {
+        if (flightList.isEmpty())
+            return new ArrayList<>();
+        long start = System.nanoTime();
+        List<Flight> filteredFlights;
+        double threadNanos;
+        if (isParallelFor(flightList)) {
+            filteredFlights = filterInParallel(flightsFilter, flightList);
+            threadNanos = (double) (System.nanoTime() - start) * pool.getParallelism();
+        } else {
+            filteredFlights = filterRange(flightsFilter, flightList, 0, flightList.size());
+            threadNanos = System.nanoTime() - start;
+        }
+        double measuredCost = threadNanos / flightList.size();
+        flightCostNanos += (measuredCost - flightCostNanos) * COST_SMOOTHING;
+        return filteredFlights;
+    }
+
+    private static List<Flight> filterRange(Predicate<Flight> flightsFilter, List<Flight> flightList, int from, int to) {
+        List<Flight> filteredFlights = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Flight flight = flightList.get(i);
+            if (flightsFilter.test(flight))
+                filteredFlights.add(flight);
+        }
+        return filteredFlights;
+    }
+
+    private List<Flight> filterInParallel(Predicate<Flight> flightsFilter, List<Flight> flightList) {
+        int size = flightList.size();
+        int chunkCount = (int) Math.min((long) pool.getParallelism() * CHUNKS_PER_THREAD, size / minChunkSize);
+        int[] bounds = new int[chunkCount + 1];
+        for (int chunk = 0; chunk <= chunkCount; chunk++) {
+            bounds[chunk] = (int) ((long) size * chunk / chunkCount);
+        }
+        List<List<Flight>> chunkResults = new ArrayList<>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            chunkResults.add(null);
+        }
+        pool.invoke(new ChunkTask(flightsFilter, flightList, bounds, chunkResults, 0, chunkCount));
+        int resultSize = 0;
+        for (List<Flight> chunkResult : chunkResults) {
+            resultSize += chunkResult.size();
+        }
+        List<Flight> filteredFlights = new ArrayList<>(resultSize);
+        for (List<Flight> chunkResult : chunkResults) {
+            filteredFlights.addAll(chunkResult);
+        }
+        return filteredFlights;
+    }
+
+    /**
+     * Splits the chunks [firstChunk, lastChunk) in halves until one chunk is left,
+     * every chunk writes its matches into its own slot, so the order of the input is kept.
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Predicate<Flight> flightsFilter;
+        private final List<Flight> flightList;
+        private final int[] bounds;
+        private final List<List<Flight>> chunkResults;
+        private final int firstChunk;
+        private final int lastChunk;
+
+        ChunkTask(Predicate<Flight> flightsFilter, List<Flight> flightList, int[] bounds, List<List<Flight>> chunkResults, int firstChunk, int lastChunk) {
+            this.flightsFilter = flightsFilter;
+            this.flightList = flightList;
+            this.bounds = bounds;
+            this.chunkResults = chunkResults;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk == 1) {
+                chunkResults.set(firstChunk, filterRange(flightsFilter, flightList, bounds[firstChunk], bounds[lastChunk]));
+                return;
+            }
+            int middleChunk = (firstChunk + lastChunk) >>> 1;
+            invokeAll(new ChunkTask(flightsFilter, flightList, bounds, chunkResults, firstChunk, middleChunk),
+                    new ChunkTask(flightsFilter, flightList, bounds, chunkResults, middleChunk, lastChunk));
+        }
+    }
+
+    /**
+     * Shuts down the pool if it was created by this executor.
+     */
+    @Override
+    public void close() {
+        if (ownsPool)
+            pool.shutdown();
+    }
+}
@@ -0,0 +1,202 @@
+package com.gridnine.testing.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики выполнения FlightsFilter: число запусков, число рейсов на входе и выходе каждой стадии,
+ * гистограмма задержек, выделенная память и JFR-событие {@code com.gridnine.testing.FilterRun} на каждый запуск.
+ * Подключается через FlightsFilter.withMetrics(); фильтр без метрик или с выключенными метриками
+ * выполняется по обычному пути без замеров.
+ * Все условия проверяются за один проход по рейсу, поэтому время измеряется для запуска целиком,
+ * а отброшенный рейс относится к первой стадии, которую он не прошёл.
+ */
+public class FilterMetrics {
+    private static final int LATENCY_BUCKETS = 64;
+
+    private volatile boolean enabled = true;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder inputFlights = new LongAdder();
+    private final LongAdder outputFlights = new LongAdder();
+    private final LongAdder[] droppedFlights = new LongAdder[FilterStage.values().length];
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    // bucket i holds runs that took [2^(i-1), 2^i) nanoseconds
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS);
+
+    public FilterMetrics() {
+        for (int i = 0; i < droppedFlights.length; i++) {
+            droppedFlights[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Per-run counters collected by the filter before they are added to the shared metrics.
+     * drop() may be called by the worker threads of a parallel run, so the counters are striped LongAdders.
+     */
+    static final class Run {
+        private final long startNanos = System.nanoTime();
+        private final long startAllocatedBytes = currentThreadAllocatedBytes();
+        private final LongAdder[] dropped = new LongAdder[FilterStage.values().length];
+        private final FilterRunEvent event = new FilterRunEvent();
+
+        Run() {
+            for (int i = 0; i < dropped.length; i++) {
+                dropped[i] = new LongAdder();
+            }
+            event.begin();
+        }
+
+        void drop(FilterStage stage) {
+            dropped[stage.ordinal()].increment();
+        }
+
+        private long dropped(FilterStage stage) {
+            return dropped[stage.ordinal()].sum();
+        }
+    }
+
+    Run startRun() {
+        return new Run();
+    }
+
+    /**
+     * @param allocationTracked false when the run used other threads, whose allocations are not visible here
+     */
+    void finishRun(Run run, FilterSpec spec, long input, long output, boolean allocationTracked) {
+        long nanos = System.nanoTime() - run.startNanos;
+        long allocated = allocationTracked && run.startAllocatedBytes >= 0 ? currentThreadAllocatedBytes() - run.startAllocatedBytes : 0;
+        runs.increment();
+        inputFlights.add(input);
+        outputFlights.add(output);
+        totalNanos.add(nanos);
+        allocatedBytes.add(allocated);
+        for (FilterStage stage : FilterStage.values()) {
+            droppedFlights[stage.ordinal()].add(run.dropped(stage));
+        }
+        latencyBuckets.incrementAndGet(Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+        FilterRunEvent event = run.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.spec = spec.toString();
+            event.inputFlights = input;
+            event.outputFlights = output;
+            event.droppedByArrival = run.dropped(FilterStage.ARRIVAL);
+            event.droppedByDeparture = run.dropped(FilterStage.DEPARTURE);
+            event.droppedByIdle = run.dropped(FilterStage.IDLE);
+            event.droppedByValidity = run.dropped(FilterStage.VALIDITY);
+            event.allocatedBytes = allocated;
+            event.commit();
+        }
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled())
+                return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    public long getInputFlights() {
+        return inputFlights.sum();
+    }
+
+    public long getOutputFlights() {
+        return outputFlights.sum();
+    }
+
+    public long getDroppedFlights(FilterStage stage) {
+        return droppedFlights[stage.ordinal()].sum();
+    }
+
+    /**
+     * @return flights that reached the stage, i.e. were not dropped by any earlier stage of the default order
+     */
+    public long getStageInput(FilterStage stage) {
+        long input = getInputFlights();
+        for (int i = 0; i < stage.ordinal(); i++) {
+            input -= droppedFlights[i].sum();
+        }
+        return input;
+    }
+
+    /**
+     * @return share of the stage input that passed the stage, 1 when the stage had no input
+     */
+    public double getStageSelectivity(FilterStage stage) {
+        long input = getStageInput(stage);
+        return input == 0 ? 1 : (double) (input - getDroppedFlights(stage)) / input;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @param percentile value in (0, 100]
+     * @return upper bound of the latency bucket containing the percentile, 0 without runs
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+        long total = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            total += latencyBuckets.get(i);
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += latencyBuckets.get(i);
+            if (seen >= rank && seen > 0)
+                return i == LATENCY_BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+        return 0;
+    }
+
+    public void reset() {
+        runs.reset();
+        inputFlights.reset();
+        outputFlights.reset();
+        allocatedBytes.reset();
+        totalNanos.reset();
+        for (LongAdder dropped : droppedFlights) {
+            dropped.reset();
+        }
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            latencyBuckets.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("FilterMetrics{runs=").append(getRuns())
+                .append(", in=").append(getInputFlights())
+                .append(", out=").append(getOutputFlights());
+        for (FilterStage stage : FilterStage.values()) {
+            result.append(", ").append(stage.name().toLowerCase()).append("Dropped=").append(getDroppedFlights(stage));
+        }
+        return result.append(", p50Nanos=").append(getLatencyPercentileNanos(50))
+                .append(", p99Nanos=").append(getLatencyPercentileNanos(99))
+                .append(", allocatedBytes=").append(getAllocatedBytes())
+                .append('}').toString();
+    }
+}
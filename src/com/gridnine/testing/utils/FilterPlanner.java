@@ -0,0 +1,68 @@
+package com.gridnine.testing.utils;
+
+import com.gridnine.testing.dataBase.FlightStatistics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Планировщик порядка стадий фильтра по статистике рейсов.
+ * Стадии упорядочиваются по возрастанию cost / (1 - pass), где cost - оценка стоимости проверки рейса,
+ * а pass - оценка доли рейсов, проходящих стадию: первыми идут дешёвые стадии, отбрасывающие много рейсов.
+ */
+public final class FilterPlanner {
+    /**
+     * Relative cost of converting one LocalDateTime to epoch seconds and of one comparison.
+     */
+    private static final double CONVERSION_COST = 1;
+    private static final double COMPARISON_COST = 0.25;
+
+    private FilterPlanner() {
+    }
+
+    /**
+     * @return stages used by the filter, cheapest and most selective first
+     */
+    public static FilterStage[] plan(FilterSpec spec, FlightStatistics statistics) {
+        List<FilterStage> stages = new ArrayList<>();
+        double[] ranks = new double[FilterStage.values().length];
+        double segments = statistics.getAverageSegmentCount();
+        if (!spec.isAllowInvalidFlights()) {
+            stages.add(FilterStage.VALIDITY);
+            // validity is read from the FlightMetrics of the flight
+            ranks[FilterStage.VALIDITY.ordinal()] = rank(COMPARISON_COST, 1 - statistics.getInvalidFlightShare());
+        }
+        int arrivalConditions = spec.getArrivalStatementsMap().size();
+        if (arrivalConditions > 0) {
+            stages.add(FilterStage.ARRIVAL);
+            ranks[FilterStage.ARRIVAL.ordinal()] = rank(segments * (CONVERSION_COST + arrivalConditions * COMPARISON_COST),
+                    statistics.segmentConditionsShare(spec.getArrivalStatementsMap(), true));
+        }
+        int departureConditions = spec.getDepartureStatementsMap().size();
+        if (departureConditions > 0) {
+            stages.add(FilterStage.DEPARTURE);
+            ranks[FilterStage.DEPARTURE.ordinal()] = rank(segments * (CONVERSION_COST + departureConditions * COMPARISON_COST),
+                    statistics.segmentConditionsShare(spec.getDepartureStatementsMap(), false));
+        }
+        int idleConditions = spec.getIdleStatementsMap().size();
+        int summaryConditions = spec.getTotalIdleStatementsMap().size() + spec.getMaxIdleStatementsMap().size();
+        if (idleConditions + summaryConditions > 0) {
+            stages.add(FilterStage.IDLE);
+            // idle conditions other than EQUALS compare the extremes of FlightMetrics, EQUALS scans the gaps;
+            // the share of the summary conditions is not estimated
+            double idleCost = spec.getIdleStatementsMap().containsKey(Operators.EQUALS)
+                    ? 2 * segments * CONVERSION_COST + Math.max(0, segments - 1) * idleConditions * COMPARISON_COST
+                    : idleConditions * COMPARISON_COST;
+            ranks[FilterStage.IDLE.ordinal()] = rank(idleCost + summaryConditions * COMPARISON_COST,
+                    statistics.idleConditionsShare(spec.getIdleStatementsMap()));
+        }
+        // the sort is stable, equal ranks keep the default order
+        stages.sort(Comparator.comparingDouble(stage -> ranks[stage.ordinal()]));
+        return stages.toArray(new FilterStage[0]);
+    }
+
+    private static double rank(double cost, double passShare) {
+        return passShare >= 1 ? Double.POSITIVE_INFINITY : cost / (1 - passShare);
+    }
+}
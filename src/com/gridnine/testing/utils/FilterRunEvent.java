@@ -0,0 +1,42 @@
+package com.gridnine.testing.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event written for every instrumented FlightsFilter run, see {@link FilterMetrics}.
+ */
+@Name("com.gridnine.testing.FilterRun")
+@Label("Flights Filter Run")
+@Category("Flights")
+@Description("One FlightsFilter.filter call with per-stage cardinalities")
+class FilterRunEvent extends Event {
+    @Label("Filter")
+    String spec;
+
+    @Label("Input Flights")
+    long inputFlights;
+
+    @Label("Output Flights")
+    long outputFlights;
+
+    @Label("Dropped By Arrival")
+    long droppedByArrival;
+
+    @Label("Dropped By Departure")
+    long droppedByDeparture;
+
+    @Label("Dropped By Idle")
+    long droppedByIdle;
+
+    @Label("Dropped By Validity")
+    long droppedByValidity;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
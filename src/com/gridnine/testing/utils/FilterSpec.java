@@ -0,0 +1,104 @@
+package com.gridnine.testing.utils;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Каноническое описание фильтра: наборы условий и признак allowInvalidFlights.
+ * Кроме условий на отдельные сегменты и интервалы есть условия на сводки рейса (FlightMetrics):
+ * на суммарное время на земле и на самый длинный интервал между сегментами.
+ * Два фильтра с одинаковыми условиями дают равные FilterSpec независимо от порядка вызовов
+ * FlightsFilterBuilder и режима выполнения, поэтому FilterSpec можно использовать как ключ кэша.
+ */
+public final class FilterSpec {
+    private final Map<Operators, Long> arrivalStatementsMap;
+    private final Map<Operators, Long> departureStatementsMap;
+    private final Map<Operators, Long> idleStatementsMap;
+    private final Map<Operators, Long> totalIdleStatementsMap;
+    private final Map<Operators, Long> maxIdleStatementsMap;
+    private final boolean allowInvalidFlights;
+    private final int hashCode;
+
+    public FilterSpec(Map<Operators, Long> arrivalStatementsMap, Map<Operators, Long> departureStatementsMap, Map<Operators, Long> idleStatementsMap, boolean allowInvalidFlights) {
+        this(arrivalStatementsMap, departureStatementsMap, idleStatementsMap, Map.of(), Map.of(), allowInvalidFlights);
+    }
+
+    /**
+     * @param totalIdleStatementsMap conditions for the sum of the ground times of the flight
+     * @param maxIdleStatementsMap   conditions for the longest ground time of the flight
+     */
+    public FilterSpec(Map<Operators, Long> arrivalStatementsMap, Map<Operators, Long> departureStatementsMap, Map<Operators, Long> idleStatementsMap,
+                      Map<Operators, Long> totalIdleStatementsMap, Map<Operators, Long> maxIdleStatementsMap, boolean allowInvalidFlights) {
+        this.arrivalStatementsMap = copyOf(arrivalStatementsMap);
+        this.departureStatementsMap = copyOf(departureStatementsMap);
+        this.idleStatementsMap = copyOf(idleStatementsMap);
+        this.totalIdleStatementsMap = copyOf(totalIdleStatementsMap);
+        this.maxIdleStatementsMap = copyOf(maxIdleStatementsMap);
+        this.allowInvalidFlights = allowInvalidFlights;
+        hashCode = Objects.hash(this.arrivalStatementsMap, this.departureStatementsMap, this.idleStatementsMap,
+                this.totalIdleStatementsMap, this.maxIdleStatementsMap, allowInvalidFlights);
+    }
+
+    private static Map<Operators, Long> copyOf(Map<Operators, Long> statementsMap) {
+        Map<Operators, Long> copy = new EnumMap<>(Operators.class);
+        copy.putAll(statementsMap);
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public Map<Operators, Long> getArrivalStatementsMap() {
+        return arrivalStatementsMap;
+    }
+
+    public Map<Operators, Long> getDepartureStatementsMap() {
+        return departureStatementsMap;
+    }
+
+    public Map<Operators, Long> getIdleStatementsMap() {
+        return idleStatementsMap;
+    }
+
+    public Map<Operators, Long> getTotalIdleStatementsMap() {
+        return totalIdleStatementsMap;
+    }
+
+    public Map<Operators, Long> getMaxIdleStatementsMap() {
+        return maxIdleStatementsMap;
+    }
+
+    public boolean isAllowInvalidFlights() {
+        return allowInvalidFlights;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof FilterSpec))
+            return false;
+        FilterSpec that = (FilterSpec) o;
+        return hashCode == that.hashCode
+                && allowInvalidFlights == that.allowInvalidFlights
+                && arrivalStatementsMap.equals(that.arrivalStatementsMap)
+                && departureStatementsMap.equals(that.departureStatementsMap)
+                && idleStatementsMap.equals(that.idleStatementsMap)
+                && totalIdleStatementsMap.equals(that.totalIdleStatementsMap)
+                && maxIdleStatementsMap.equals(that.maxIdleStatementsMap);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "FilterSpec{arrival=" + arrivalStatementsMap
+                + ", departure=" + departureStatementsMap
+                + ", idle=" + idleStatementsMap
+                + ", totalIdle=" + totalIdleStatementsMap
+                + ", maxIdle=" + maxIdleStatementsMap
+                + ", allowInvalidFlights=" + allowInvalidFlights + '}';
+    }
+}
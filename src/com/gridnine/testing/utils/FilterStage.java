@@ -0,0 +1,8 @@
+package com.gridnine.testing.utils;
+
+/**
+ * Stages of FlightsFilter in the order a rejected flight is attributed to them.
+ */
+public enum FilterStage {
+    VALIDITY, ARRIVAL, DEPARTURE, IDLE
+}
@@ -0,0 +1,109 @@
+package com.gridnine.testing.utils;
+
+import java.util.Set;
+
+/**
+ * Агрегаты одной группы рейсов: число рейсов и сегментов, доля некорректных рейсов
+ * и статистика времени на земле между сегментами (среднее, минимум, максимум, перцентили).
+ * Геттеры агрегатов, не запрошенных у FlightAggregator, бросают IllegalStateException.
+ */
+public final class FlightAggregate {
+    private final Set<FlightAggregator.Measure> measures;
+    private final long flightCount;
+    private final long invalidFlightCount;
+    private final long segmentCount;
+    private final long groundCount;
+    private final long groundSecondsSum;
+    private final long minGroundSeconds;
+    private final long maxGroundSeconds;
+    private final LogHistogram groundHistogram;
+
+    FlightAggregate(Set<FlightAggregator.Measure> measures, long flightCount, long invalidFlightCount, long segmentCount,
+                    long groundCount, long groundSecondsSum, long minGroundSeconds, long maxGroundSeconds, LogHistogram groundHistogram) {
+        this.measures = measures;
+        this.flightCount = flightCount;
+        this.invalidFlightCount = invalidFlightCount;
+        this.segmentCount = segmentCount;
+        this.groundCount = groundCount;
+        this.groundSecondsSum = groundSecondsSum;
+        this.minGroundSeconds = minGroundSeconds;
+        this.maxGroundSeconds = maxGroundSeconds;
+        this.groundHistogram = groundHistogram;
+    }
+
+    public long getFlightCount() {
+        return flightCount;
+    }
+
+    private void require(FlightAggregator.Measure measure) {
+        if (!measures.contains(measure))
+            throw new IllegalStateException("FlightAggregate: measure " + measure + " was not requested");
+    }
+
+    public long getInvalidFlightCount() {
+        require(FlightAggregator.Measure.INVALID_SHARE);
+        return invalidFlightCount;
+    }
+
+    public double getInvalidShare() {
+        require(FlightAggregator.Measure.INVALID_SHARE);
+        return flightCount == 0 ? 0 : (double) invalidFlightCount / flightCount;
+    }
+
+    public long getSegmentCount() {
+        return segmentCount;
+    }
+
+    public double getAverageSegmentCount() {
+        return flightCount == 0 ? 0 : (double) segmentCount / flightCount;
+    }
+
+    /**
+     * @return number of ground intervals, i.e. pairs of adjacent segments
+     */
+    public long getGroundCount() {
+        require(FlightAggregator.Measure.GROUND_TIME);
+        return groundCount;
+    }
+
+    public double getAverageGroundSeconds() {
+        require(FlightAggregator.Measure.GROUND_TIME);
+        return groundCount == 0 ? 0 : (double) groundSecondsSum / groundCount;
+    }
+
+    /**
+     * @return Long.MAX_VALUE without ground intervals
+     */
+    public long getMinGroundSeconds() {
+        require(FlightAggregator.Measure.GROUND_TIME);
+        return minGroundSeconds;
+    }
+
+    /**
+     * @return Long.MIN_VALUE without ground intervals
+     */
+    public long getMaxGroundSeconds() {
+        require(FlightAggregator.Measure.GROUND_TIME);
+        return maxGroundSeconds;
+    }
+
+    /**
+     * @param percentile value in [0, 100]
+     * @return ground time percentile with a relative error of at most 1/16, negative ground times count as 0
+     */
+    public long getGroundSecondsPercentile(double percentile) {
+        require(FlightAggregator.Measure.GROUND_TIME_PERCENTILES);
+        return groundHistogram.getPercentile(percentile);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("FlightAggregate{flights=").append(flightCount)
+                .append(", segments=").append(segmentCount);
+        if (measures.contains(FlightAggregator.Measure.INVALID_SHARE))
+            result.append(", invalid=").append(invalidFlightCount);
+        if (measures.contains(FlightAggregator.Measure.GROUND_TIME))
+            result.append(", averageGroundSeconds=").append(getAverageGroundSeconds());
+        return result.append('}').toString();
+    }
+}
@@ -0,0 +1,221 @@
+package com.gridnine.testing.utils;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Агрегация рейсов, прошедших фильтр, без построения промежуточного списка.
+ * Рейсы группируются по ключу GroupBy, для каждой группы считаются число рейсов и сегментов
+ * и запрошенные агрегаты Measure. Проход один и параллельный: каждый поток накапливает
+ * примитивные счётчики своих групп, в конце накопители сливаются.
+ */
+public class FlightAggregator {
+    public enum GroupBy {
+        /**
+         * All flights form the single group 0.
+         */
+        NONE,
+        /**
+         * Epoch second of the start of the hour of the first departure.
+         */
+        DEPARTURE_HOUR,
+        /**
+         * Epoch second of the start of the day (UTC) of the first departure.
+         */
+        DEPARTURE_DAY,
+        /**
+         * Number of segments.
+         */
+        SEGMENT_COUNT
+    }
+
+    public enum Measure {
+        /**
+         * Number and share of flights with a segment that arrives before it departs.
+         */
+        INVALID_SHARE,
+        /**
+         * Number, average, minimum and maximum of the ground times between segments.
+         */
+        GROUND_TIME,
+        /**
+         * Percentiles of the ground times from a log histogram, costs a few kilobytes per group and thread.
+         */
+        GROUND_TIME_PERCENTILES
+    }
+
+    /**
+     * Group key of the flights without segments when grouping by departure.
+     */
+    public static final long NO_DEPARTURE = Long.MIN_VALUE;
+
+    private static final long SECONDS_PER_HOUR = 3600;
+    private static final long SECONDS_PER_DAY = 24 * SECONDS_PER_HOUR;
+
+    private final FlightsFilter flightsFilter;
+    private final GroupBy groupBy;
+    private final Set<Measure> measures;
+    private final boolean walkSegments;
+
+    public FlightAggregator(FlightsFilter flightsFilter, GroupBy groupBy, Measure... measures) {
+        this.flightsFilter = Objects.requireNonNull(flightsFilter);
+        this.groupBy = Objects.requireNonNull(groupBy);
+        EnumSet<Measure> measureSet = EnumSet.noneOf(Measure.class);
+        Collections.addAll(measureSet, measures);
+        this.measures = Collections.unmodifiableSet(measureSet);
+        walkSegments = !measureSet.isEmpty();
+    }
+
+    /**
+     * Accumulated values of one group, merged field by field.
+     */
+    private final class Group {
+        private long flightCount;
+        private long invalidFlightCount;
+        private long segmentCount;
+        private long groundCount;
+        private long groundSecondsSum;
+        private long minGroundSeconds = Long.MAX_VALUE;
+        private long maxGroundSeconds = Long.MIN_VALUE;
+        private final LogHistogram groundHistogram = measures.contains(Measure.GROUND_TIME_PERCENTILES) ? new LogHistogram() : null;
+
+        private void merge(Group other) {
+            flightCount += other.flightCount;
+            invalidFlightCount += other.invalidFlightCount;
+            segmentCount += other.segmentCount;
+            groundCount += other.groundCount;
+            groundSecondsSum += other.groundSecondsSum;
+            minGroundSeconds = Math.min(minGroundSeconds, other.minGroundSeconds);
+            maxGroundSeconds = Math.max(maxGroundSeconds, other.maxGroundSeconds);
+            if (groundHistogram != null)
+                groundHistogram.merge(other.groundHistogram);
+        }
+
+        private FlightAggregate toAggregate() {
+            return new FlightAggregate(measures, flightCount, invalidFlightCount, segmentCount,
+                    groundCount, groundSecondsSum, minGroundSeconds, maxGroundSeconds, groundHistogram);
+        }
+    }
+
+    /**
+     * Per-thread state of the collector. The last used group is cached, flights stored in departure order
+     * mostly hit the same group and skip the map lookup.
+     */
+    private final class Accumulator {
+        private final Map<Long, Group> groups = new HashMap<>();
+        private long lastKey;
+        private Group lastGroup;
+
+        private Group group(long key) {
+            if (lastGroup == null || key != lastKey) {
+                lastGroup = groups.computeIfAbsent(key, k -> new Group());
+                lastKey = key;
+            }
+            return lastGroup;
+        }
+
+        private void add(Flight flight) {
+            List<Segment> segments = flight.getSegments();
+            Group group = group(groupKey(segments));
+            group.flightCount++;
+            group.segmentCount += segments.size();
+            if (!walkSegments)
+                return;
+            boolean valid = true;
+            long previousArrivalEpoch = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                long departureEpoch = segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+                long arrivalEpoch = segments.get(i).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+                valid &= arrivalEpoch >= departureEpoch;
+                if (i > 0) {
+                    long groundSeconds = departureEpoch - previousArrivalEpoch;
+                    group.groundCount++;
+                    group.groundSecondsSum += groundSeconds;
+                    group.minGroundSeconds = Math.min(group.minGroundSeconds, groundSeconds);
+                    group.maxGroundSeconds = Math.max(group.maxGroundSeconds, groundSeconds);
+                    if (group.groundHistogram != null)
+                        group.groundHistogram.record(groundSeconds);
+                }
+                previousArrivalEpoch = arrivalEpoch;
+            }
+            if (!valid)
+                group.invalidFlightCount++;
+        }
+
+        private Accumulator merge(Accumulator other) {
+            other.groups.forEach((key, group) -> {
+                Group existing = groups.putIfAbsent(key, group);
+                if (existing != null)
+                    existing.merge(group);
+            });
+            lastGroup = null;
+            return this;
+        }
+
+        private SortedMap<Long, FlightAggregate> finish() {
+            SortedMap<Long, FlightAggregate> result = new TreeMap<>();
+            groups.forEach((key, group) -> result.put(key, group.toAggregate()));
+            return Collections.unmodifiableSortedMap(result);
+        }
+    }
+
+    private long groupKey(List<Segment> segments) {
+        switch (groupBy) {
+            case DEPARTURE_HOUR:
+            case DEPARTURE_DAY:
+                if (segments.isEmpty())
+                    return NO_DEPARTURE;
+                long departureEpoch = segments.get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+                long bucketSeconds = groupBy == GroupBy.DEPARTURE_HOUR ? SECONDS_PER_HOUR : SECONDS_PER_DAY;
+                return Math.floorDiv(departureEpoch, bucketSeconds) * bucketSeconds;
+            case SEGMENT_COUNT:
+                return segments.size();
+            default:
+            case NONE:
+                return 0;
+        }
+    }
+
+    /**
+     * @return collector of already filtered flights into aggregates by group key in ascending key order
+     */
+    public Collector<Flight, ?, SortedMap<Long, FlightAggregate>> collector() {
+        return Collector.of(Accumulator::new, Accumulator::add, Accumulator::merge, Accumulator::finish,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    /**
+     * Filters and aggregates the flights in one parallel pass.
+     */
+    public SortedMap<Long, FlightAggregate> aggregate(List<Flight> flightList) {
+        return flightList.parallelStream().filter(flightsFilter).collect(collector());
+    }
+
+    /**
+     * Filters and aggregates the stream, in parallel if the stream or the filter is parallel.
+     */
+    public SortedMap<Long, FlightAggregate> aggregate(Stream<Flight> flights) {
+        return flightsFilter.filter(flights).collect(collector());
+    }
+
+    /**
+     * Aggregates the flights of the columnar store, only the matching flights are decoded.
+     */
+    public SortedMap<Long, FlightAggregate> aggregate(ColumnarDataBase columnarDataBase) {
+        return flightsFilter.doParallel().stream(columnarDataBase).collect(collector());
+    }
+}
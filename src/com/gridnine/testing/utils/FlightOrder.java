@@ -0,0 +1,57 @@
+package com.gridnine.testing.utils;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Порядок сортировки результатов фильтра. Каждый порядок задаёт числовой ключ рейса,
+ * рейсы упорядочиваются по возрастанию ключа, при равных ключах - по позиции в исходном списке.
+ * Рейсы без сегментов идут последними.
+ */
+public enum FlightOrder {
+    /**
+     * First departure, earliest first.
+     */
+    EARLIEST_DEPARTURE,
+    /**
+     * Last arrival, latest first.
+     */
+    LATEST_ARRIVAL,
+    /**
+     * Time from the first departure to the last arrival, shortest first.
+     */
+    TOTAL_DURATION,
+    /**
+     * Sum of the ground times between segments, shortest first.
+     */
+    TOTAL_GROUND_TIME;
+
+    /**
+     * @return sort key of the flight, smaller keys come first
+     */
+    public long key(Flight flight) {
+        List<Segment> segments = flight.getSegments();
+        if (segments.isEmpty())
+            return Long.MAX_VALUE;
+        switch (this) {
+            case EARLIEST_DEPARTURE:
+                return segments.get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+            case LATEST_ARRIVAL:
+                return -segments.get(segments.size() - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+            case TOTAL_DURATION:
+                return segments.get(segments.size() - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC)
+                        - segments.get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+            default:
+            case TOTAL_GROUND_TIME:
+                long groundSeconds = 0;
+                for (int i = 1; i < segments.size(); i++) {
+                    groundSeconds += segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC)
+                            - segments.get(i - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+                }
+                return groundSeconds;
+        }
+    }
+}
@@ -1,32 +1,83 @@
 package com.gridnine.testing.utils;
 
+import com.gridnine.testing.dataBase.BufferDataBase;
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.FlightStatistics;
+import com.gridnine.testing.dataBase.ZoneMap;
 import com.gridnine.testing.interfaces.Filter;
+import com.gridnine.testing.interfaces.StreamFilter;
 import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightMetrics;
 import com.gridnine.testing.domain.Segment;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * Фильтр рейсов. Создан на основе наборов условий. Есть только три набора условий:
  * arrivalStatementsMap - набор условий для времени прибытия,
- * hibitedStatementsMap - набор условий для времени отправления,
+ * departureStatementsMap - набор условий для времени отправления,
  * idleStatementsMap - набор условий простоя на земле.
  * Параметр allowInvalidFlights позволяет исключить из результата полеты, в которых есть сегменты
  * со временем прибытия до времени отправления.
- * Операторы doParallel () иdoSequential позволяют переключать фильтр на использование параллельного
- * или последовательные потоковые потоки для повышения производительности в зависимости от количества данных, полученных на входе фильтра.
+ * Условия компилируются в массивы при создании фильтра и проверяются за один проход по сегментам рейса,
+ * поэтому фильтр неизменяем и один экземпляр можно вызывать из нескольких потоков одновременно.
+ * Операторы doParallel() и doSequential() возвращают копию фильтра, использующую параллельные
+ * или последовательные потоки, в зависимости от количества данных, полученных на входе фильтра.
+ * Оператор doAdaptive(FilterExecutor) оставляет этот выбор исполнителю с выделенным ForkJoinPool.
+ * Метод filter(ColumnarDataBase) проверяет условия прямо на колонках эпох, не создавая объекты Segment,
+ * пакетно для всех сегментов блока (см. EpochKernels),
+ * и по сводкам блоков (ZoneMap) пропускает или принимает целиком блоки рейсов без проверки каждого рейса.
+ * Метод filter(BufferDataBase) так же работает с колонками в NIO-буферах, например с файлом, отображённым в память.
+ * Методы filter(Stream), filter(Iterator) и stream(...) фильтруют лениво, не создавая списков.
+ * withMetrics(FilterMetrics) включает сбор метрик по стадиям для filter(List).
+ * Методы top(), filter(List, FlightOrder, offset, limit) и page() возвращают отсортированную часть результата
+ * через ограниченную кучу, page() продолжает выдачу с курсора PageCursor.
+ * withStageOrder(...) и planned(FlightStatistics) заменяют общий проход по сегментам проверкой стадий по очереди
+ * в заданном порядке, чтобы дорогие стадии выполнялись только для рейсов, прошедших более избирательные.
+ * Корректность и условия простоя (кроме EQUALS) проверяются по FlightMetrics рейса, вычисленным один раз,
+ * то есть сравнением с минимальным и максимальным временем на земле, без перебора интервалов.
+ * Условия на суммарное время на земле и на самый длинный интервал (totalIdleOnTheGround(), maxIdleOnTheGround())
+ * относятся к стадии IDLE.
  */
-public class FlightsFilter implements Filter<List<Flight>> {
-    private final Map<Operators, Long> arrivalStatementsMap;
-    private final Map<Operators, Long> departureStatementsMap;
-    private final Map<Operators, Long> idleStatementsMap;
+public class FlightsFilter implements Filter<List<Flight>>, StreamFilter<Flight>, Predicate<Flight> {
+    private static final int DEPARTURE_SHIFT = Operators.values().length;
+    private static final int IDLE_SHIFT = DEPARTURE_SHIFT * 2;
+
+    private final FilterSpec spec;
     private final boolean allowInvalidFlights;
-    private boolean useParallelStream = false;
-    private boolean invalidFlightsRemoved = false;
+    private final boolean useParallelStream;
+    private final FilterExecutor executor;
+    private final FilterMetrics metrics;
+    // stages checked one after another in this order, null for the fused single pass
+    private final FilterStage[] stageOrder;
+
+    private final Operators[] arrivalOperators;
+    private final long[] arrivalOperands;
+    private final Operators[] departureOperators;
+    private final long[] departureOperands;
+    private final Operators[] idleOperators;
+    private final long[] idleOperands;
+    private final Operators[] totalIdleOperators;
+    private final long[] totalIdleOperands;
+    private final Operators[] maxIdleOperators;
+    private final long[] maxIdleOperands;
+    private final boolean hasSummaryConditions;
+    // EQUALS idle conditions are not decided by the extremes of the ground times, the gaps are scanned
+    private final boolean idleNeedsGaps;
+    private final boolean needsMetrics;
+    private final int requiredMask;
+
+    private static final int INVALID_SEGMENT = -1;
 
     /**
      * @param arrivalStatementsMap   set of conditions for arrival times
@@ -35,152 +86,749 @@ public class FlightsFilter implements Filter<List<Flight>> {
      * @param allowInvalidFlights    allows to exclude from the result invalid flights (departureTime < arrivalTime)
      */
     public FlightsFilter(Map<Operators, Long> arrivalStatementsMap, Map<Operators, Long> departureStatementsMap, Map<Operators, Long> idleStatementsMap, boolean allowInvalidFlights) {
-        this.arrivalStatementsMap = arrivalStatementsMap;
-        this.departureStatementsMap = departureStatementsMap;
-        this.idleStatementsMap = idleStatementsMap;
-        this.allowInvalidFlights = allowInvalidFlights;
+        this(new FilterSpec(arrivalStatementsMap, departureStatementsMap, idleStatementsMap, allowInvalidFlights), false, null, null, null);
     }
 
-    private Stream<Flight> getFlightStream(List<Flight> flightList) {
-        return useParallelStream ? flightList.parallelStream() : flightList.stream();
+    public FlightsFilter(FilterSpec spec) {
+        this(spec, false, null, null, null);
     }
 
-    private long getSegmentEpochByType(Segment segment, TypeOfFlight typeOfFlight) {
-        switch (typeOfFlight) {
-            case ARRIVAL:
-                return segment.getArrivalDate().toEpochSecond(ZoneOffset.UTC);
-            default:
-            case DEPARTURE:
-                return segment.getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+    private FlightsFilter(FilterSpec spec, boolean useParallelStream, FilterExecutor executor, FilterMetrics metrics, FilterStage[] stageOrder) {
+        this.spec = spec;
+        this.allowInvalidFlights = spec.isAllowInvalidFlights();
+        this.useParallelStream = useParallelStream;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.stageOrder = stageOrder;
+        arrivalOperators = spec.getArrivalStatementsMap().keySet().toArray(new Operators[0]);
+        arrivalOperands = operandsOf(spec.getArrivalStatementsMap());
+        departureOperators = spec.getDepartureStatementsMap().keySet().toArray(new Operators[0]);
+        departureOperands = operandsOf(spec.getDepartureStatementsMap());
+        idleOperators = spec.getIdleStatementsMap().keySet().toArray(new Operators[0]);
+        idleOperands = operandsOf(spec.getIdleStatementsMap());
+        totalIdleOperators = spec.getTotalIdleStatementsMap().keySet().toArray(new Operators[0]);
+        totalIdleOperands = operandsOf(spec.getTotalIdleStatementsMap());
+        maxIdleOperators = spec.getMaxIdleStatementsMap().keySet().toArray(new Operators[0]);
+        maxIdleOperands = operandsOf(spec.getMaxIdleStatementsMap());
+        hasSummaryConditions = totalIdleOperators.length > 0 || maxIdleOperators.length > 0;
+        idleNeedsGaps = spec.getIdleStatementsMap().containsKey(Operators.EQUALS);
+        needsMetrics = !allowInvalidFlights || idleOperators.length > 0 || hasSummaryConditions;
+        requiredMask = lowBits(arrivalOperators.length)
+                | lowBits(departureOperators.length) << DEPARTURE_SHIFT
+                | lowBits(idleOperators.length) << IDLE_SHIFT;
+    }
+
+    private static long[] operandsOf(Map<Operators, Long> statementsMap) {
+        return statementsMap.values().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static int lowBits(int count) {
+        return (1 << count) - 1;
+    }
+
+    /**
+     * @return canonical description of the conditions, equal for filters selecting the same flights
+     */
+    public FilterSpec getSpec() {
+        return spec;
+    }
+
+    public Map<Operators, Long> getArrivalStatementsMap() {
+        return spec.getArrivalStatementsMap();
+    }
+
+    public Map<Operators, Long> getDepartureStatementsMap() {
+        return spec.getDepartureStatementsMap();
+    }
+
+    public Map<Operators, Long> getIdleStatementsMap() {
+        return spec.getIdleStatementsMap();
+    }
+
+    public Map<Operators, Long> getTotalIdleStatementsMap() {
+        return spec.getTotalIdleStatementsMap();
+    }
+
+    public Map<Operators, Long> getMaxIdleStatementsMap() {
+        return spec.getMaxIdleStatementsMap();
+    }
+
+    public boolean isAllowInvalidFlights() {
+        return allowInvalidFlights;
+    }
+
+    public boolean isParallel() {
+        return useParallelStream;
+    }
+
+    /**
+     * @return bits of the arrival and departure conditions satisfied by the segment
+     */
+    private int segmentMask(long departureEpoch, long arrivalEpoch) {
+        int mask = 0;
+        for (int i = 0; i < arrivalOperators.length; i++) {
+            if (arrivalOperators[i].test(arrivalEpoch, arrivalOperands[i]))
+                mask |= 1 << i;
         }
+        for (int i = 0; i < departureOperators.length; i++) {
+            if (departureOperators[i].test(departureEpoch, departureOperands[i]))
+                mask |= 1 << (DEPARTURE_SHIFT + i);
+        }
+        return mask;
     }
 
-    private boolean filterStatementResult(Segment segment, long epochTimeToCompare, Operators operators, TypeOfFlight typeOfFlight) {
+    /**
+     * @return bits of the idle conditions satisfied by the ground time between two segments
+     */
+    private int gapMask(long groundSeconds) {
+        int mask = 0;
+        for (int i = 0; i < idleOperators.length; i++) {
+            if (idleOperators[i].test(groundSeconds, idleOperands[i]))
+                mask |= 1 << (IDLE_SHIFT + i);
+        }
+        return mask;
+    }
 
-        if(operators.equals(Operators.EQUALS)){
-            return getSegmentEpochByType(segment, typeOfFlight) == epochTimeToCompare;
-        }else if (operators.equals(Operators.GREATER_OR_EQUALS)){
-            return getSegmentEpochByType(segment, typeOfFlight) >= epochTimeToCompare;
-        }else if (operators.equals(Operators.GREATER)){
-            return getSegmentEpochByType(segment, typeOfFlight) > epochTimeToCompare;
-        }else if (operators.equals(Operators.LESS)){
-            return getSegmentEpochByType(segment, typeOfFlight) < epochTimeToCompare;
-        }else if (operators.equals(Operators.LESS_OR_EQUALS)){
-            return getSegmentEpochByType(segment, typeOfFlight) <= epochTimeToCompare;
-        }else return false;
+    /**
+     * Adds to the mask the conditions satisfied by the segment and, when scanGap is set, by the ground time before it.
+     * Every single-pass check (Flight, epoch arrays and epoch buffers) updates the condition bits only here.
+     *
+     * @return updated mask, INVALID_SEGMENT if the segment arrives before it departs and invalid flights are excluded
+     */
+    private int segmentStep(int mask, long departureEpoch, long arrivalEpoch, boolean scanGap, long groundSeconds) {
+        if (!allowInvalidFlights && arrivalEpoch < departureEpoch)
+            return INVALID_SEGMENT;
+        mask |= segmentMask(departureEpoch, arrivalEpoch);
+        return scanGap ? mask | gapMask(groundSeconds) : mask;
+    }
 
+    /**
+     * @return bits of the idle conditions satisfied according to the shortest and longest ground time;
+     * "some gap is greater" holds if the longest one is, "some gap is less" if the shortest one is
+     */
+    private int metricsIdleMask(FlightMetrics flightMetrics) {
+        if (flightMetrics.getGapCount() == 0)
+            return 0;
+        int mask = 0;
+        for (int i = 0; i < idleOperators.length; i++) {
+            Operators operator = idleOperators[i];
+            if (operator != Operators.EQUALS
+                    && operator.test(isGreater(operator) ? flightMetrics.getMaxGapSeconds() : flightMetrics.getMinGapSeconds(), idleOperands[i]))
+                mask |= 1 << (IDLE_SHIFT + i);
+        }
+        return mask;
     }
 
-    private boolean isValidSegment(Segment segment) {
-        if (!(allowInvalidFlights || invalidFlightsRemoved)) {
-            return segment.getArrivalDate().toEpochSecond(ZoneOffset.UTC) < segment.getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+    /**
+     * @return true if the total and the longest ground time satisfy the totalIdle and maxIdle conditions
+     */
+    private boolean passesSummary(long totalGroundSeconds, long maxGapSeconds, int gapCount) {
+        for (int i = 0; i < totalIdleOperators.length; i++) {
+            if (!totalIdleOperators[i].test(totalGroundSeconds, totalIdleOperands[i]))
+                return false;
+        }
+        for (int i = 0; i < maxIdleOperators.length; i++) {
+            if (gapCount == 0 || !maxIdleOperators[i].test(maxGapSeconds, maxIdleOperands[i]))
+                return false;
         }
         return true;
     }
 
-    private boolean isValidFlight(Flight flight) {
-        boolean isValid = false;
-        if (allowInvalidFlights && invalidFlightsRemoved) {
-            return true;
+    /**
+     * @param gaps ground times of {@link EpochKernels#gaps}, the flight owns the segments from..to
+     */
+    private boolean passesSummary(long[] gaps, int from, int to) {
+        long total = 0;
+        long max = Long.MIN_VALUE;
+        for (int segmentIndex = from + 1; segmentIndex < to; segmentIndex++) {
+            total += gaps[segmentIndex];
+            max = Math.max(max, gaps[segmentIndex]);
         }
+        return passesSummary(total, max, Math.max(0, to - from - 1));
+    }
+
+    /**
+     * Checks every condition in a single pass over the segments of the flight.
+     * Each condition must be satisfied by at least one segment (or one ground interval for idle conditions).
+     */
+    @Override
+    public boolean test(Flight flight) {
+        return rejectionStage(flight) == null;
+    }
+
+    /**
+     * @return first stage the flight does not pass, null if the flight matches
+     */
+    public FilterStage rejectionStage(Flight flight) {
+        if (stageOrder != null)
+            return stagedRejectionStage(flight);
+        int mask = 0;
+        boolean scanGaps = false;
+        FilterStage summaryStage = null;
+        if (needsMetrics) {
+            FlightMetrics flightMetrics = flight.getMetrics();
+            if (!allowInvalidFlights && !flightMetrics.isValid())
+                return FilterStage.VALIDITY;
+            if (hasSummaryConditions && !passesSummary(flightMetrics.getTotalGroundSeconds(), flightMetrics.getMaxGapSeconds(), flightMetrics.getGapCount()))
+                summaryStage = FilterStage.IDLE;
+            mask = metricsIdleMask(flightMetrics);
+            scanGaps = idleNeedsGaps && flightMetrics.getGapCount() > 0;
+        }
+        long previousArrivalEpoch = 0;
+        boolean hasPrevious = false;
         for (Segment segment : flight.getSegments()) {
-            isValid |= isValidSegment(segment);
+            if (mask == requiredMask)
+                break;
+            long departureEpoch = segment.getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+            long arrivalEpoch = segment.getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+            // validity is already decided by the metrics
+            mask = segmentStep(mask, departureEpoch, arrivalEpoch, scanGaps && hasPrevious, departureEpoch - previousArrivalEpoch);
+            previousArrivalEpoch = arrivalEpoch;
+            hasPrevious = true;
         }
-        return isValid;
+        FilterStage missingStage = missingStage(mask);
+        return missingStage != null ? missingStage : summaryStage;
     }
 
-    private boolean isPassedSegment(Segment segment, long epochTimeToCompare, Operators operators, TypeOfFlight filterType) {
-        if (!isValidSegment(segment))
-            return false;
-        return filterStatementResult(segment, epochTimeToCompare, operators, filterType);
+    private FilterStage stagedRejectionStage(Flight flight) {
+        for (FilterStage stage : stageOrder) {
+            if (!passes(stage, flight))
+                return stage;
+        }
+        return null;
     }
 
-    private boolean isAllowedSegmentDiff(long differenceEpochTime, long toleranceSeconds, Operators operators) {
+    /**
+     * Checks one stage, converting only the dates the stage needs.
+     */
+    private boolean passes(FilterStage stage, Flight flight) {
+        List<Segment> segments = flight.getSegments();
+        switch (stage) {
+            case VALIDITY:
+                return flight.getMetrics().isValid();
+            case ARRIVAL:
+                return passesSegmentConditions(segments, arrivalOperators, arrivalOperands, true);
+            case DEPARTURE:
+                return passesSegmentConditions(segments, departureOperators, departureOperands, false);
+            default:
+            case IDLE:
+                FlightMetrics flightMetrics = flight.getMetrics();
+                if (hasSummaryConditions && !passesSummary(flightMetrics.getTotalGroundSeconds(), flightMetrics.getMaxGapSeconds(), flightMetrics.getGapCount()))
+                    return false;
+                int required = lowBits(idleOperators.length);
+                int mask = metricsIdleMask(flightMetrics) >>> IDLE_SHIFT;
+                for (int i = 1; i < segments.size() && mask != required; i++) {
+                    long groundSeconds = segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC)
+                            - segments.get(i - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+                    mask |= gapMask(groundSeconds) >>> IDLE_SHIFT;
+                }
+                return mask == required;
+        }
+    }
+
+    private static boolean passesSegmentConditions(List<Segment> segments, Operators[] operators, long[] operands, boolean arrival) {
+        int required = lowBits(operators.length);
+        int mask = 0;
+        for (int i = 0; i < segments.size() && mask != required; i++) {
+            Segment segment = segments.get(i);
+            long epoch = (arrival ? segment.getArrivalDate() : segment.getDepartureDate()).toEpochSecond(ZoneOffset.UTC);
+            for (int j = 0; j < operators.length; j++) {
+                if (operators[j].test(epoch, operands[j]))
+                    mask |= 1 << j;
+            }
+        }
+        return mask == required;
+    }
 
-        if(operators.equals(Operators.EQUALS)){
-            return differenceEpochTime == toleranceSeconds;
-        }else if (operators.equals(Operators.GREATER_OR_EQUALS)){
-            return differenceEpochTime >= toleranceSeconds;
-        }else if (operators.equals(Operators.GREATER)){
-            return differenceEpochTime > toleranceSeconds;
-        }else if (operators.equals(Operators.LESS)){
-            return differenceEpochTime < toleranceSeconds;
-        }else if (operators.equals(Operators.LESS_OR_EQUALS)){
-            return differenceEpochTime <= toleranceSeconds;
-        }else return false;
+    private FilterStage missingStage(int mask) {
+        int missing = requiredMask & ~mask;
+        if (missing == 0)
+            return null;
+        if ((missing & lowBits(DEPARTURE_SHIFT)) != 0)
+            return FilterStage.ARRIVAL;
+        if ((missing & lowBits(DEPARTURE_SHIFT) << DEPARTURE_SHIFT) != 0)
+            return FilterStage.DEPARTURE;
+        return FilterStage.IDLE;
+    }
 
+    /**
+     * Same as {@link #test(Flight)} for the segments from..to of the epoch columns.
+     */
+    public boolean test(long[] departureEpochs, long[] arrivalEpochs, int from, int to) {
+        return test(departureEpochs, arrivalEpochs, null, from, to);
     }
 
-    private boolean isAllowedFlightIdleTime(Flight flight, long toleranceSeconds, Operators operators) {
-        boolean isPassed = false;
-        List<Segment> segmentList = flight.getSegments();
-        for (int nextSegmentIndex = 1; nextSegmentIndex <= (segmentList.size() - 1); nextSegmentIndex++) {
-            Segment currentSegment = segmentList.get(nextSegmentIndex - 1);
-            Segment nextSegment = segmentList.get(nextSegmentIndex);
-            long currentArrivalEpoch = currentSegment.getArrivalDate().toEpochSecond(ZoneOffset.UTC);
-            long nextDepartureEpoch = nextSegment.getDepartureDate().toEpochSecond(ZoneOffset.UTC);
-            isPassed |= (isAllowedSegmentDiff(nextDepartureEpoch - currentArrivalEpoch, toleranceSeconds, operators));
+    /**
+     * Same as {@link #test(long[], long[], int, int)} with the ground times already computed,
+     * so callers that test one flight with many filters subtract the epochs once.
+     *
+     * @param gaps ground time before every segment as written by {@link EpochKernels#gaps}: gaps[i - from] for segment i
+     */
+    public boolean test(long[] departureEpochs, long[] arrivalEpochs, long[] gaps, int from, int to) {
+        boolean stopOnMatch = allowInvalidFlights && !hasSummaryConditions;
+        int mask = 0;
+        long totalGroundSeconds = 0;
+        long maxGapSeconds = Long.MIN_VALUE;
+        for (int segmentIndex = from; segmentIndex < to; segmentIndex++) {
+            long departureEpoch = departureEpochs[segmentIndex];
+            boolean hasGap = segmentIndex > from;
+            long groundSeconds = !hasGap ? 0
+                    : gaps != null ? gaps[segmentIndex - from] : departureEpoch - arrivalEpochs[segmentIndex - 1];
+            mask = segmentStep(mask, departureEpoch, arrivalEpochs[segmentIndex], hasGap, groundSeconds);
+            if (mask == INVALID_SEGMENT)
+                return false;
+            if (hasGap) {
+                totalGroundSeconds += groundSeconds;
+                maxGapSeconds = Math.max(maxGapSeconds, groundSeconds);
+            }
+            if (mask == requiredMask && stopOnMatch)
+                return true;
         }
-        return isPassed;
+        return mask == requiredMask && (!hasSummaryConditions || passesSummary(totalGroundSeconds, maxGapSeconds, Math.max(0, to - from - 1)));
     }
 
-    private List<Flight> conditionalFilter(List<Flight> flightList, Map<Operators, Long> conditionMap, TypeOfFlight typeOfFlight) {
-        List<Flight> filteredList = new ArrayList<>(flightList);
-        for (Map.Entry<Operators, Long> conditions : conditionMap.entrySet()) {
-            filteredList = getFlightStream(filteredList)
-                    .filter(flight ->
-                            flight.getSegments().stream().
-                                    anyMatch(segment ->
-                                            isPassedSegment(segment, conditions.getValue(), conditions.getKey(), typeOfFlight)))
-                    .collect(Collectors.toList());
+    /**
+     * Same as {@link #test(Flight)} for the segments from..to of the epoch buffers.
+     */
+    public boolean test(LongBuffer departureEpochs, LongBuffer arrivalEpochs, int from, int to) {
+        boolean stopOnMatch = allowInvalidFlights && !hasSummaryConditions;
+        int mask = 0;
+        long totalGroundSeconds = 0;
+        long maxGapSeconds = Long.MIN_VALUE;
+        long previousArrivalEpoch = 0;
+        for (int segmentIndex = from; segmentIndex < to; segmentIndex++) {
+            long departureEpoch = departureEpochs.get(segmentIndex);
+            long arrivalEpoch = arrivalEpochs.get(segmentIndex);
+            boolean hasGap = segmentIndex > from;
+            long groundSeconds = departureEpoch - previousArrivalEpoch;
+            mask = segmentStep(mask, departureEpoch, arrivalEpoch, hasGap, groundSeconds);
+            if (mask == INVALID_SEGMENT)
+                return false;
+            if (hasGap) {
+                totalGroundSeconds += groundSeconds;
+                maxGapSeconds = Math.max(maxGapSeconds, groundSeconds);
+            }
+            if (mask == requiredMask && stopOnMatch)
+                return true;
+            previousArrivalEpoch = arrivalEpoch;
         }
-        invalidFlightsRemoved = true;
-        return filteredList;
+        return mask == requiredMask && (!hasSummaryConditions || passesSummary(totalGroundSeconds, maxGapSeconds, Math.max(0, to - from - 1)));
+    }
+
+    private enum BlockMatch {
+        NONE, SOME, ALL
+    }
+
+    private static boolean isGreater(Operators operators) {
+        return operators == Operators.GREATER || operators == Operators.GREATER_OR_EQUALS;
+    }
+
+    /**
+     * @return true if some value in [min, max] can satisfy the condition
+     */
+    private static boolean canMatch(Operators operators, long operand, long min, long max) {
+        if (min > max)
+            return false;
+        if (operators == Operators.EQUALS)
+            return min <= operand && operand <= max;
+        return operators.test(isGreater(operators) ? max : min, operand);
+    }
+
+    /**
+     * @return true if every value in [min, max] satisfies the condition
+     */
+    private static boolean allMatch(Operators operators, long operand, long min, long max) {
+        if (operators == Operators.EQUALS)
+            return min == operand && max == operand;
+        return operators.test(isGreater(operators) ? min : max, operand);
     }
 
-    private List<Flight> idleFlightsFilter(List<Flight> flightList, Map<Operators, Long> conditionMap) {
-        List<Flight> filteredList = new ArrayList<>(flightList);
-        for (Map.Entry<Operators, Long> conditions : conditionMap.entrySet()) {
-            long toleranceSeconds = conditions.getValue();
-            filteredList = getFlightStream(filteredList)
-                    .filter(flight -> isAllowedFlightIdleTime(flight, toleranceSeconds, conditions.getKey()))
-                    .filter(this::isValidFlight)
-                    .collect(Collectors.toList());
+    /**
+     * @return false if no flight whose segments lie in the given departure and arrival ranges can match
+     * the arrival and departure conditions; idle and validity conditions are not checked
+     */
+    public boolean canMatchTimeRange(long minDeparture, long maxDeparture, long minArrival, long maxArrival) {
+        for (int i = 0; i < arrivalOperators.length; i++) {
+            if (!canMatch(arrivalOperators[i], arrivalOperands[i], minArrival, maxArrival))
+                return false;
+        }
+        for (int i = 0; i < departureOperators.length; i++) {
+            if (!canMatch(departureOperators[i], departureOperands[i], minDeparture, maxDeparture))
+                return false;
         }
-        invalidFlightsRemoved = true;
-        return filteredList;
+        return true;
     }
 
-    private List<Flight> invalidFlightsFilter(List<Flight> flightList) {
-        List<Flight> filteredList = getFlightStream(flightList)
-                .filter(flight -> flight.getSegments().stream().noneMatch(this::isValidSegment))
-                .collect(Collectors.toList());
-        invalidFlightsRemoved = true;
-        return filteredList;
+    private BlockMatch matchBlock(ZoneMap zoneMap, int block) {
+        boolean all = allowInvalidFlights || zoneMap.isAllValid(block);
+        boolean everyFlightHasSegment = zoneMap.getMinSegmentCount(block) >= 1;
+        boolean everyFlightHasGap = zoneMap.getMinSegmentCount(block) >= 2;
+        for (int i = 0; i < arrivalOperators.length; i++) {
+            long min = zoneMap.getMinArrival(block);
+            long max = zoneMap.getMaxArrival(block);
+            if (!canMatch(arrivalOperators[i], arrivalOperands[i], min, max))
+                return BlockMatch.NONE;
+            all &= everyFlightHasSegment && allMatch(arrivalOperators[i], arrivalOperands[i], min, max);
+        }
+        for (int i = 0; i < departureOperators.length; i++) {
+            long min = zoneMap.getMinDeparture(block);
+            long max = zoneMap.getMaxDeparture(block);
+            if (!canMatch(departureOperators[i], departureOperands[i], min, max))
+                return BlockMatch.NONE;
+            all &= everyFlightHasSegment && allMatch(departureOperators[i], departureOperands[i], min, max);
+        }
+        for (int i = 0; i < idleOperators.length; i++) {
+            long min = zoneMap.getMinGap(block);
+            long max = zoneMap.getMaxGap(block);
+            if (!canMatch(idleOperators[i], idleOperands[i], min, max))
+                return BlockMatch.NONE;
+            all &= everyFlightHasGap && allMatch(idleOperators[i], idleOperands[i], min, max);
+        }
+        // the longest ground time of a flight lies between the shortest and the longest gap of its block
+        for (int i = 0; i < maxIdleOperators.length; i++) {
+            if (!canMatch(maxIdleOperators[i], maxIdleOperands[i], zoneMap.getMinGap(block), zoneMap.getMaxGap(block)))
+                return BlockMatch.NONE;
+        }
+        return all && !hasSummaryConditions ? BlockMatch.ALL : BlockMatch.SOME;
     }
 
+    /**
+     * Lazily filters the epoch columns, a flight is decoded only when it matches and the consumer reaches it.
+     * Blocks whose summaries exclude every flight are skipped, blocks where every flight matches are taken as is.
+     *
+     * @param columnarDataBase columnar flight store
+     */
+    public Stream<Flight> stream(final ColumnarDataBase columnarDataBase) {
+        long[] departureEpochs = columnarDataBase.getDepartureEpochs();
+        long[] arrivalEpochs = columnarDataBase.getArrivalEpochs();
+        int[] flightOffsets = columnarDataBase.getFlightOffsets();
+        ZoneMap zoneMap = columnarDataBase.getZoneMap();
+        IntStream blocks = IntStream.range(0, zoneMap.getBlockCount());
+        if (useParallelStream)
+            blocks = blocks.parallel();
+        return blocks
+                .flatMap(block -> {
+                    IntStream flightIndexes = IntStream.range(zoneMap.getFirstFlight(block), zoneMap.getLastFlight(block));
+                    switch (matchBlock(zoneMap, block)) {
+                        case NONE:
+                            return IntStream.empty();
+                        case ALL:
+                            return flightIndexes;
+                        default:
+                        case SOME:
+                            return matchBatch(departureEpochs, arrivalEpochs, flightOffsets, zoneMap.getFirstFlight(block), zoneMap.getLastFlight(block));
+                    }
+                })
+                .mapToObj(columnarDataBase::getFlight);
+    }
+
+    /**
+     * Buffers of {@link #matchBatch}, reused by every block evaluated on the same thread.
+     * matchBatch() runs no foreign code while it uses them, so two evaluations never share them.
+     */
+    private static final class BatchScratch {
+        private long[][] masks = new long[0][];
+        private long[] gaps = new long[0];
+        private int[] matches = new int[0];
+
+        /**
+         * @return mask of the condition with at least maskLength words; the kernels overwrite all of them
+         */
+        private long[] mask(int condition, int maskLength) {
+            if (masks.length <= condition)
+                masks = Arrays.copyOf(masks, condition + 1);
+            if (masks[condition] == null || masks[condition].length < maskLength)
+                masks[condition] = new long[maskLength];
+            return masks[condition];
+        }
+
+        private long[] gaps(int length) {
+            if (gaps.length < length)
+                gaps = new long[Math.max(length, gaps.length * 2)];
+            return gaps;
+        }
+
+        private int[] matches(int length) {
+            if (matches.length < length)
+                matches = new int[Math.max(length, matches.length * 2)];
+            return matches;
+        }
+    }
+
+    private static final ThreadLocal<BatchScratch> BATCH_SCRATCH = ThreadLocal.withInitial(BatchScratch::new);
+
+    /**
+     * Evaluates the flights firstFlight..lastFlight with the batch kernels of {@link EpochKernels}:
+     * each condition is compared for all segments of the range at once into a bitmask,
+     * then a flight only checks the bits of its own segments.
+     * Masks, gaps and matches live in the per-thread {@link BatchScratch}, only the returned indexes are allocated.
+     *
+     * @return indexes of the matching flights
+     */
+    private IntStream matchBatch(long[] departureEpochs, long[] arrivalEpochs, int[] flightOffsets, int firstFlight, int lastFlight) {
+        int from = flightOffsets[firstFlight];
+        int to = flightOffsets[lastFlight];
+        int maskLength = EpochKernels.maskLength(to - from);
+        BatchScratch scratch = BATCH_SCRATCH.get();
+        int arrivalConditions = arrivalOperators.length;
+        int segmentConditions = arrivalConditions + departureOperators.length;
+        int gapConditions = segmentConditions + idleOperators.length;
+        for (int i = 0; i < arrivalOperators.length; i++) {
+            EpochKernels.compare(arrivalEpochs, from, to, arrivalOperators[i], arrivalOperands[i], scratch.mask(i, maskLength));
+        }
+        for (int i = 0; i < departureOperators.length; i++) {
+            EpochKernels.compare(departureEpochs, from, to, departureOperators[i], departureOperands[i], scratch.mask(arrivalConditions + i, maskLength));
+        }
+        long[] gaps = null;
+        if (idleOperators.length > 0 || hasSummaryConditions) {
+            gaps = scratch.gaps(to - from);
+            EpochKernels.gaps(departureEpochs, arrivalEpochs, from, to, gaps);
+            for (int i = 0; i < idleOperators.length; i++) {
+                EpochKernels.compare(gaps, 0, to - from, idleOperators[i], idleOperands[i], scratch.mask(segmentConditions + i, maskLength));
+            }
+        }
+        long[] invalidSegments = null;
+        if (!allowInvalidFlights) {
+            invalidSegments = scratch.mask(gapConditions, maskLength);
+            EpochKernels.invalidSegments(departureEpochs, arrivalEpochs, from, to, invalidSegments);
+        }
+        long[][] masks = scratch.masks;
+        int[] matches = scratch.matches(lastFlight - firstFlight);
+        int matchCount = 0;
+        flights:
+        for (int flightIndex = firstFlight; flightIndex < lastFlight; flightIndex++) {
+            int first = flightOffsets[flightIndex] - from;
+            int last = flightOffsets[flightIndex + 1] - from;
+            if (invalidSegments != null && EpochKernels.anySet(invalidSegments, first, last))
+                continue;
+            for (int condition = 0; condition < segmentConditions; condition++) {
+                if (!EpochKernels.anySet(masks[condition], first, last))
+                    continue flights;
+            }
+            // the gap before the first segment of a flight belongs to the previous flight
+            for (int condition = segmentConditions; condition < gapConditions; condition++) {
+                if (!EpochKernels.anySet(masks[condition], first + 1, last))
+                    continue flights;
+            }
+            if (hasSummaryConditions && !passesSummary(gaps, first, last))
+                continue;
+            matches[matchCount++] = flightIndex;
+        }
+        return IntStream.of(Arrays.copyOf(matches, matchCount));
+    }
+
+    /**
+     * Evaluates the conditions directly on the epoch columns, only matching flights are decoded.
+     *
+     * @param columnarDataBase columnar flight store
+     */
+    public List<Flight> filter(final ColumnarDataBase columnarDataBase) {
+        return stream(columnarDataBase).collect(Collectors.toList());
+    }
+
+    /**
+     * Lazily filters the epoch buffers without creating Flight objects for the rows that don't match.
+     *
+     * @param bufferDataBase flight store backed by NIO buffers
+     */
+    public Stream<Flight> stream(final BufferDataBase bufferDataBase) {
+        LongBuffer departureEpochs = bufferDataBase.getDepartureEpochs();
+        LongBuffer arrivalEpochs = bufferDataBase.getArrivalEpochs();
+        IntBuffer flightOffsets = bufferDataBase.getFlightOffsets();
+        IntStream flightIndexes = IntStream.range(0, bufferDataBase.getFlightCount());
+        if (useParallelStream)
+            flightIndexes = flightIndexes.parallel();
+        return flightIndexes
+                .filter(flightIndex -> test(departureEpochs, arrivalEpochs, flightOffsets.get(flightIndex), flightOffsets.get(flightIndex + 1)))
+                .mapToObj(bufferDataBase::getFlight);
+    }
+
+    public List<Flight> filter(final BufferDataBase bufferDataBase) {
+        return stream(bufferDataBase).collect(Collectors.toList());
+    }
+
+    /**
+     * Lazily filters the source: nothing is read until a terminal operation runs,
+     * and limit()/findFirst() stop reading the source as soon as they are satisfied.
+     */
+    @Override
+    public Stream<Flight> filter(final Stream<Flight> flights) {
+        return (useParallelStream ? flights.parallel() : flights).filter(this);
+    }
+
+    /**
+     * @return copy of the filter that uses parallel streams, the current instance is not changed
+     */
     public FlightsFilter doParallel() {
-        this.useParallelStream = true;
-        return this;
+        return useParallelStream && executor == null ? this : new FlightsFilter(spec, true, null, metrics, stageOrder);
     }
 
+    /**
+     * @return copy of the filter that uses sequential streams, the current instance is not changed
+     */
     public FlightsFilter doSequential() {
-        this.useParallelStream = false;
-        return this;
+        return useParallelStream || executor != null ? new FlightsFilter(spec, false, null, metrics, stageOrder) : this;
+    }
+
+    /**
+     * @return copy of the filter whose filter(List) lets the executor choose between sequential and parallel run
+     */
+    public FlightsFilter doAdaptive(FilterExecutor executor) {
+        return new FlightsFilter(spec, false, Objects.requireNonNull(executor), metrics, stageOrder);
+    }
+
+    /**
+     * @return copy of the filter whose filter(List) runs are recorded in the metrics while they are enabled
+     */
+    public FlightsFilter withMetrics(FilterMetrics metrics) {
+        return new FlightsFilter(spec, useParallelStream, executor, metrics, stageOrder);
+    }
+
+    /**
+     * @param stageOrder order of the stages used by this filter, stages without conditions may be omitted
+     * @return copy of the filter that checks a flight stage by stage in the given order and stops at the first failed stage
+     */
+    public FlightsFilter withStageOrder(FilterStage... stageOrder) {
+        List<FilterStage> usedStages = new ArrayList<>();
+        for (FilterStage stage : stageOrder) {
+            if (usedStages.contains(stage))
+                throw new IllegalArgumentException("FlightsFilter: stage " + stage + " is repeated");
+            if (isUsed(stage))
+                usedStages.add(stage);
+        }
+        for (FilterStage stage : FilterStage.values()) {
+            if (isUsed(stage) && !usedStages.contains(stage))
+                throw new IllegalArgumentException("FlightsFilter: stage " + stage + " is missing");
+        }
+        return new FlightsFilter(spec, useParallelStream, executor, metrics, usedStages.toArray(new FilterStage[0]));
+    }
+
+    /**
+     * @return copy of the filter with the stage order chosen by {@link FilterPlanner} for the statistics
+     */
+    public FlightsFilter planned(FlightStatistics statistics) {
+        return withStageOrder(FilterPlanner.plan(spec, statistics));
+    }
+
+    /**
+     * @return stage order set by withStageOrder(), null when all stages are checked in a single pass
+     */
+    public FilterStage[] getStageOrder() {
+        return stageOrder == null ? null : stageOrder.clone();
+    }
+
+    private boolean isUsed(FilterStage stage) {
+        switch (stage) {
+            case VALIDITY:
+                return !allowInvalidFlights;
+            case ARRIVAL:
+                return arrivalOperators.length > 0;
+            case DEPARTURE:
+                return departureOperators.length > 0;
+            default:
+            case IDLE:
+                return idleOperators.length > 0 || hasSummaryConditions;
+        }
+    }
+
+    /**
+     * Returns flights offset..offset + limit of the result sorted by the order without sorting the whole result:
+     * a bounded heap keeps the first offset + limit matches, O(n log(offset + limit)) time.
+     * The heap never holds more flights than the list, so a limit of Integer.MAX_VALUE means "all the rest".
+     */
+    public List<Flight> filter(final List<Flight> flightList, FlightOrder order, int offset, int limit) {
+        if (offset < 0 || limit < 0)
+            throw new IllegalArgumentException("FlightsFilter: offset and limit must not be negative");
+        if (limit == 0 || offset >= flightList.size())
+            return List.of();
+        TopKHeap heap = new TopKHeap((int) Math.min((long) offset + limit, flightList.size()));
+        collect(flightList, order, null, heap);
+        heap.sort();
+        return heap.flights(Math.min(offset, heap.size()), heap.size());
+    }
+
+    /**
+     * @return first limit matches in the order
+     */
+    public List<Flight> top(final List<Flight> flightList, FlightOrder order, int limit) {
+        return filter(flightList, order, 0, limit);
+    }
+
+    /**
+     * Returns the page of matches that follows the cursor, keeping only limit + 1 flights in memory,
+     * and no more than the list has.
+     * Earlier pages are neither recomputed nor stored, the cursor is valid for the same list.
+     *
+     * @param after cursor of the previous page, null for the first page
+     */
+    public FlightsPage page(final List<Flight> flightList, FlightOrder order, PageCursor after, int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("FlightsFilter: page size must be positive");
+        if (after != null && after.getOrder() != order)
+            throw new IllegalArgumentException("FlightsFilter: cursor was created for order " + after.getOrder());
+        // one flight more than the page tells whether there is a next page
+        TopKHeap heap = new TopKHeap(Math.min(limit, flightList.size()) + 1);
+        collect(flightList, order, after, heap);
+        heap.sort();
+        int pageSize = Math.min(limit, heap.size());
+        PageCursor nextCursor = heap.size() > limit
+                ? new PageCursor(order, heap.keyAt(pageSize - 1), heap.ordinalAt(pageSize - 1))
+                : null;
+        return new FlightsPage(heap.flights(0, pageSize), nextCursor);
+    }
+
+    /**
+     * The key is computed first, so flights that could not enter the heap are not tested at all.
+     */
+    private void collect(List<Flight> flightList, FlightOrder order, PageCursor after, TopKHeap heap) {
+        int ordinal = 0;
+        for (Flight flight : flightList) {
+            long key = order.key(flight);
+            if ((after == null || after.isBefore(key, ordinal)) && heap.accepts(key, ordinal) && test(flight))
+                heap.offer(key, ordinal, flight);
+            ordinal++;
+        }
     }
 
     @Override
     public List<Flight> filter(final List<Flight> flightList) {
-        List<Flight> filteredFlights = new ArrayList<>(flightList);
-        if (!arrivalStatementsMap.isEmpty())
-            filteredFlights = conditionalFilter(filteredFlights, arrivalStatementsMap, TypeOfFlight.ARRIVAL);
-        if (!departureStatementsMap.isEmpty())
-            filteredFlights = conditionalFilter(filteredFlights, departureStatementsMap, TypeOfFlight.DEPARTURE);
-        if (!idleStatementsMap.isEmpty())
-            filteredFlights = idleFlightsFilter(filteredFlights, idleStatementsMap);
-        if ((arrivalStatementsMap.isEmpty() && departureStatementsMap.isEmpty() && idleStatementsMap.isEmpty()) || !allowInvalidFlights)
-            filteredFlights = invalidFlightsFilter(filteredFlights);
-        invalidFlightsRemoved = false;
+        FilterMetrics currentMetrics = metrics;
+        if (currentMetrics != null && currentMetrics.isEnabled())
+            return filterWithMetrics(flightList, currentMetrics);
+        return filterWithoutMetrics(flightList);
+    }
+
+    /**
+     * Rejected flights are counted by their stage in the same pass, by whichever thread checks them.
+     */
+    private List<Flight> filterWithMetrics(final List<Flight> flightList, FilterMetrics currentMetrics) {
+        FilterMetrics.Run run = currentMetrics.startRun();
+        List<Flight> filteredFlights = filterWith(flight -> {
+            FilterStage stage = rejectionStage(flight);
+            if (stage == null)
+                return true;
+            run.drop(stage);
+            return false;
+        }, flightList);
+        boolean singleThreaded = !useParallelStream && executor == null;
+        currentMetrics.finishRun(run, spec, flightList.size(), filteredFlights.size(), singleThreaded);
+        return filteredFlights;
+    }
+
+    private List<Flight> filterWithoutMetrics(final List<Flight> flightList) {
+        return filterWith(this, flightList);
+    }
+
+    private List<Flight> filterWith(Predicate<Flight> predicate, final List<Flight> flightList) {
+        if (executor != null)
+            return executor.filter(predicate, flightList);
+        if (useParallelStream)
+            return flightList.parallelStream().filter(predicate).collect(Collectors.toList());
+        List<Flight> filteredFlights = new ArrayList<>();
+        for (Flight flight : flightList) {
+            if (predicate.test(flight))
+                filteredFlights.add(flight);
+        }
         return filteredFlights;
     }
 }
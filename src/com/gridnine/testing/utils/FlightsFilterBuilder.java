@@ -1,49 +1,68 @@
 package com.gridnine.testing.utils;
 
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 public class FlightsFilterBuilder {
-    private final static String ERROR_MESSAGE = "FlightsFilterBuilder: One of the following operators was not used before calling the method: arrival(), departure(), idle()";
+    private final static String ERROR_MESSAGE = "FlightsFilterBuilder: One of the following operators was not used before calling the method: arrival(), departure(), idleOnTheGround(), totalIdleOnTheGround(), maxIdleOnTheGround()";
+    private final static String COMPOSITION_ERROR_MESSAGE = "FlightsFilterBuilder: or(), not() and group() can only be built by buildQuery()";
     private final Map<Operators, Long> arrivalStatementsMap = new EnumMap<>(Operators.class);
     private final Map<Operators, Long> departureStatementsMap = new EnumMap<>(Operators.class);
     private final Map<Operators, Long> idleStatementsMap = new EnumMap<>(Operators.class);
+    private final Map<Operators, Long> totalIdleStatementsMap = new EnumMap<>(Operators.class);
+    private final Map<Operators, Long> maxIdleStatementsMap = new EnumMap<>(Operators.class);
     private Map<Operators, Long> targetStatementsMap;
     private boolean allowInvalidFlights = true;
+    // finished OR-ed terms, negated conditions and groups AND-ed to the current term
+    private final List<FlightsQuery> terms = new ArrayList<>();
+    private final List<FlightsQuery> termQueries = new ArrayList<>();
+    private boolean negateNext;
+    private boolean composite;
 
     private void stateCheck() {
         if (targetStatementsMap == null)
             throw new IllegalStateException(ERROR_MESSAGE, new NullPointerException("targetStatementsMap is null"));
     }
 
-    public FlightsFilterBuilder equals (long epochTime) {
+    private FlightsFilterBuilder put(Operators operator, long epochTime) {
         stateCheck();
-        targetStatementsMap.put(Operators.EQUALS, epochTime);
+        if (!negateNext) {
+            targetStatementsMap.put(operator, epochTime);
+            return this;
+        }
+        Map<Operators, Long> condition = Map.of(operator, epochTime);
+        Map<Operators, Long> none = Map.of();
+        termQueries.add(FlightsQuery.not(FlightsQuery.of(new FlightsFilter(new FilterSpec(
+                targetStatementsMap == arrivalStatementsMap ? condition : none,
+                targetStatementsMap == departureStatementsMap ? condition : none,
+                targetStatementsMap == idleStatementsMap ? condition : none,
+                targetStatementsMap == totalIdleStatementsMap ? condition : none,
+                targetStatementsMap == maxIdleStatementsMap ? condition : none,
+                true)))));
+        negateNext = false;
         return this;
     }
 
+    public FlightsFilterBuilder equals (long epochTime) {
+        return put(Operators.EQUALS, epochTime);
+    }
+
     public FlightsFilterBuilder greater_or_equals(long epochTime) {
-        stateCheck();
-        targetStatementsMap.put(Operators.GREATER_OR_EQUALS, epochTime);
-        return this;
+        return put(Operators.GREATER_OR_EQUALS, epochTime);
     }
 
     public FlightsFilterBuilder greater(long epochTime) {
-        stateCheck();
-        targetStatementsMap.put(Operators.GREATER, epochTime);
-        return this;
+        return put(Operators.GREATER, epochTime);
     }
 
     public FlightsFilterBuilder less(long epochTime) {
-        stateCheck();
-        targetStatementsMap.put(Operators.LESS, epochTime);
-        return this;
+        return put(Operators.LESS, epochTime);
     }
 
     public FlightsFilterBuilder less_or_equals(long epochTime) {
-        stateCheck();
-        targetStatementsMap.put(Operators.LESS_OR_EQUALS, epochTime);
-        return this;
+        return put(Operators.LESS_OR_EQUALS, epochTime);
     }
 
     public FlightsFilterBuilder idleOnTheGround() {
@@ -51,8 +70,32 @@ public class FlightsFilterBuilder {
         return this;
     }
 
+    /**
+     * Conditions on the sum of all ground times of the flight, 0 for flights with less than two segments.
+     */
+    public FlightsFilterBuilder totalIdleOnTheGround() {
+        targetStatementsMap = totalIdleStatementsMap;
+        return this;
+    }
+
+    /**
+     * Conditions on the longest ground time of the flight, never satisfied by flights with less than two segments.
+     */
+    public FlightsFilterBuilder maxIdleOnTheGround() {
+        targetStatementsMap = maxIdleStatementsMap;
+        return this;
+    }
+
+    /**
+     * After not() keeps only the invalid flights instead.
+     */
     public FlightsFilterBuilder removeInvalidFlights() {
-        allowInvalidFlights = false;
+        if (negateNext) {
+            termQueries.add(FlightsQuery.not(FlightsQuery.of(new FlightsFilter(Map.of(), Map.of(), Map.of(), false))));
+            negateNext = false;
+        } else {
+            allowInvalidFlights = false;
+        }
         return this;
     }
 
@@ -68,10 +111,83 @@ public class FlightsFilterBuilder {
         return this;
     }
 
+    /**
+     * Negates the next condition, removeInvalidFlights() or group(); the target set by arrival(),
+     * departure() or idleOnTheGround() is kept.
+     */
+    public FlightsFilterBuilder not() {
+        if (negateNext)
+            throw new IllegalStateException("FlightsFilterBuilder: not() is already pending");
+        negateNext = true;
+        composite = true;
+        return this;
+    }
+
+    /**
+     * Finishes the current AND-ed term, the following conditions form the next term.
+     */
+    public FlightsFilterBuilder or() {
+        terms.add(currentTerm());
+        arrivalStatementsMap.clear();
+        departureStatementsMap.clear();
+        idleStatementsMap.clear();
+        totalIdleStatementsMap.clear();
+        maxIdleStatementsMap.clear();
+        targetStatementsMap = null;
+        allowInvalidFlights = true;
+        termQueries.clear();
+        composite = true;
+        return this;
+    }
+
+    /**
+     * AND-s the query of the other builder, i.e. its conditions in parentheses, to the current term.
+     */
+    public FlightsFilterBuilder group(FlightsFilterBuilder flightsFilterBuilder) {
+        FlightsQuery query = flightsFilterBuilder.buildQuery();
+        termQueries.add(negateNext ? FlightsQuery.not(query) : query);
+        negateNext = false;
+        composite = true;
+        return this;
+    }
+
+    private FlightsQuery currentTerm() {
+        if (negateNext)
+            throw new IllegalStateException("FlightsFilterBuilder: not() is not followed by a condition");
+        List<FlightsQuery> queries = new ArrayList<>();
+        if (!allowInvalidFlights || !allStatementMapsEmpty())
+            queries.add(FlightsQuery.of(newFlightsFilter()));
+        queries.addAll(termQueries);
+        if (queries.isEmpty())
+            throw new IllegalStateException(ERROR_MESSAGE, new NullPointerException("All statement maps is null"));
+        return FlightsQuery.and(queries.toArray(new FlightsQuery[0]));
+    }
+
     public FlightsFilter build() {
-        if (allowInvalidFlights && arrivalStatementsMap.isEmpty() && departureStatementsMap.isEmpty() && idleStatementsMap.isEmpty())
+        if (composite)
+            throw new IllegalStateException(COMPOSITION_ERROR_MESSAGE);
+        if (allowInvalidFlights && allStatementMapsEmpty())
             throw new IllegalStateException(ERROR_MESSAGE, new NullPointerException("All statement maps is null"));
-        return new FlightsFilter(arrivalStatementsMap, departureStatementsMap, idleStatementsMap, allowInvalidFlights);
+        return newFlightsFilter();
+    }
+
+    private boolean allStatementMapsEmpty() {
+        return arrivalStatementsMap.isEmpty() && departureStatementsMap.isEmpty() && idleStatementsMap.isEmpty()
+                && totalIdleStatementsMap.isEmpty() && maxIdleStatementsMap.isEmpty();
+    }
+
+    private FlightsFilter newFlightsFilter() {
+        return new FlightsFilter(new FilterSpec(arrivalStatementsMap, departureStatementsMap, idleStatementsMap,
+                totalIdleStatementsMap, maxIdleStatementsMap, allowInvalidFlights));
+    }
+
+    /**
+     * @return query of the OR-ed terms, each term is the AND of its conditions, negations and groups
+     */
+    public FlightsQuery buildQuery() {
+        List<FlightsQuery> queries = new ArrayList<>(terms);
+        queries.add(currentTerm());
+        return FlightsQuery.or(queries.toArray(new FlightsQuery[0]));
     }
 
 }
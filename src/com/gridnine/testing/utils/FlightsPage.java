@@ -0,0 +1,36 @@
+package com.gridnine.testing.utils;
+
+import com.gridnine.testing.domain.Flight;
+
+import java.util.List;
+
+/**
+ * Страница отсортированного результата фильтра и курсор следующей страницы.
+ */
+public final class FlightsPage {
+    private final List<Flight> flights;
+    private final PageCursor nextCursor;
+
+    FlightsPage(List<Flight> flights, PageCursor nextCursor) {
+        this.flights = flights;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return immutable list of the flights of the page in sort order
+     */
+    public List<Flight> getFlights() {
+        return flights;
+    }
+
+    /**
+     * @return cursor to pass for the next page, null if this page is the last one
+     */
+    public PageCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,228 @@
+package com.gridnine.testing.utils;
+
+import com.gridnine.testing.domain.Flight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Логическое выражение над фильтрами: листья - FlightsFilter, узлы - AND, OR и NOT.
+ * Выражение вычисляется над битовыми картами номеров рейсов: каждый лист даёт {@link RoaringBitmap}
+ * рейсов, прошедших фильтр, а узлы только комбинируют карты, не проверяя рейсы заново.
+ * Карты листьев можно брать из кэша, см. FlightsDB.filter(FlightsQuery).
+ */
+public abstract class FlightsQuery {
+    private FlightsQuery() {
+    }
+
+    public static FlightsQuery of(FlightsFilter flightsFilter) {
+        return new Leaf(Objects.requireNonNull(flightsFilter));
+    }
+
+    public static FlightsQuery and(FlightsQuery... queries) {
+        return queries.length == 1 ? queries[0] : new And(children(queries));
+    }
+
+    public static FlightsQuery or(FlightsQuery... queries) {
+        return queries.length == 1 ? queries[0] : new Or(children(queries));
+    }
+
+    public static FlightsQuery not(FlightsQuery query) {
+        return query instanceof Not ? ((Not) query).child : new Not(Objects.requireNonNull(query));
+    }
+
+    private static List<FlightsQuery> children(FlightsQuery[] queries) {
+        if (queries.length == 0)
+            throw new IllegalArgumentException("FlightsQuery: at least one query is required");
+        for (FlightsQuery query : queries) {
+            Objects.requireNonNull(query);
+        }
+        return List.copyOf(Arrays.asList(queries));
+    }
+
+    /**
+     * @param flightCount number of flights, NOT selects the flights of [0, flightCount) missing in its operand
+     * @param leaves      bitmap of the flights matching a leaf filter; the bitmap is not modified and may be
+     *                    returned as is when the whole query is one leaf
+     * @return numbers of the matching flights
+     */
+    public abstract RoaringBitmap evaluate(int flightCount, Function<FlightsFilter, RoaringBitmap> leaves);
+
+    /**
+     * @return filters of the leaves in the order of appearance
+     */
+    public List<FlightsFilter> getFilters() {
+        List<FlightsFilter> filters = new ArrayList<>();
+        collectFilters(filters);
+        return filters;
+    }
+
+    abstract void collectFilters(List<FlightsFilter> filters);
+
+    /**
+     * @return numbers (indexes in the list) of the flights matching the filter
+     */
+    public static RoaringBitmap matches(FlightsFilter flightsFilter, List<Flight> flightList) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int flightId = 0; flightId < flightList.size(); flightId++) {
+            if (flightsFilter.test(flightList.get(flightId)))
+                bitmap.add(flightId);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Evaluates the query scanning the flights once per distinct leaf filter.
+     */
+    public RoaringBitmap evaluate(final List<Flight> flightList) {
+        Map<FilterSpec, RoaringBitmap> leafBitmaps = new HashMap<>();
+        return evaluate(flightList.size(),
+                flightsFilter -> leafBitmaps.computeIfAbsent(flightsFilter.getSpec(), spec -> matches(flightsFilter, flightList)));
+    }
+
+    /**
+     * @return matching flights in the order of the list
+     */
+    public List<Flight> filter(final List<Flight> flightList) {
+        return select(evaluate(flightList), flightList);
+    }
+
+    /**
+     * @return flights of the list at the numbers of the bitmap
+     */
+    public static List<Flight> select(RoaringBitmap flightIds, List<Flight> flightList) {
+        List<Flight> flights = new ArrayList<>(flightIds.cardinality());
+        flightIds.forEach(flightId -> flights.add(flightList.get(flightId)));
+        return flights;
+    }
+
+    private static final class Leaf extends FlightsQuery {
+        private final FlightsFilter flightsFilter;
+
+        private Leaf(FlightsFilter flightsFilter) {
+            this.flightsFilter = flightsFilter;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(int flightCount, Function<FlightsFilter, RoaringBitmap> leaves) {
+            return leaves.apply(flightsFilter);
+        }
+
+        @Override
+        void collectFilters(List<FlightsFilter> filters) {
+            filters.add(flightsFilter);
+        }
+
+        @Override
+        public String toString() {
+            return flightsFilter.getSpec().toString();
+        }
+    }
+
+    private static final class And extends FlightsQuery {
+        private final List<FlightsQuery> children;
+
+        private And(List<FlightsQuery> children) {
+            this.children = children;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(int flightCount, Function<FlightsFilter, RoaringBitmap> leaves) {
+            RoaringBitmap result = null;
+            List<FlightsQuery> negated = new ArrayList<>();
+            for (FlightsQuery child : children) {
+                if (child instanceof Not) {
+                    negated.add(((Not) child).child);
+                } else {
+                    RoaringBitmap bitmap = child.evaluate(flightCount, leaves);
+                    result = result == null ? bitmap : result.and(bitmap);
+                }
+            }
+            // "a AND NOT b" is a AND-NOT of b, the complement of b is never built
+            if (result == null)
+                result = RoaringBitmap.range(0, flightCount);
+            for (FlightsQuery child : negated) {
+                if (result.isEmpty())
+                    break;
+                result = result.andNot(child.evaluate(flightCount, leaves));
+            }
+            return result;
+        }
+
+        @Override
+        void collectFilters(List<FlightsFilter> filters) {
+            children.forEach(child -> child.collectFilters(filters));
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " AND ");
+        }
+    }
+
+    private static final class Or extends FlightsQuery {
+        private final List<FlightsQuery> children;
+
+        private Or(List<FlightsQuery> children) {
+            this.children = children;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(int flightCount, Function<FlightsFilter, RoaringBitmap> leaves) {
+            RoaringBitmap result = null;
+            for (FlightsQuery child : children) {
+                RoaringBitmap bitmap = child.evaluate(flightCount, leaves);
+                result = result == null ? bitmap : result.or(bitmap);
+            }
+            return result;
+        }
+
+        @Override
+        void collectFilters(List<FlightsFilter> filters) {
+            children.forEach(child -> child.collectFilters(filters));
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " OR ");
+        }
+    }
+
+    private static final class Not extends FlightsQuery {
+        private final FlightsQuery child;
+
+        private Not(FlightsQuery child) {
+            this.child = child;
+        }
+
+        @Override
+        public RoaringBitmap evaluate(int flightCount, Function<FlightsFilter, RoaringBitmap> leaves) {
+            return child.evaluate(flightCount, leaves).not(flightCount);
+        }
+
+        @Override
+        void collectFilters(List<FlightsFilter> filters) {
+            child.collectFilters(filters);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT (" + child + ')';
+        }
+    }
+
+    private static String join(List<FlightsQuery> children, String operator) {
+        StringBuilder result = new StringBuilder();
+        for (FlightsQuery child : children) {
+            if (result.length() > 0)
+                result.append(operator);
+            result.append('(').append(child).append(')');
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package com.gridnine.testing.utils;
+
+/**
+ * Гистограмма неотрицательных значений с логарифмическими корзинами: значения меньше 16 хранятся точно,
+ * остальные - с 16 корзинами на каждую степень двойки, то есть с относительной ошибкой не больше 1/16.
+ * Корзины создаются при первом значении, гистограммы одного размера складываются через merge().
+ */
+public class LogHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private long[] counts;
+    private long totalCount;
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return largest value that falls into the bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (1L << exponent) | subBucket << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * @param value recorded as 0 when negative
+     */
+    public void record(long value) {
+        if (counts == null)
+            counts = new long[BUCKET_COUNT];
+        counts[bucketOf(Math.max(0, value))]++;
+        totalCount++;
+    }
+
+    /**
+     * Removes a value recorded before, e.g. when the measured element is deleted.
+     */
+    public void remove(long value) {
+        int bucket = bucketOf(Math.max(0, value));
+        if (counts == null || counts[bucket] == 0)
+            throw new IllegalStateException("LogHistogram: value " + value + " was not recorded");
+        counts[bucket]--;
+        totalCount--;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void merge(LogHistogram other) {
+        if (other.counts == null)
+            return;
+        if (counts == null)
+            counts = new long[BUCKET_COUNT];
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] += other.counts[bucket];
+        }
+        totalCount += other.totalCount;
+    }
+
+    /**
+     * @param percentile value in [0, 100]
+     * @return upper bound of the bucket holding the percentile, 0 for an empty histogram
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("LogHistogram: percentile must be in [0, 100]");
+        if (totalCount == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank)
+                return upperBoundOf(bucket);
+        }
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * @return number of recorded values not greater than the value, exact for values below 16
+     * and counted by whole buckets otherwise
+     */
+    public long countAtMost(long value) {
+        if (counts == null || value < 0)
+            return 0;
+        int lastBucket = bucketOf(value);
+        long count = 0;
+        for (int bucket = 0; bucket <= lastBucket; bucket++) {
+            count += counts[bucket];
+        }
+        return count;
+    }
+}
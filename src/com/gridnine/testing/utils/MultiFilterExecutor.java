@@ -0,0 +1,153 @@
+package com.gridnine.testing.utils;
+
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Выполнение набора фильтров за один проход по рейсам. Эпохи сегментов рейса декодируются один раз
+ * во временные массивы вместе с временем на земле между ними, затем каждый фильтр проверяет их своим ядром
+ * test(long[], long[], long[], int, int) без повторного вычисления промежутков.
+ * Фильтры с одинаковым FilterSpec проверяются один раз, а фильтры, чьи условия прибытия и отправления
+ * не пересекаются с диапазоном времени рейса, отсекаются без проверки сегментов.
+ * Режим выполнения самих фильтров (doParallel, withMetrics и т.п.) не учитывается.
+ */
+public class MultiFilterExecutor {
+    private static final int PARALLEL_CHUNK_SIZE = 4096;
+
+    private final List<FlightsFilter> flightsFilters;
+    // distinct filters and, for every filter of the batch, the index of its distinct filter
+    private final FlightsFilter[] distinctFilters;
+    private final int[] distinctIndexes;
+    private final boolean useParallelStream;
+
+    public MultiFilterExecutor(List<FlightsFilter> flightsFilters) {
+        this(List.copyOf(flightsFilters), false);
+    }
+
+    private MultiFilterExecutor(List<FlightsFilter> flightsFilters, boolean useParallelStream) {
+        this.flightsFilters = flightsFilters;
+        this.useParallelStream = useParallelStream;
+        Map<FilterSpec, Integer> distinct = new HashMap<>();
+        List<FlightsFilter> distinctList = new ArrayList<>();
+        distinctIndexes = new int[flightsFilters.size()];
+        for (int i = 0; i < flightsFilters.size(); i++) {
+            FlightsFilter flightsFilter = flightsFilters.get(i);
+            Integer index = distinct.get(flightsFilter.getSpec());
+            if (index == null) {
+                index = distinctList.size();
+                distinct.put(flightsFilter.getSpec(), index);
+                distinctList.add(flightsFilter);
+            }
+            distinctIndexes[i] = index;
+        }
+        distinctFilters = distinctList.toArray(new FlightsFilter[0]);
+    }
+
+    public List<FlightsFilter> getFlightsFilters() {
+        return flightsFilters;
+    }
+
+    /**
+     * @return copy of the executor that splits the scan into chunks processed in parallel
+     */
+    public MultiFilterExecutor doParallel() {
+        return useParallelStream ? this : new MultiFilterExecutor(flightsFilters, true);
+    }
+
+    public MultiFilterExecutor doSequential() {
+        return useParallelStream ? new MultiFilterExecutor(flightsFilters, false) : this;
+    }
+
+    /**
+     * Decoded segments of the current flight and the ground times between them, reused for every flight of a scan.
+     */
+    private static final class Scratch {
+        private long[] departureEpochs = new long[8];
+        private long[] arrivalEpochs = new long[8];
+        // gaps[i] is the ground time before segment i, gaps[0] is 0
+        private long[] gaps = new long[8];
+
+        private int decode(List<Segment> segments) {
+            if (segments.size() > departureEpochs.length) {
+                departureEpochs = new long[Math.max(segments.size(), departureEpochs.length * 2)];
+                arrivalEpochs = new long[departureEpochs.length];
+                gaps = new long[departureEpochs.length];
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                departureEpochs[i] = segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+                arrivalEpochs[i] = segments.get(i).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+                gaps[i] = i == 0 ? 0 : departureEpochs[i] - arrivalEpochs[i - 1];
+            }
+            return segments.size();
+        }
+    }
+
+    /**
+     * Scans the flights from..to and returns the matches of every distinct filter.
+     */
+    private List<List<Flight>> scan(List<Flight> flightList, int from, int to) {
+        List<List<Flight>> matches = new ArrayList<>(distinctFilters.length);
+        for (int i = 0; i < distinctFilters.length; i++) {
+            matches.add(new ArrayList<>());
+        }
+        Scratch scratch = new Scratch();
+        for (Flight flight : flightList.subList(from, to)) {
+            int segmentCount = scratch.decode(flight.getSegments());
+            long minDeparture = Long.MAX_VALUE;
+            long maxDeparture = Long.MIN_VALUE;
+            long minArrival = Long.MAX_VALUE;
+            long maxArrival = Long.MIN_VALUE;
+            for (int i = 0; i < segmentCount; i++) {
+                minDeparture = Math.min(minDeparture, scratch.departureEpochs[i]);
+                maxDeparture = Math.max(maxDeparture, scratch.departureEpochs[i]);
+                minArrival = Math.min(minArrival, scratch.arrivalEpochs[i]);
+                maxArrival = Math.max(maxArrival, scratch.arrivalEpochs[i]);
+            }
+            for (int i = 0; i < distinctFilters.length; i++) {
+                FlightsFilter flightsFilter = distinctFilters[i];
+                if (flightsFilter.canMatchTimeRange(minDeparture, maxDeparture, minArrival, maxArrival)
+                        && flightsFilter.test(scratch.departureEpochs, scratch.arrivalEpochs, scratch.gaps, 0, segmentCount))
+                    matches.get(i).add(flight);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return matching flights of every filter in the order of the filters, each in the order of the list
+     */
+    public List<List<Flight>> filter(final List<Flight> flightList) {
+        List<List<Flight>> distinctMatches;
+        if (useParallelStream && flightList.size() > PARALLEL_CHUNK_SIZE) {
+            int chunkCount = (flightList.size() + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE;
+            List<List<List<Flight>>> chunkMatches = IntStream.range(0, chunkCount).parallel()
+                    .mapToObj(chunk -> scan(flightList, chunk * PARALLEL_CHUNK_SIZE, Math.min(flightList.size(), (chunk + 1) * PARALLEL_CHUNK_SIZE)))
+                    .collect(Collectors.toList());
+            distinctMatches = new ArrayList<>(distinctFilters.length);
+            for (int i = 0; i < distinctFilters.length; i++) {
+                int filterIndex = i;
+                distinctMatches.add(chunkMatches.stream()
+                        .flatMap(matches -> matches.get(filterIndex).stream())
+                        .collect(Collectors.toList()));
+            }
+        } else {
+            distinctMatches = scan(flightList, 0, flightList.size());
+        }
+        List<List<Flight>> results = new ArrayList<>(flightsFilters.size());
+        boolean[] used = new boolean[distinctFilters.length];
+        for (int distinctIndex : distinctIndexes) {
+            // filters with the same spec get their own copy of the shared result
+            results.add(used[distinctIndex] ? new ArrayList<>(distinctMatches.get(distinctIndex)) : distinctMatches.get(distinctIndex));
+            used[distinctIndex] = true;
+        }
+        return results;
+    }
+}
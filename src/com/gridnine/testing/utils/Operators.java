@@ -1,5 +1,26 @@
 package com.gridnine.testing.utils;
 
 public enum Operators {
-    EQUALS, GREATER_OR_EQUALS, GREATER, LESS, LESS_OR_EQUALS
+    EQUALS, GREATER_OR_EQUALS, GREATER, LESS, LESS_OR_EQUALS;
+
+    /**
+     * @param value   left operand, e.g. segment epoch or ground time
+     * @param operand right operand taken from the filter condition
+     */
+    public boolean test(long value, long operand) {
+        switch (this) {
+            case EQUALS:
+                return value == operand;
+            case GREATER_OR_EQUALS:
+                return value >= operand;
+            case GREATER:
+                return value > operand;
+            case LESS:
+                return value < operand;
+            case LESS_OR_EQUALS:
+                return value <= operand;
+            default:
+                return false;
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package com.gridnine.testing.utils;
+
+import java.util.Objects;
+
+/**
+ * Позиция последнего рейса страницы: следующая страница начинается сразу после него,
+ * поэтому предыдущие страницы не пересчитываются и не хранятся.
+ * Курсор можно передать клиенту строкой (toToken) и восстановить через fromToken.
+ */
+public final class PageCursor {
+    private final FlightOrder order;
+    private final long key;
+    private final int ordinal;
+
+    public PageCursor(FlightOrder order, long key, int ordinal) {
+        this.order = Objects.requireNonNull(order);
+        this.key = key;
+        this.ordinal = ordinal;
+    }
+
+    public FlightOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * @return sort key of the last flight of the page, see {@link FlightOrder#key}
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * @return position of the last flight of the page in the list passed to the filter
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * @return true if a flight with the given key and position comes after the cursor
+     */
+    boolean isBefore(long otherKey, int otherOrdinal) {
+        return key < otherKey || key == otherKey && ordinal < otherOrdinal;
+    }
+
+    public String toToken() {
+        return order.name() + ':' + key + ':' + ordinal;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not created by toToken()
+     */
+    public static PageCursor fromToken(String token) {
+        String[] parts = token.split(":");
+        if (parts.length != 3)
+            throw new IllegalArgumentException("PageCursor: malformed token '" + token + "'");
+        try {
+            return new PageCursor(FlightOrder.valueOf(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("PageCursor: malformed token '" + token + "'", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof PageCursor))
+            return false;
+        PageCursor that = (PageCursor) o;
+        return order == that.order && key == that.key && ordinal == that.ordinal;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(order, key, ordinal);
+    }
+
+    @Override
+    public String toString() {
+        return "PageCursor{" + toToken() + '}';
+    }
+}
@@ -0,0 +1,124 @@
+package com.gridnine.testing.utils;
+
+import com.gridnine.testing.domain.Flight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ограниченная куча первых capacity рейсов по (ключ, позиция). В корне лежит худший из сохранённых,
+ * поэтому новый рейс сравнивается только с ним: O(log k) на рейс и O(k) памяти.
+ */
+final class TopKHeap {
+    private final int capacity;
+    private final long[] keys;
+    private final int[] ordinals;
+    private final Flight[] flights;
+    private int size;
+
+    TopKHeap(int capacity) {
+        this.capacity = capacity;
+        keys = new long[capacity];
+        ordinals = new int[capacity];
+        flights = new Flight[capacity];
+    }
+
+    private boolean greater(int left, int right) {
+        return keys[left] > keys[right] || keys[left] == keys[right] && ordinals[left] > ordinals[right];
+    }
+
+    /**
+     * @return true if a flight with this key and position would be kept, lets the caller skip the filter otherwise
+     */
+    boolean accepts(long key, int ordinal) {
+        return size < capacity || key < keys[0] || key == keys[0] && ordinal < ordinals[0];
+    }
+
+    void offer(long key, int ordinal, Flight flight) {
+        if (!accepts(key, ordinal))
+            return;
+        int index;
+        if (size < capacity) {
+            index = size++;
+            set(index, key, ordinal, flight);
+            siftUp(index);
+        } else {
+            set(0, key, ordinal, flight);
+            siftDown(0, size);
+        }
+    }
+
+    private void set(int index, long key, int ordinal, Flight flight) {
+        keys[index] = key;
+        ordinals[index] = ordinal;
+        flights[index] = flight;
+    }
+
+    private void swap(int left, int right) {
+        long key = keys[left];
+        int ordinal = ordinals[left];
+        Flight flight = flights[left];
+        set(left, keys[right], ordinals[right], flights[right]);
+        set(right, key, ordinal, flight);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!greater(index, parent))
+                return;
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int end) {
+        while (true) {
+            int largest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < end && greater(left, largest))
+                largest = left;
+            if (right < end && greater(right, largest))
+                largest = right;
+            if (largest == index)
+                return;
+            swap(index, largest);
+            index = largest;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the kept flights in place, the heap must not be used afterwards.
+     */
+    void sort() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    long keyAt(int index) {
+        return keys[index];
+    }
+
+    int ordinalAt(int index) {
+        return ordinals[index];
+    }
+
+    /**
+     * @return immutable list of the sorted flights from..to, call after sort()
+     */
+    List<Flight> flights(int from, int to) {
+        List<Flight> result = new ArrayList<>(Math.max(0, to - from));
+        for (int index = from; index < to; index++) {
+            result.add(flights[index]);
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
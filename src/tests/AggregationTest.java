@@ -0,0 +1,99 @@
+package tests;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FlightAggregate;
+import com.gridnine.testing.utils.FlightAggregator;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.LogHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregationTest {
+    private static final long START = 1_700_000_000L;
+
+    private final List<Flight> flightList = new FlightGenerator(9)
+            .departures(START, Duration.ofDays(4).toSeconds())
+            .segments(1, 4)
+            .invalidSegmentRatio(0.1)
+            .groundTime(FlightGenerator.GroundTime.UNIFORM, Duration.ofHours(3).toSeconds())
+            .createFlights(20_000);
+    private final FlightsFilter flightsFilter = new FlightsFilterBuilder()
+            .departure().greater_or_equals(START + Duration.ofDays(1).toSeconds())
+            .build();
+
+    @Test
+    public void groupByDayTest() {
+        FlightAggregator aggregator = new FlightAggregator(flightsFilter, FlightAggregator.GroupBy.DEPARTURE_DAY,
+                FlightAggregator.Measure.INVALID_SHARE, FlightAggregator.Measure.GROUND_TIME);
+        SortedMap<Long, FlightAggregate> byDay = aggregator.aggregate(flightList);
+        List<Flight> matches = flightsFilter.filter(flightList);
+        assertEquals(matches.size(), byDay.values().stream().mapToLong(FlightAggregate::getFlightCount).sum());
+        for (long day : byDay.keySet()) {
+            assertEquals(0, day % 86_400);
+            List<Flight> dayFlights = matches.stream()
+                    .filter(flight -> Math.floorDiv(flight.getSegments().get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC), 86_400L) * 86_400 == day)
+                    .collect(Collectors.toList());
+            FlightAggregate aggregate = byDay.get(day);
+            assertEquals(dayFlights.size(), aggregate.getFlightCount());
+            long invalid = dayFlights.stream().filter(flight -> flight.getSegments().stream().anyMatch(segment -> segment.getArrivalDate().isBefore(segment.getDepartureDate()))).count();
+            assertEquals(invalid, aggregate.getInvalidFlightCount());
+            long[] gaps = dayFlights.stream().flatMapToLong(flight -> IntStream.range(1, flight.getSegments().size())
+                    .mapToLong(i -> flight.getSegments().get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC)
+                            - flight.getSegments().get(i - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC))).toArray();
+            assertEquals(gaps.length, aggregate.getGroundCount());
+            assertEquals(Arrays.stream(gaps).average().orElse(0), aggregate.getAverageGroundSeconds(), 1e-6);
+            assertEquals(Arrays.stream(gaps).max().orElse(Long.MIN_VALUE), aggregate.getMaxGroundSeconds());
+        }
+        assertThrows(IllegalStateException.class, () -> byDay.get(byDay.firstKey()).getGroundSecondsPercentile(50));
+    }
+
+    @Test
+    public void sameResultForEverySourceTest() {
+        FlightAggregator aggregator = new FlightAggregator(flightsFilter, FlightAggregator.GroupBy.SEGMENT_COUNT,
+                FlightAggregator.Measure.GROUND_TIME_PERCENTILES);
+        String expected = aggregator.aggregate(flightList).toString();
+        assertEquals(expected, aggregator.aggregate(new DataBaseImpl(flightList).getAll().stream()).toString());
+        assertEquals(expected, aggregator.aggregate(new ColumnarDataBase(flightList)).toString());
+        SortedMap<Long, FlightAggregate> bySegments = aggregator.aggregate(flightList);
+        assertEquals(List.of(1L, 2L, 3L, 4L), List.copyOf(bySegments.keySet()));
+        long[] gaps = flightsFilter.filter(flightList).stream()
+                .filter(flight -> flight.getSegments().size() == 4)
+                .flatMapToLong(flight -> IntStream.range(1, 4).mapToLong(i -> Math.max(0, flight.getSegments().get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC)
+                        - flight.getSegments().get(i - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC))))
+                .sorted().toArray();
+        long exactMedian = gaps[(gaps.length + 1) / 2 - 1];
+        long median = bySegments.get(4L).getGroundSecondsPercentile(50);
+        assertTrue(median >= exactMedian && median <= exactMedian + exactMedian / 16 + 1, "median " + median + ", exact " + exactMedian);
+        assertThrows(IllegalStateException.class, () -> bySegments.get(2L).getAverageGroundSeconds());
+    }
+
+    @Test
+    public void logHistogramTest() {
+        LogHistogram histogram = new LogHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(10_000, histogram.getTotalCount());
+        assertEquals(1, histogram.getPercentile(0));
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 5000 && median <= 5000 * 17 / 16, "median " + median);
+        assertEquals(10, histogram.countAtMost(10));
+        LogHistogram other = new LogHistogram();
+        other.record(-5);
+        histogram.merge(other);
+        assertEquals(0, histogram.getPercentile(0));
+    }
+}
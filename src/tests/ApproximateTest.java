@@ -0,0 +1,104 @@
+package tests;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.Estimate;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ApproximateTest {
+    private static final long START = 1_700_000_000L;
+
+    private final List<Flight> flightList = new FlightGenerator(24)
+            .departures(START, Duration.ofDays(10).toSeconds())
+            .segments(1, 4)
+            .invalidSegmentRatio(0.05)
+            .createFlights(50_000);
+
+    private final FlightsFilter nextSixHours = new FlightsFilterBuilder()
+            .departure().greater_or_equals(START + Duration.ofDays(3).toSeconds())
+            .less(START + Duration.ofDays(3).plusHours(6).toSeconds())
+            .build();
+    private final FlightsFilter longIdle = new FlightsFilterBuilder()
+            .idleOnTheGround().greater(Duration.ofHours(2).toSeconds())
+            .build();
+
+    private static void assertCovers(Estimate estimate, double exact) {
+        assertTrue(estimate.getLower() <= exact && exact <= estimate.getUpper(), estimate + " does not cover " + exact);
+    }
+
+    @Test
+    public void estimatesCoverExactValuesTest() {
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+        assertThrows(IllegalStateException.class, () -> flightsDB.estimateCount(longIdle, 0.95));
+        flightsDB.enableSampling(4096, 1);
+        for (FlightsFilter flightsFilter : new FlightsFilter[]{nextSixHours, longIdle}) {
+            int exact = flightsDB.filter(flightsFilter).size();
+            Estimate count = flightsDB.estimateCount(flightsFilter, 0.99);
+            assertCovers(count, exact);
+            assertCovers(flightsDB.estimateShare(flightsFilter, 0.99), (double) exact / flightList.size());
+            assertEquals(4096, count.getSampleSize());
+            assertEquals(flightList.size(), count.getPopulation());
+            assertFalse(count.isExact());
+        }
+        Estimate narrow = flightsDB.estimateShare(longIdle, 0.9);
+        Estimate wide = flightsDB.estimateShare(longIdle, 0.999);
+        assertTrue(wide.getUpper() - wide.getLower() > narrow.getUpper() - narrow.getLower());
+
+        // a larger sample gives a narrower interval, a sample of everything the exact value
+        flightsDB.enableSampling(20_000, 1);
+        Estimate larger = flightsDB.estimateShare(longIdle, 0.9);
+        assertTrue(larger.getUpper() - larger.getLower() < narrow.getUpper() - narrow.getLower());
+        flightsDB.enableSampling(100_000, 1);
+        Estimate exact = flightsDB.estimateCount(longIdle, 0.95);
+        assertTrue(exact.isExact());
+        assertEquals(flightsDB.filter(longIdle).size(), exact.getValue(), 1e-6);
+        assertEquals(exact.getLower(), exact.getUpper(), 1e-6);
+        assertThrows(IllegalArgumentException.class, () -> flightsDB.estimateShare(longIdle, 1));
+    }
+
+    @Test
+    public void groundTimeSketchTest() {
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+        flightsDB.enableSampling(1000, 2);
+        long[] gaps = flightList.stream()
+                .map(Flight::getSegments)
+                .flatMapToLong(segments -> IntStream.range(1, segments.size())
+                        .mapToLong(i -> segmentGap(segments, i)))
+                .sorted()
+                .toArray();
+        long exactMedian = gaps[(gaps.length - 1) / 2];
+        long median = flightsDB.estimateGroundTimePercentile(50);
+        assertTrue(Math.abs(median - Math.max(0, exactMedian)) <= Math.max(1, Math.abs(exactMedian) / 16), median + " vs " + exactMedian);
+
+        long twoHours = Duration.ofHours(2).toSeconds();
+        double exactShare = (double) Arrays.stream(gaps).filter(gap -> gap > twoHours).count() / gaps.length;
+        assertEquals(exactShare, flightsDB.estimateGroundTimeShareGreater(twoHours), 0.05);
+
+        // the sketch follows removals
+        for (Flight flight : flightList.subList(0, 25_000)) {
+            flightsDB.remove(flight);
+        }
+        Estimate afterRemoval = flightsDB.estimateCount(nextSixHours, 0.99);
+        assertEquals(25_000, afterRemoval.getPopulation());
+        assertCovers(afterRemoval, flightsDB.filter(nextSixHours).size());
+        assertTrue(afterRemoval.getSampleSize() >= 900);
+    }
+
+    private static long segmentGap(List<Segment> segments, int i) {
+        return segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC)
+                - segments.get(i - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+    }
+}
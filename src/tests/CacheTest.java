@@ -0,0 +1,81 @@
+package tests;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FilterResultCache;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightBuilder;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheTest {
+    private final List<Flight> flightList = FlightBuilder.createFlights();
+    private final FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+    private final long threeDaysFromNowTime = flightList.get(0).getSegments().get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+
+    @Test
+    public void canonicalSpecTest() {
+        FlightsFilter first = new FlightsFilterBuilder().arrival().greater(threeDaysFromNowTime).departure().less(threeDaysFromNowTime).build();
+        FlightsFilter second = new FlightsFilterBuilder().departure().less(threeDaysFromNowTime).arrival().greater(threeDaysFromNowTime).build();
+        assertEquals(first.getSpec(), second.getSpec());
+        assertEquals(first.getSpec(), second.doParallel().getSpec());
+        assertEquals(first.getSpec().hashCode(), second.getSpec().hashCode());
+        assertNotEquals(first.getSpec(), new FlightsFilterBuilder().arrival().greater(threeDaysFromNowTime).build().getSpec());
+    }
+
+    @Test
+    public void hitMissAndInvalidationTest() {
+        FilterResultCache cache = new FilterResultCache(flightsDB, 10, 100);
+        FlightsFilter idleFilter = new FlightsFilterBuilder().idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds()).build();
+        List<Flight> result = cache.filter(idleFilter);
+        assertSame(result, cache.filter(new FlightsFilterBuilder().idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds()).build()));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getWeight());
+
+        flightsDB.remove(flightList.get(4));
+        assertEquals(List.of(flightList.get(5)), cache.filter(idleFilter));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void boundedEvictionAndTtlTest() throws InterruptedException {
+        FilterResultCache cache = new FilterResultCache(flightsDB, 2, 5);
+        FlightsFilter wideFilter = new FlightsFilterBuilder().arrival().greater_or_equals(threeDaysFromNowTime).build();
+        FlightsFilter invalidFilter = new FlightsFilterBuilder().removeInvalidFlights().build();
+        FlightsFilter departedFilter = new FlightsFilterBuilder().departure().less(threeDaysFromNowTime).build();
+        cache.filter(wideFilter);
+        cache.filter(departedFilter);
+        cache.filter(invalidFilter);
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.getWeight());
+        assertEquals(2, cache.getEvictionCount());
+
+        cache.filter(departedFilter, Duration.ofNanos(1));
+        Thread.sleep(1);
+        cache.filter(departedFilter, Duration.ofNanos(1));
+        assertEquals(5, cache.getMissCount());
+    }
+
+    @Test
+    public void largeTtlNeverExpiresTest() {
+        FilterResultCache cache = new FilterResultCache(flightsDB, 10, 100);
+        FlightsFilter invalidFilter = new FlightsFilterBuilder().removeInvalidFlights().build();
+        FlightsFilter departedFilter = new FlightsFilterBuilder().departure().less(threeDaysFromNowTime).build();
+        // Duration.toNanos() overflows for these, and now + ttl would wrap around
+        List<Flight> result = cache.filter(invalidFilter, Duration.ofSeconds(Long.MAX_VALUE));
+        assertSame(result, cache.filter(invalidFilter, Duration.ofSeconds(Long.MAX_VALUE)));
+        cache.filter(departedFilter, Duration.ofNanos(Long.MAX_VALUE - 1));
+        cache.filter(departedFilter);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+}
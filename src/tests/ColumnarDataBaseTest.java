@@ -0,0 +1,139 @@
+package tests;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.ZoneMap;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightBuilder;
+import com.gridnine.testing.utils.EpochKernels;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.Operators;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarDataBaseTest {
+    private final List<Flight> flightList = FlightBuilder.createFlights();
+    private final ColumnarDataBase columnarDataBase = new ColumnarDataBase(flightList);
+    private final long threeDaysFromNowTime = flightList.get(0).getSegments().get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+
+    @Test
+    public void columnsLayoutTest() {
+        assertEquals(flightList.size(), columnarDataBase.getFlightCount());
+        assertEquals(10, columnarDataBase.getSegmentCount());
+        assertEquals(flightList.size(), columnarDataBase.getAll().size());
+        assertEquals(flightList.get(5).toString(), columnarDataBase.getAll().get(5).toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> columnarDataBase.getAll().get(flightList.size()));
+    }
+
+    @Test
+    public void sameResultAsListFilterTest() {
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .departure().greater_or_equals(threeDaysFromNowTime + Duration.ofHours(2).toSeconds()).less(threeDaysFromNowTime + Duration.ofHours(6).toSeconds())
+                .arrival().greater(threeDaysFromNowTime + Duration.ofHours(4).toSeconds())
+                .idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds())
+                .build();
+        assertEquals(flightsFilter.filter(flightList).toString(), flightsFilter.filter(columnarDataBase).toString());
+    }
+
+    @Test
+    public void removeInvalidFlightsTest() {
+        FlightsFilter flightsFilter = new FlightsFilterBuilder().removeInvalidFlights().build();
+        List<Flight> filteredFlights = flightsFilter.doParallel().filter(columnarDataBase);
+        assertEquals(5, filteredFlights.size());
+        assertFalse(filteredFlights.toString().contains(flightList.get(3).toString()));
+    }
+
+    @Test
+    public void zoneMapTest() {
+        ZoneMap zoneMap = columnarDataBase.createZoneMap(2);
+        assertEquals(3, zoneMap.getBlockCount());
+        assertFalse(zoneMap.isAllValid(1));
+        assertEquals(Duration.ofHours(1).toSeconds(), zoneMap.getMinGap(0));
+        assertEquals(Long.MIN_VALUE, zoneMap.getMaxGap(1));
+        assertEquals(Duration.ofHours(3).toSeconds(), zoneMap.getMaxGap(2));
+
+        FlightsFilter departedFilter = new FlightsFilterBuilder().departure().less(threeDaysFromNowTime).build();
+        assertEquals(List.of(flightList.get(2).toString()), departedFilter.filter(columnarDataBase).stream().map(Flight::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void zoneMapSameResultTest() {
+        ColumnarDataBase generated = new FlightGenerator(7)
+                .departures(threeDaysFromNowTime, Duration.ofDays(1).toSeconds())
+                .invalidSegmentRatio(0.001)
+                .createColumnarDataBase(20_000);
+        generated.createZoneMap(64);
+        List<FlightsFilter> flightsFilters = List.of(
+                new FlightsFilterBuilder().departure().greater_or_equals(threeDaysFromNowTime + Duration.ofHours(12).toSeconds()).build(),
+                new FlightsFilterBuilder().arrival().less(threeDaysFromNowTime + Duration.ofHours(2).toSeconds()).removeInvalidFlights().build(),
+                new FlightsFilterBuilder().idleOnTheGround().greater(Duration.ofHours(4).toSeconds()).build(),
+                new FlightsFilterBuilder().departure().less(threeDaysFromNowTime + Duration.ofDays(3).toSeconds()).build());
+        for (FlightsFilter flightsFilter : flightsFilters) {
+            assertEquals(flightsFilter.filter(generated.getAll()).toString(), flightsFilter.filter(generated).toString());
+            assertEquals(flightsFilter.filter(generated).toString(), flightsFilter.doParallel().filter(generated).toString());
+        }
+    }
+
+    @Test
+    public void epochKernelsTest() {
+        SplittableRandom random = new SplittableRandom(3);
+        long[] values = new long[300];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 50 == 0 ? (i % 100 == 0 ? Long.MIN_VALUE : Long.MAX_VALUE) : random.nextLong(-5, 5);
+        }
+        long[] mask = new long[EpochKernels.maskLength(values.length)];
+        for (Operators operators : Operators.values()) {
+            for (long operand : new long[]{0, 3, Long.MIN_VALUE, Long.MAX_VALUE}) {
+                EpochKernels.compare(values, 7, 290, operators, operand, mask);
+                for (int i = 7; i < 290; i++) {
+                    assertEquals(operators.test(values[i], operand), EpochKernels.anySet(mask, i - 7, i - 6), operators + " " + values[i] + " " + operand);
+                }
+                assertFalse(EpochKernels.anySet(mask, 283, 320));
+            }
+        }
+        long[] gaps = new long[4];
+        EpochKernels.gaps(new long[]{0, 10, 30, 31}, new long[]{5, 20, 29, 40}, 0, 4, gaps);
+        assertArrayEquals(new long[]{0, 5, 10, 2}, gaps);
+        long[] invalid = new long[1];
+        EpochKernels.invalidSegments(new long[]{0, 10, 30, 31}, new long[]{5, 20, 29, 40}, 0, 4, invalid);
+        assertEquals(0b100, invalid[0]);
+    }
+
+    @Test
+    public void vectorKernelsMatchScalarTest() {
+        // the vector kernels are only loaded with --add-modules jdk.incubator.vector, otherwise both calls are scalar
+        SplittableRandom random = new SplittableRandom(11);
+        long[] departures = random.longs(1000, -100, 100).toArray();
+        long[] arrivals = random.longs(1000, -100, 100).toArray();
+        for (int from : new int[]{0, 1, 3, 64, 131}) {
+            for (int to : new int[]{from, from + 1, from + 7, from + 64, from + 65, 1000}) {
+                int maskLength = EpochKernels.maskLength(to - from);
+                for (Operators operators : Operators.values()) {
+                    long[] vector = new long[maskLength];
+                    long[] scalar = new long[maskLength];
+                    EpochKernels.compare(departures, from, to, operators, 17, vector);
+                    EpochKernels.compareScalar(departures, from, to, operators, 17, scalar);
+                    assertArrayEquals(scalar, vector, operators + " " + from + ".." + to);
+                }
+                long[] vector = new long[maskLength];
+                long[] scalar = new long[maskLength];
+                EpochKernels.invalidSegments(departures, arrivals, from, to, vector);
+                EpochKernels.invalidSegmentsScalar(departures, arrivals, from, to, scalar);
+                assertArrayEquals(scalar, vector);
+                long[] vectorGaps = new long[to - from];
+                long[] scalarGaps = new long[to - from];
+                EpochKernels.gaps(departures, arrivals, from, to, vectorGaps);
+                EpochKernels.gapsScalar(departures, arrivals, from, to, scalarGaps);
+                assertArrayEquals(scalarGaps, vectorGaps);
+            }
+        }
+    }
+}
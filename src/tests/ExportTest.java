@@ -0,0 +1,109 @@
+package tests;
+
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.export.FlightExporter;
+import com.gridnine.testing.ingest.FlightParser;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExportTest {
+    private static final long START = 1_700_000_000L;
+
+    private static final DateTimeFormatter ISO_SECONDS = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss");
+
+    @TempDir
+    Path tempDir;
+
+    private final List<Flight> flightList = new FlightGenerator(23)
+            .departures(START, Duration.ofDays(400).toSeconds())
+            .segments(1, 4)
+            .invalidSegmentRatio(0.05)
+            .createFlights(3_000);
+
+    private static String export(FlightExporter exporter, List<Flight> flights) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(flights.size(), exporter.export(flights, Channels.newChannel(output)));
+        return output.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static List<Long> epochs(List<Flight> flights) {
+        return flights.stream()
+                .flatMap(flight -> flight.getSegments().stream())
+                .flatMap(segment -> Stream.of(segment.getDepartureDate(), segment.getArrivalDate()))
+                .map(time -> time.toEpochSecond(ZoneOffset.UTC))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void textMatchesToStringTest() throws IOException {
+        // a small buffer forces many flushes in the middle of rows
+        String text = export(new FlightExporter(FlightExporter.Format.TEXT, 128), flightList);
+        String expected = flightList.stream().map(flight -> flight + "\r\n").collect(Collectors.joining());
+        assertEquals(expected, text);
+    }
+
+    @Test
+    public void csvAndJsonRoundTripTest() throws IOException {
+        for (FlightExporter.Format format : new FlightExporter.Format[]{FlightExporter.Format.CSV, FlightExporter.Format.NDJSON}) {
+            String exported = export(new FlightExporter(format), flightList);
+            FlightParser.Format parserFormat = format == FlightExporter.Format.CSV ? FlightParser.Format.CSV : FlightParser.Format.NDJSON;
+            List<Flight> parsed = exported.lines()
+                    .map(line -> FlightParser.parse(line, parserFormat))
+                    .collect(Collectors.toList());
+            assertEquals(flightList.size(), parsed.size(), format.name());
+            assertEquals(epochs(flightList), epochs(parsed), format.name());
+        }
+    }
+
+    @Test
+    public void dateBoundariesTest() throws IOException {
+        long[] epochs = {
+                0, -1, 951_782_400L /* 2000-02-29 */, 4_107_542_399L /* 2100-02-28T23:59:59 */,
+                LocalDateTime.of(-44, 3, 15, 12, 0).toEpochSecond(ZoneOffset.UTC),
+                LocalDateTime.of(12_345, 12, 31, 23, 59, 59).toEpochSecond(ZoneOffset.UTC)
+        };
+        for (long epoch : epochs) {
+            LocalDateTime time = LocalDateTime.ofEpochSecond(epoch, 0, ZoneOffset.UTC);
+            Flight flight = new Flight(List.of(new Segment(time, time)));
+            String csv = export(new FlightExporter(FlightExporter.Format.CSV), List.of(flight));
+            String expected = time.format(ISO_SECONDS);
+            assertEquals(expected + "," + expected + "\r\n", csv, "epoch " + epoch);
+            assertEquals(epoch, FlightParser.parse(csv, FlightParser.Format.CSV).getSegments().get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC));
+        }
+    }
+
+    @Test
+    public void exportFilteredToFileTest() throws IOException {
+        FlightsFilter flightsFilter = new FlightsFilterBuilder().idleOnTheGround().greater(Duration.ofHours(2).toSeconds()).build();
+        Path path = tempDir.resolve("flights.csv");
+        Files.writeString(path, "stale content that is longer than nothing\r\n".repeat(100_000));
+        long count = new FlightExporter(FlightExporter.Format.CSV).export(flightsFilter.filter(flightList.iterator()), path);
+        List<Flight> expected = flightsFilter.filter(flightList);
+        assertEquals(expected.size(), count);
+        List<Flight> parsed = Files.readAllLines(path).stream()
+                .map(line -> FlightParser.parse(line, FlightParser.Format.CSV))
+                .collect(Collectors.toList());
+        assertEquals(epochs(expected), epochs(parsed));
+        assertThrows(IllegalArgumentException.class, () -> new FlightExporter(FlightExporter.Format.CSV, 16));
+    }
+}
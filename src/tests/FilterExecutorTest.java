@@ -0,0 +1,73 @@
+package tests;
+
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FilterExecutor;
+import com.gridnine.testing.utils.FilterMetrics;
+import com.gridnine.testing.utils.FilterStage;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FilterExecutorTest {
+    private final List<Flight> flightList = new FlightGenerator(42)
+            .departures(1_700_000_000L, Duration.ofDays(7).toSeconds())
+            .segments(1, 3)
+            .invalidSegmentRatio(0.1)
+            .groundTime(FlightGenerator.GroundTime.UNIFORM, Duration.ofHours(2).toSeconds())
+            .createFlights(50_000);
+
+    @Test
+    public void adaptiveExecutorTest() throws InterruptedException {
+        FlightsFilter idleFilter = new FlightsFilterBuilder().idleOnTheGround().greater(Duration.ofHours(3).toSeconds()).build();
+        List<Flight> expected = idleFilter.filter(flightList);
+        // the executor does not own a pool passed to it, so the test shuts it down
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (FilterExecutor executor = new FilterExecutor(pool, 1000, 0)) {
+            assertTrue(executor.isParallelFor(flightList));
+            assertFalse(executor.isParallelFor(flightList.subList(0, 1000)));
+            assertEquals(expected, idleFilter.doAdaptive(executor).filter(flightList));
+            assertEquals(expected.subList(0, 3), idleFilter.doAdaptive(executor).filter(flightList.subList(0, flightList.indexOf(expected.get(2)) + 1)));
+            assertTrue(executor.getFlightCostNanos() > 0);
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void metricsInParallelRunTest() throws InterruptedException {
+        FilterMetrics metrics = new FilterMetrics();
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .idleOnTheGround().greater(Duration.ofHours(3).toSeconds())
+                .removeInvalidFlights()
+                .build();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (FilterExecutor executor = new FilterExecutor(pool, 1000, 0)) {
+            List<Flight> filteredFlights = flightsFilter.withMetrics(metrics).doAdaptive(executor).filter(flightList);
+            assertEquals(flightsFilter.filter(flightList), filteredFlights);
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        // drops are counted by the worker threads in the same pass
+        long invalidFlights = flightList.stream().filter(flight -> !flight.getMetrics().isValid()).count();
+        assertEquals(invalidFlights, metrics.getDroppedFlights(FilterStage.VALIDITY));
+        assertEquals(flightList.size() - invalidFlights - metrics.getOutputFlights(), metrics.getDroppedFlights(FilterStage.IDLE));
+    }
+
+    @Test
+    public void defaultPoolTest() {
+        FlightsFilter idleFilter = new FlightsFilterBuilder().idleOnTheGround().greater(Duration.ofHours(3).toSeconds()).build();
+        try (FilterExecutor executor = new FilterExecutor()) {
+            assertEquals(idleFilter.filter(flightList), idleFilter.doAdaptive(executor).filter(flightList));
+        }
+    }
+}
@@ -2,6 +2,8 @@ package tests;
 
 import com.gridnine.testing.dataBase.DataBaseImpl;
 import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.utils.FilterMetrics;
+import com.gridnine.testing.utils.FilterStage;
 import com.gridnine.testing.utils.FlightsFilter;
 import com.gridnine.testing.domain.Flight;
 import com.gridnine.testing.utils.FlightsFilterBuilder;
@@ -9,7 +11,15 @@ import org.junit.jupiter.api.Test;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.jupiter.api.Assertions.*;
@@ -141,6 +151,73 @@ public class FilterTest {
         assertDoesNotThrow(()->new FlightsFilterBuilder().arrival().greater(threeDaysFromNowTime).build());
     }
 
+    @Test
+    void sharedFilterConcurrentTest() throws Exception {
+        FlightsFilter sharedFilter = new FlightsFilterBuilder()
+                .arrival().greater(threeDaysFromNowTime)
+                .idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds())
+                .removeInvalidFlights()
+                .build();
+        List<Flight> expected = sharedFilter.filter(flightList);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Flight>>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                int index = i;
+                futures.add(executorService.submit(() -> index % 2 == 0 ? sharedFilter.filter(flightList) : sharedFilter.doParallel().filter(flightList)));
+            }
+            for (Future<List<Flight>> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertFalse(sharedFilter.isParallel());
+    }
+
+    @Test
+    void lazyStreamFilterTest() {
+        FlightsFilter idleFilter = new FlightsFilterBuilder().idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds()).build();
+        AtomicInteger readFlights = new AtomicInteger();
+        Stream<Flight> endlessFlights = Stream.iterate(0, i -> i + 1)
+                .peek(i -> readFlights.incrementAndGet())
+                .map(i -> flightList.get(i % flightList.size()));
+        List<Flight> firstMatches = idleFilter.filter(endlessFlights).limit(3).collect(Collectors.toList());
+        assertEquals(List.of(flightList.get(4), flightList.get(5), flightList.get(4)), firstMatches);
+        assertEquals(11, readFlights.get());
+
+        Iterator<Flight> matches = idleFilter.filter(flightList.iterator());
+        assertEquals(flightList.get(4), matches.next());
+        assertEquals(flightList.get(5), matches.next());
+        assertFalse(matches.hasNext());
+    }
+
+    @Test
+    void filterMetricsTest() {
+        FilterMetrics metrics = new FilterMetrics();
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .arrival().greater_or_equals(threeDaysFromNowTime)
+                .idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds())
+                .removeInvalidFlights()
+                .build()
+                .withMetrics(metrics);
+        assertEquals(List.of(flightList.get(4), flightList.get(5)), flightsFilter.filter(flightList));
+        assertEquals(List.of(flightList.get(4), flightList.get(5)), flightsFilter.doParallel().filter(flightList));
+        assertEquals(2, metrics.getRuns());
+        assertEquals(12, metrics.getInputFlights());
+        assertEquals(4, metrics.getOutputFlights());
+        assertEquals(2, metrics.getDroppedFlights(FilterStage.ARRIVAL));
+        assertEquals(0, metrics.getDroppedFlights(FilterStage.DEPARTURE));
+        assertEquals(4, metrics.getDroppedFlights(FilterStage.IDLE));
+        assertEquals(2, metrics.getDroppedFlights(FilterStage.VALIDITY));
+        assertEquals(0.5, metrics.getStageSelectivity(FilterStage.IDLE), 1e-9);
+        assertTrue(metrics.getLatencyPercentileNanos(99) >= metrics.getLatencyPercentileNanos(50));
+
+        metrics.setEnabled(false);
+        flightsFilter.filter(flightList);
+        assertEquals(2, metrics.getRuns());
+    }
+
     @Test
     void doInParallelTest(){
         long ltTime = LocalDateTime.ofEpochSecond(threeDaysFromNowTime, 0, ZoneOffset.UTC).plusHours(5).toEpochSecond(ZoneOffset.UTC);
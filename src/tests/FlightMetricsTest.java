@@ -0,0 +1,146 @@
+package tests;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.OffHeapDataBase;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightMetrics;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.domain.SegmentView;
+import com.gridnine.testing.server.FlightsQueryParser;
+import com.gridnine.testing.utils.FilterStage;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.MultiFilterExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlightMetricsTest {
+    private static final long START = 1_700_000_000L;
+    private static final long HOUR = Duration.ofHours(1).toSeconds();
+
+    private final List<Flight> flightList = new FlightGenerator(25)
+            .departures(START, Duration.ofDays(10).toSeconds())
+            .segments(1, 5)
+            .invalidSegmentRatio(0.05)
+            .groundTime(FlightGenerator.GroundTime.EXPONENTIAL, 2 * HOUR)
+            .createFlights(10_000);
+
+    private static long gap(List<Segment> segments, int i) {
+        return segments.get(i).getDepartureDate().toEpochSecond(ZoneOffset.UTC)
+                - segments.get(i - 1).getArrivalDate().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    @Test
+    public void derivedMetricsTest() {
+        LocalDateTime departure = LocalDateTime.ofEpochSecond(START, 0, ZoneOffset.UTC);
+        Flight flight = new Flight(List.of(
+                new Segment(departure, departure.plusHours(2)),
+                new Segment(departure.plusHours(3), departure.plusHours(4)),
+                new Segment(departure.plusHours(7), departure.plusHours(6))));
+        FlightMetrics metrics = flight.getMetrics();
+        assertSame(metrics, flight.getMetrics());
+        assertEquals(3, metrics.getSegmentCount());
+        assertEquals(2, metrics.getGapCount());
+        assertEquals(4 * HOUR, metrics.getTotalGroundSeconds());
+        assertEquals(3 * HOUR, metrics.getMaxGapSeconds());
+        assertEquals(HOUR, metrics.getMinGapSeconds());
+        assertEquals(START, metrics.getFirstDepartureEpoch());
+        assertEquals(START + 6 * HOUR, metrics.getLastArrivalEpoch());
+        assertFalse(metrics.isValid());
+
+        // the flight keeps its own copy, a later change of the source list cannot make the metrics stale
+        List<Segment> source = new ArrayList<>(flight.getSegments());
+        Flight copied = new Flight(source);
+        FlightMetrics copiedMetrics = copied.getMetrics();
+        source.add(new Segment(departure.plusHours(20), departure.plusHours(21)));
+        assertEquals(3, copied.getSegments().size());
+        assertEquals(copiedMetrics.getSegmentCount(), copied.getSegments().size());
+        assertThrows(UnsupportedOperationException.class, () -> copied.getSegments().clear());
+
+        // immutable views are kept as they are: the off-heap store hands out flyweights over its buffers
+        SegmentView view = SegmentView.of(flight.getSegments().toArray(new Segment[0]));
+        assertSame(view, new Flight(view).getSegments());
+        Flight offHeapFlight = new OffHeapDataBase(List.of(flight)).getFlight(0);
+        assertTrue(offHeapFlight.getSegments() instanceof SegmentView);
+        assertEquals(flight.toString(), offHeapFlight.toString());
+        assertEquals(metrics.getTotalGroundSeconds(), offHeapFlight.getMetrics().getTotalGroundSeconds());
+
+        FlightMetrics empty = new Flight(List.of()).getMetrics();
+        assertEquals(0, empty.getGapCount());
+        assertEquals(0, empty.getTotalGroundSeconds());
+        assertTrue(empty.isValid());
+    }
+
+    @Test
+    public void idleConditionsMatchGapScanTest() {
+        // the idle conditions now read the extremes of FlightMetrics, the result must equal a scan of the gaps
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .idleOnTheGround().greater(2 * HOUR).less_or_equals(HOUR)
+                .removeInvalidFlights()
+                .build();
+        List<Flight> expected = flightList.stream().filter(flight -> {
+            List<Segment> segments = flight.getSegments();
+            boolean valid = segments.stream().noneMatch(segment -> segment.getArrivalDate().isBefore(segment.getDepartureDate()));
+            boolean greater = false;
+            boolean lessOrEquals = false;
+            for (int i = 1; i < segments.size(); i++) {
+                greater |= gap(segments, i) > 2 * HOUR;
+                lessOrEquals |= gap(segments, i) <= HOUR;
+            }
+            return valid && greater && lessOrEquals;
+        }).collect(Collectors.toList());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, flightsFilter.filter(flightList));
+        assertEquals(expected, flightsFilter.withStageOrder(FilterStage.IDLE, FilterStage.VALIDITY).filter(flightList));
+    }
+
+    private void assertSameOnEveryPath(FlightsFilter flightsFilter, Predicate<Flight> expectedPredicate, FilterStage... stageOrder) {
+        List<Flight> expected = flightList.stream().filter(expectedPredicate).collect(Collectors.toList());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, flightsFilter.filter(flightList));
+        assertEquals(expected, flightsFilter.doParallel().filter(flightList));
+        assertEquals(expected, flightsFilter.withStageOrder(stageOrder).filter(flightList));
+        assertEquals(expected, new MultiFilterExecutor(List.of(flightsFilter)).filter(flightList).get(0));
+        List<Long> expectedEpochs = expected.stream().map(flight -> flight.getMetrics().getTotalGroundSeconds()).collect(Collectors.toList());
+        assertEquals(expectedEpochs, flightsFilter.filter(new ColumnarDataBase(flightList)).stream()
+                .map(flight -> flight.getMetrics().getTotalGroundSeconds()).collect(Collectors.toList()));
+        assertEquals(expectedEpochs, flightsFilter.filter(new OffHeapDataBase(flightList)).stream()
+                .map(flight -> flight.getMetrics().getTotalGroundSeconds()).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void totalAndMaxIdleConditionsTest() {
+        FlightsFilter totalIdle = new FlightsFilterBuilder().totalIdleOnTheGround().greater_or_equals(5 * HOUR).build();
+        assertSameOnEveryPath(totalIdle, flight -> flight.getMetrics().getTotalGroundSeconds() >= 5 * HOUR, FilterStage.IDLE);
+
+        FlightsFilter maxIdle = new FlightsFilterBuilder().maxIdleOnTheGround().less(HOUR).build();
+        assertSameOnEveryPath(maxIdle, flight -> flight.getMetrics().getGapCount() > 0 && flight.getMetrics().getMaxGapSeconds() < HOUR, FilterStage.IDLE);
+
+        FlightsFilter combined = new FlightsFilterBuilder()
+                .departure().greater_or_equals(START + Duration.ofDays(2).toSeconds())
+                .totalIdleOnTheGround().less_or_equals(3 * HOUR)
+                .maxIdleOnTheGround().greater(HOUR)
+                .build();
+        long from = START + Duration.ofDays(2).toSeconds();
+        assertSameOnEveryPath(combined, flight -> flight.getSegments().stream()
+                .anyMatch(segment -> segment.getDepartureDate().toEpochSecond(ZoneOffset.UTC) >= from)
+                && flight.getMetrics().getTotalGroundSeconds() <= 3 * HOUR
+                && flight.getMetrics().getGapCount() > 0 && flight.getMetrics().getMaxGapSeconds() > HOUR,
+                FilterStage.IDLE, FilterStage.DEPARTURE);
+        assertEquals(FilterStage.IDLE, combined.rejectionStage(new Flight(List.of(new Segment(
+                LocalDateTime.ofEpochSecond(from, 0, ZoneOffset.UTC), LocalDateTime.ofEpochSecond(from + HOUR, 0, ZoneOffset.UTC))))));
+
+        assertEquals(combined.getSpec(), FlightsQueryParser.parse("departure=gte:" + from + "&totalIdle=lte:" + 3 * HOUR + "&maxIdle=gt:" + HOUR).getSpec());
+        assertNotEquals(totalIdle.getSpec(), new FlightsFilterBuilder().idleOnTheGround().greater_or_equals(5 * HOUR).build().getSpec());
+    }
+}
@@ -0,0 +1,40 @@
+package tests;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeneratorTest {
+    private FlightGenerator generator() {
+        return new FlightGenerator(42)
+                .departures(1_700_000_000L, Duration.ofDays(7).toSeconds())
+                .segments(1, 3)
+                .invalidSegmentRatio(0.1)
+                .groundTime(FlightGenerator.GroundTime.UNIFORM, Duration.ofHours(2).toSeconds());
+    }
+
+    @Test
+    public void sameSeedSameFlightsTest() {
+        List<Flight> flightList = generator().createFlights(1000);
+        assertEquals(flightList.toString(), generator().createFlights(1000).toString());
+        assertEquals(flightList.toString(), generator().createColumnarDataBase(1000).getAll().toString());
+        assertTrue(flightList.stream().allMatch(flight -> flight.getSegments().size() >= 1 && flight.getSegments().size() <= 3));
+    }
+
+    @Test
+    public void invalidSegmentRatioTest() {
+        ColumnarDataBase columnarDataBase = generator().createColumnarDataBase(10_000);
+        FlightsFilter invalidFilter = new FlightsFilterBuilder().removeInvalidFlights().build();
+        int invalidFlights = columnarDataBase.getFlightCount() - invalidFilter.filter(columnarDataBase).size();
+        assertTrue(invalidFlights > 1000 && invalidFlights < 3000, "invalid flights: " + invalidFlights);
+        assertThrows(IllegalArgumentException.class, () -> generator().invalidSegmentRatio(2));
+    }
+}
@@ -0,0 +1,142 @@
+package tests;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.dataBase.SegmentTimeIndex;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.interfaces.DataBase;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.Operators;
+import com.gridnine.testing.utils.TypeOfFlight;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexTest {
+    private final FlightsDB flightsDB = FlightsDB.getInstance(new DataBaseImpl());
+    private final List<Flight> flightList = flightsDB.getAll();
+    private final long threeDaysFromNowTime = flightList.get(0).getSegments().get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+
+    @Test
+    public void departureRangeTest() {
+        SegmentTimeIndex departureIndex = new SegmentTimeIndex(flightList, TypeOfFlight.DEPARTURE);
+        assertEquals(10, departureIndex.size());
+        assertEquals(BitSet.valueOf(new long[]{0b000100}), departureIndex.flightIds(Operators.LESS, threeDaysFromNowTime));
+        assertEquals(BitSet.valueOf(new long[]{0b111011}), departureIndex.flightIds(Operators.EQUALS, threeDaysFromNowTime));
+        assertEquals(BitSet.valueOf(new long[]{0b110010}), departureIndex.flightIds(Operators.GREATER, threeDaysFromNowTime));
+        assertTrue(departureIndex.flightIds(Operators.GREATER, threeDaysFromNowTime + Duration.ofDays(1).toSeconds()).isEmpty());
+    }
+
+    @Test
+    public void wideEpochRangeTest() {
+        // more than Integer.MAX_VALUE seconds between the segments, too wide for the packed sort
+        LocalDateTime early = LocalDateTime.of(1900, 1, 1, 0, 0);
+        LocalDateTime late = LocalDateTime.of(2100, 1, 1, 0, 0);
+        List<Flight> wideFlights = List.of(
+                new Flight(List.of(new Segment(late, late.plusHours(2)))),
+                new Flight(List.of(new Segment(early, early.plusHours(1)), new Segment(late, late.plusHours(1)))),
+                new Flight(List.of(new Segment(early, early.plusHours(3)))));
+        SegmentTimeIndex departureIndex = new SegmentTimeIndex(wideFlights, TypeOfFlight.DEPARTURE);
+        assertEquals(4, departureIndex.size());
+        long lateTime = late.toEpochSecond(ZoneOffset.UTC);
+        assertEquals(BitSet.valueOf(new long[]{0b110}), departureIndex.flightIds(Operators.LESS, lateTime));
+        assertEquals(BitSet.valueOf(new long[]{0b011}), departureIndex.flightIds(Operators.EQUALS, lateTime));
+        assertArrayEquals(new int[]{2, 4}, departureIndex.range(Operators.GREATER_OR_EQUALS, lateTime));
+        assertTrue(departureIndex.flightIds(Operators.GREATER, lateTime).isEmpty());
+    }
+
+    @Test
+    public void indexedFilterTest() {
+        flightsDB.createIndexes();
+        try {
+            FlightsFilter departedFilter = new FlightsFilterBuilder().departure().less(threeDaysFromNowTime).build();
+            assertEquals(departedFilter.filter(flightList), flightsDB.filter(departedFilter));
+            assertEquals(1, flightsDB.filter(departedFilter).size());
+
+            FlightsFilter combinedFilter = new FlightsFilterBuilder()
+                    .departure().greater(threeDaysFromNowTime + Duration.ofHours(4).toSeconds())
+                    .idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds())
+                    .build();
+            assertEquals(combinedFilter.filter(flightList), flightsDB.filter(combinedFilter));
+
+            FlightsFilter wideFilter = new FlightsFilterBuilder().arrival().greater_or_equals(threeDaysFromNowTime).build();
+            assertEquals(wideFilter.filter(flightList), flightsDB.filter(wideFilter));
+        } finally {
+            flightsDB.dropIndexes();
+        }
+        assertFalse(flightsDB.hasIndexes());
+    }
+
+    @Test
+    public void indexesOfOtherSnapshotTest() {
+        // the store changes behind the indexes, as between reading them and getAll() in a concurrent filter()
+        DataBaseImpl db = new DataBaseImpl(flightList);
+        FlightsDB indexedDB = FlightsDB.newInstance(db);
+        indexedDB.createIndexes();
+        db.remove(flightList.get(0));
+        db.add(flightList.get(0));
+        FlightsFilter departedFilter = new FlightsFilterBuilder().departure().less(threeDaysFromNowTime).build();
+        assertEquals(departedFilter.filter(db.getAll()), indexedDB.filter(departedFilter));
+        assertTrue(indexedDB.hasIndexes());
+    }
+
+    @Test
+    public void indexesAfterChangeTest() {
+        // DataBaseImpl returns a new snapshot after a change, LiveDataBase the same view
+        for (FlightsDB indexedDB : List.of(FlightsDB.newInstance(new DataBaseImpl(flightList)),
+                FlightsDB.newInstance(new LiveDataBase(flightList)))) {
+            indexedDB.createIndexes();
+            FlightsFilter departedFilter = new FlightsFilterBuilder().departure().less(threeDaysFromNowTime).build();
+            Flight departed = indexedDB.filter(departedFilter).get(0);
+            assertTrue(indexedDB.hasCurrentIndexes());
+
+            indexedDB.remove(departed);
+            assertTrue(indexedDB.hasIndexes());
+            assertFalse(indexedDB.hasCurrentIndexes());
+            assertTrue(indexedDB.filter(departedFilter).isEmpty());
+            assertTrue(indexedDB.hasCurrentIndexes());
+
+            indexedDB.add(departed);
+            assertEquals(1, indexedDB.filter(departedFilter).size());
+            assertTrue(indexedDB.hasCurrentIndexes());
+
+            indexedDB.dropIndexes();
+            assertFalse(indexedDB.hasCurrentIndexes());
+        }
+    }
+
+    private static final class LiveDataBase implements DataBase<Flight> {
+        private final List<Flight> flights;
+        private final List<Flight> view;
+
+        private LiveDataBase(List<Flight> flightList) {
+            flights = new ArrayList<>(flightList);
+            view = Collections.unmodifiableList(flights);
+        }
+
+        @Override
+        public List<Flight> getAll() {
+            return view;
+        }
+
+        @Override
+        public void add(Flight flight) {
+            flights.add(flight);
+        }
+
+        @Override
+        public boolean remove(Flight flight) {
+            return flights.remove(flight);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package tests;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.ingest.FlightIngestion;
+import com.gridnine.testing.ingest.FlightParser;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngestionTest {
+    private static final long START = 1_700_000_000L;
+
+    @TempDir
+    Path tempDir;
+
+    private static String csvLine(long... epochs) {
+        StringBuilder line = new StringBuilder();
+        for (long epoch : epochs) {
+            if (line.length() > 0)
+                line.append(',');
+            line.append(LocalDateTime.ofEpochSecond(epoch, 0, ZoneOffset.UTC));
+        }
+        return line.toString();
+    }
+
+    @Test
+    public void parseLinesTest() {
+        Flight csvFlight = FlightParser.parse("2024-01-01T10:00,2024-01-01T12:00," + (START + 7200) + "," + (START + 9000), FlightParser.Format.CSV);
+        assertEquals(2, csvFlight.getSegments().size());
+        assertEquals(LocalDateTime.parse("2024-01-01T12:00"), csvFlight.getSegments().get(0).getArrivalDate());
+        assertEquals(START + 9000, csvFlight.getSegments().get(1).getArrivalDate().toEpochSecond(ZoneOffset.UTC));
+        assertNull(FlightParser.parse("departure,arrival", FlightParser.Format.CSV));
+        assertNull(FlightParser.parse("  ", FlightParser.Format.NDJSON));
+
+        Flight jsonFlight = FlightParser.parse("{\"segments\":[{\"departure\":\"2024-01-01T10:00\",\"arrival\":\"2024-01-01T12:00\"},"
+                + "{\"departure\": " + START + ", \"arrival\": " + (START + 60) + "}]}", FlightParser.Format.NDJSON);
+        assertEquals(2, jsonFlight.getSegments().size());
+        assertEquals(START + 60, jsonFlight.getSegments().get(1).getArrivalDate().toEpochSecond(ZoneOffset.UTC));
+
+        assertThrows(IllegalArgumentException.class, () -> FlightParser.parse("2024-01-01T10:00", FlightParser.Format.CSV));
+        assertThrows(IllegalArgumentException.class, () -> FlightParser.parse("2024-01-01T10:00,tomorrow", FlightParser.Format.CSV));
+        assertThrows(IllegalArgumentException.class, () -> FlightParser.parse("{\"departure\":\"2024-01-01T10:00\"}", FlightParser.Format.NDJSON));
+        // numeric epochs beyond LocalDateTime.MAX
+        assertThrows(IllegalArgumentException.class, () -> FlightParser.parse("1704103200," + Long.MAX_VALUE, FlightParser.Format.CSV));
+    }
+
+    @Test
+    public void ingestAndSubscribeTest() throws Exception {
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(new ArrayList<>()));
+        FlightsFilter idleFilter = new FlightsFilterBuilder().idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds()).build();
+        List<Flight> received = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        StringBuilder csv = new StringBuilder("departure,arrival\n");
+        for (int i = 0; i < 1000; i++) {
+            long departure = START + i * 60L;
+            long ground = i % 10 == 0 ? 3 * 3600 : 600;
+            csv.append(csvLine(departure, departure + 3600, departure + 3600 + ground, departure + 7200 + ground)).append('\n');
+        }
+        CompletableFuture<Void> appended;
+        try (FlightIngestion ingestion = new FlightIngestion(flightsDB, 64, 2)) {
+            appended = ingestion.getAppended();
+            ingestion.subscribe(idleFilter, new Flow.Subscriber<Flight>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(Flight flight) {
+                    // delivered by the pool of the ingestion, not by the common pool
+                    assertTrue(Thread.currentThread().getName().startsWith("flight-ingestion-"), Thread.currentThread().getName());
+                    received.add(flight);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completed.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.complete(null);
+                }
+            });
+            assertEquals(1000, ingestion.ingest(new StringReader(csv.toString()), FlightParser.Format.CSV));
+        }
+        // closing the ingestion completes the appender and the subscription after the remaining batches
+        appended.get(10, TimeUnit.SECONDS);
+        completed.get(10, TimeUnit.SECONDS);
+        assertEquals(1000, flightsDB.getAll().size());
+        assertEquals(100, received.size());
+        assertEquals(idleFilter.filter(flightsDB.getAll()).toString(), received.toString());
+    }
+
+    @Test
+    public void ingestFileTest() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("flights.ndjson"),
+                "{\"segments\":[{\"departure\":\"2024-01-01T10:00\",\"arrival\":\"2024-01-01T12:00\"}]}\n"
+                        + "{\"segments\":[{\"departure\":\"2024-01-02T10:00\",\"arrival\":\"2024-01-02T12:00\"}]}\n"
+                        + "{\"segments\":[{\"departure\":\"broken\"}]}\n");
+        assertIngestionStopsAtLine3(file);
+    }
+
+    @Test
+    public void ingestEpochOutOfRangeTest() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("flights.csv"),
+                "1704103200,1704110400\n"
+                        + "1704189600,1704196800\n"
+                        + "1704103200,99999999999999999\n");
+        assertIngestionStopsAtLine3(file);
+    }
+
+    private void assertIngestionStopsAtLine3(Path file) throws Exception {
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(new ArrayList<>()));
+        CompletableFuture<Void> appended;
+        try (FlightIngestion ingestion = new FlightIngestion(flightsDB, 10, 1)) {
+            appended = ingestion.getAppended();
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> ingestion.ingest(file));
+            assertTrue(error.getMessage().contains("line 3"), error.getMessage());
+        }
+        appended.get(10, TimeUnit.SECONDS);
+        assertEquals(2, flightsDB.getAll().size());
+    }
+}
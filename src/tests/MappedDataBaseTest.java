@@ -0,0 +1,51 @@
+package tests;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.MappedDataBase;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightBuilder;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedDataBaseTest {
+    private final List<Flight> flightList = FlightBuilder.createFlights();
+    private final long threeDaysFromNowTime = flightList.get(0).getSegments().get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void writeAndMapTest() throws IOException {
+        Path flightFile = tempDir.resolve("flights.bin");
+        MappedDataBase.write(flightFile, new ColumnarDataBase(flightList));
+        MappedDataBase mappedDataBase = new MappedDataBase(flightFile);
+        assertEquals(flightList.size(), mappedDataBase.getFlightCount());
+        assertEquals(10, mappedDataBase.getSegmentCount());
+        assertEquals(flightList.toString(), mappedDataBase.getAll().toString());
+
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .departure().greater(threeDaysFromNowTime)
+                .idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds())
+                .removeInvalidFlights()
+                .build();
+        assertEquals(flightsFilter.filter(flightList).toString(), flightsFilter.filter(mappedDataBase).toString());
+        assertEquals(flightList.get(4).toString(), flightsFilter.stream(mappedDataBase).findFirst().orElseThrow().toString());
+    }
+
+    @Test
+    public void wrongFileTest() throws IOException {
+        Path textFile = Files.writeString(tempDir.resolve("flights.txt"), "not a flight file");
+        assertThrows(IOException.class, () -> new MappedDataBase(textFile));
+    }
+}
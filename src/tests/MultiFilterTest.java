@@ -0,0 +1,91 @@
+package tests;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.EpochKernels;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.MultiFilterExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiFilterTest {
+    private static final long START = 1_700_000_000L;
+
+    private final List<Flight> flightList = new FlightGenerator(13)
+            .departures(START, Duration.ofDays(10).toSeconds())
+            .segments(1, 5)
+            .invalidSegmentRatio(0.05)
+            .createFlights(20_000);
+
+    private List<FlightsFilter> flightsFilters() {
+        List<FlightsFilter> flightsFilters = new ArrayList<>();
+        for (int day = 0; day < 10; day++) {
+            flightsFilters.add(new FlightsFilterBuilder()
+                    .departure().greater_or_equals(START + Duration.ofDays(day).toSeconds())
+                    .arrival().less(START + Duration.ofDays(day + 1).toSeconds())
+                    .build());
+            flightsFilters.add(new FlightsFilterBuilder()
+                    .idleOnTheGround().greater(Duration.ofHours(day).toSeconds())
+                    .removeInvalidFlights()
+                    .build());
+        }
+        // same conditions as the first filter, evaluated once
+        flightsFilters.add(new FlightsFilterBuilder()
+                .arrival().less(START + Duration.ofDays(1).toSeconds())
+                .departure().greater_or_equals(START)
+                .build());
+        return flightsFilters;
+    }
+
+    @Test
+    public void sameResultsAsSeparateScansTest() {
+        List<FlightsFilter> flightsFilters = flightsFilters();
+        MultiFilterExecutor executor = new MultiFilterExecutor(flightsFilters);
+        List<List<Flight>> sequential = executor.filter(flightList);
+        List<List<Flight>> parallel = executor.doParallel().filter(flightList);
+        assertEquals(flightsFilters.size(), sequential.size());
+        for (int i = 0; i < flightsFilters.size(); i++) {
+            List<Flight> expected = flightsFilters.get(i).filter(flightList);
+            assertEquals(expected, sequential.get(i), "filter " + i);
+            assertEquals(expected, parallel.get(i), "filter " + i);
+        }
+        assertEquals(sequential.get(0), sequential.get(flightsFilters.size() - 1));
+        assertNotSame(sequential.get(0), sequential.get(flightsFilters.size() - 1));
+        assertEquals(List.of(), new MultiFilterExecutor(List.of()).filter(flightList));
+    }
+
+    @Test
+    public void precomputedGapsTest() {
+        ColumnarDataBase columns = new ColumnarDataBase(flightList);
+        int[] flightOffsets = columns.getFlightOffsets();
+        long[] gaps = new long[columns.getSegmentCount()];
+        for (FlightsFilter flightsFilter : flightsFilters()) {
+            for (int flight = 0; flight < 500; flight++) {
+                int from = flightOffsets[flight];
+                int to = flightOffsets[flight + 1];
+                EpochKernels.gaps(columns.getDepartureEpochs(), columns.getArrivalEpochs(), from, to, gaps);
+                assertEquals(flightsFilter.test(columns.getDepartureEpochs(), columns.getArrivalEpochs(), from, to),
+                        flightsFilter.test(columns.getDepartureEpochs(), columns.getArrivalEpochs(), gaps, from, to));
+            }
+        }
+    }
+
+    @Test
+    public void flightsDbFilterAllTest() {
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+        List<FlightsFilter> flightsFilters = flightsFilters();
+        List<List<Flight>> results = flightsDB.filterAll(flightsFilters);
+        for (int i = 0; i < flightsFilters.size(); i++) {
+            assertEquals(flightsDB.filter(flightsFilters.get(i)), results.get(i));
+        }
+    }
+}
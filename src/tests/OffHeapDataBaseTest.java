@@ -0,0 +1,56 @@
+package tests;
+
+import com.gridnine.testing.dataBase.ColumnarDataBase;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.OffHeapDataBase;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightBuilder;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapDataBaseTest {
+    private final List<Flight> flightList = FlightBuilder.createFlights();
+    private final long threeDaysFromNowTime = flightList.get(0).getSegments().get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+
+    @Test
+    public void sameFlightsTest() {
+        OffHeapDataBase offHeapDataBase = new OffHeapDataBase(flightList);
+        assertTrue(offHeapDataBase.getDepartureEpochs().isDirect());
+        assertEquals(flightList.size(), offHeapDataBase.getFlightCount());
+        assertEquals(10, offHeapDataBase.getSegmentCount());
+        assertEquals(flightList.toString(), offHeapDataBase.getAll().toString());
+        assertEquals(flightList.toString(), new OffHeapDataBase(new ColumnarDataBase(flightList)).getAll().toString());
+
+        Flight flight = offHeapDataBase.getFlight(5);
+        assertEquals(3, flight.getSegments().size());
+        assertEquals(flightList.get(5).getSegments().get(2).getArrivalDate().toEpochSecond(ZoneOffset.UTC), flight.getSegments().get(2).getArrivalDate().toEpochSecond(ZoneOffset.UTC));
+        assertThrows(IndexOutOfBoundsException.class, () -> flight.getSegments().get(3));
+        assertThrows(UnsupportedOperationException.class, () -> offHeapDataBase.add(flight));
+    }
+
+    @Test
+    public void filterOffHeapTest() {
+        List<Flight> generated = new FlightGenerator(11)
+                .departures(threeDaysFromNowTime, Duration.ofDays(2).toSeconds())
+                .segments(1, 4)
+                .invalidSegmentRatio(0.01)
+                .createFlights(5000);
+        OffHeapDataBase offHeapDataBase = new OffHeapDataBase(generated);
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .departure().greater(threeDaysFromNowTime + Duration.ofHours(12).toSeconds())
+                .idleOnTheGround().greater_or_equals(Duration.ofHours(1).toSeconds())
+                .removeInvalidFlights()
+                .build();
+        String expected = flightsFilter.filter(generated).toString();
+        assertEquals(expected, flightsFilter.filter(offHeapDataBase).toString());
+        assertEquals(expected, flightsFilter.doParallel().filter(offHeapDataBase).toString());
+        assertEquals(expected, flightsFilter.filter(offHeapDataBase.getAll()).toString());
+    }
+}
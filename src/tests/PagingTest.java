@@ -0,0 +1,95 @@
+package tests;
+
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FlightOrder;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.FlightsPage;
+import com.gridnine.testing.utils.PageCursor;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagingTest {
+    private static final long START = 1_700_000_000L;
+
+    private final List<Flight> flightList = new FlightGenerator(5)
+            .departures(START, Duration.ofDays(3).toSeconds())
+            .segments(1, 4)
+            .invalidSegmentRatio(0.05)
+            // single-segment flights share the ground time key 0, ties are ordered by position
+            .flightDuration(3600, 3 * 3600)
+            .createFlights(3000);
+    private final FlightsFilter flightsFilter = new FlightsFilterBuilder()
+            .departure().greater_or_equals(START + Duration.ofDays(1).toSeconds())
+            .removeInvalidFlights()
+            .build();
+
+    private List<Flight> fullySorted(FlightOrder order) {
+        List<Flight> matches = flightsFilter.filter(flightList);
+        List<Integer> positions = new ArrayList<>();
+        for (Flight flight : matches) {
+            positions.add(flightList.indexOf(flight));
+        }
+        return positions.stream()
+                .sorted(Comparator.<Integer>comparingLong(position -> order.key(flightList.get(position))).thenComparing(position -> position))
+                .map(flightList::get)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void topAndOffsetTest() {
+        for (FlightOrder order : FlightOrder.values()) {
+            List<Flight> expected = fullySorted(order);
+            assertEquals(expected.subList(0, 50), flightsFilter.top(flightList, order, 50), order.name());
+            assertEquals(expected.subList(100, 150), flightsFilter.filter(flightList, order, 100, 50), order.name());
+            assertEquals(expected.subList(expected.size() - 10, expected.size()), flightsFilter.filter(flightList, order, expected.size() - 10, 50));
+        }
+        assertEquals(List.of(), flightsFilter.top(flightList, FlightOrder.EARLIEST_DEPARTURE, 0));
+        assertThrows(IllegalArgumentException.class, () -> flightsFilter.filter(flightList, FlightOrder.EARLIEST_DEPARTURE, -1, 10));
+    }
+
+    @Test
+    public void keysetPagingTest() {
+        for (FlightOrder order : FlightOrder.values()) {
+            List<Flight> expected = fullySorted(order);
+            List<Flight> paged = new ArrayList<>();
+            PageCursor cursor = null;
+            int pages = 0;
+            do {
+                FlightsPage page = flightsFilter.page(flightList, order, cursor, 97);
+                paged.addAll(page.getFlights());
+                cursor = page.getNextCursor();
+                if (cursor != null)
+                    cursor = PageCursor.fromToken(cursor.toToken());
+                pages++;
+            } while (cursor != null);
+            assertEquals(expected, paged, order.name());
+            assertEquals((expected.size() + 96) / 97, pages);
+        }
+        PageCursor departureCursor = flightsFilter.page(flightList, FlightOrder.EARLIEST_DEPARTURE, null, 10).getNextCursor();
+        assertThrows(IllegalArgumentException.class, () -> flightsFilter.page(flightList, FlightOrder.LATEST_ARRIVAL, departureCursor, 10));
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.fromToken("garbage"));
+    }
+
+    @Test
+    public void unboundedLimitTest() {
+        // the heap is sized by the list, not by the limit
+        List<Flight> expected = fullySorted(FlightOrder.EARLIEST_DEPARTURE);
+        assertEquals(expected, flightsFilter.top(flightList, FlightOrder.EARLIEST_DEPARTURE, Integer.MAX_VALUE));
+        assertEquals(expected.subList(10, expected.size()), flightsFilter.filter(flightList, FlightOrder.EARLIEST_DEPARTURE, 10, Integer.MAX_VALUE));
+        assertEquals(List.of(), flightsFilter.filter(flightList, FlightOrder.EARLIEST_DEPARTURE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+
+        FlightsPage page = flightsFilter.page(flightList, FlightOrder.EARLIEST_DEPARTURE, null, Integer.MAX_VALUE);
+        assertEquals(expected, page.getFlights());
+        assertNull(page.getNextCursor());
+        assertEquals(List.of(), flightsFilter.page(List.of(), FlightOrder.EARLIEST_DEPARTURE, null, Integer.MAX_VALUE).getFlights());
+    }
+}
@@ -0,0 +1,122 @@
+package tests;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.EquiDepthHistogram;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.FlightStatistics;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FilterPlanner;
+import com.gridnine.testing.utils.FilterStage;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.Operators;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PlannerTest {
+    private static final long START = 1_700_000_000L;
+
+    private final List<Flight> flightList = new FlightGenerator(7)
+            .departures(START, Duration.ofDays(30).toSeconds())
+            .segments(1, 4)
+            .invalidSegmentRatio(0.05)
+            .groundTime(FlightGenerator.GroundTime.EXPONENTIAL, Duration.ofHours(2).toSeconds())
+            .createFlights(5000);
+
+    @Test
+    public void histogramSelectivityTest() {
+        EquiDepthHistogram histogram = new EquiDepthHistogram(LongStream.range(0, 1000).toArray(), 16);
+        assertEquals(0.25, histogram.selectivity(Operators.LESS, 250), 0.02);
+        assertEquals(0.75, histogram.selectivity(Operators.GREATER_OR_EQUALS, 250), 0.02);
+        assertEquals(0, histogram.selectivity(Operators.LESS, 0));
+        assertEquals(1, histogram.selectivity(Operators.LESS_OR_EQUALS, 999));
+        assertEquals(0, histogram.selectivity(Operators.EQUALS, 5000));
+        assertTrue(histogram.selectivity(Operators.EQUALS, 500) > 0);
+        assertEquals(0, new EquiDepthHistogram(new long[0], 16).selectivity(Operators.GREATER, 0));
+    }
+
+    @Test
+    public void narrowDepartureGoesFirstTest() {
+        FlightStatistics statistics = new FlightStatistics(flightList);
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .departure().greater_or_equals(START + Duration.ofDays(10).toSeconds())
+                .departure().less(START + Duration.ofDays(10).plusHours(2).toSeconds())
+                .arrival().greater(START)
+                .build();
+        FilterStage[] plan = FilterPlanner.plan(flightsFilter.getSpec(), statistics);
+        assertArrayEquals(new FilterStage[]{FilterStage.DEPARTURE, FilterStage.ARRIVAL}, plan);
+        assertEquals(flightsFilter.filter(flightList), flightsFilter.planned(statistics).filter(flightList));
+    }
+
+    @Test
+    public void metricStagesGoFirstTest() {
+        FlightStatistics statistics = new FlightStatistics(flightList);
+        // idle (without EQUALS) and validity compare precomputed FlightMetrics instead of scanning segments
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .departure().greater_or_equals(START + Duration.ofDays(10).toSeconds())
+                .departure().less(START + Duration.ofDays(10).plusHours(2).toSeconds())
+                .idleOnTheGround().greater(Duration.ofHours(1).toSeconds())
+                .removeInvalidFlights()
+                .build();
+        FilterStage[] plan = FilterPlanner.plan(flightsFilter.getSpec(), statistics);
+        assertEquals(3, plan.length);
+        assertEquals(FilterStage.DEPARTURE, plan[2]);
+        assertEquals(flightsFilter.filter(flightList), flightsFilter.planned(statistics).filter(flightList));
+    }
+
+    @Test
+    public void stageOrderKeepsResultTest() {
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .arrival().greater(START + Duration.ofDays(3).toSeconds())
+                .departure().less(START + Duration.ofDays(20).toSeconds())
+                .idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds())
+                .removeInvalidFlights()
+                .build();
+        List<Flight> expected = flightsFilter.filter(flightList);
+        assertEquals(expected, flightsFilter.withStageOrder(FilterStage.IDLE, FilterStage.DEPARTURE, FilterStage.ARRIVAL, FilterStage.VALIDITY).filter(flightList));
+        assertEquals(expected, flightsFilter.withStageOrder(FilterStage.VALIDITY, FilterStage.ARRIVAL, FilterStage.DEPARTURE, FilterStage.IDLE).doParallel().filter(flightList));
+        assertThrows(IllegalArgumentException.class, () -> flightsFilter.withStageOrder(FilterStage.IDLE, FilterStage.ARRIVAL));
+        assertThrows(IllegalArgumentException.class, () -> flightsFilter.withStageOrder(FilterStage.IDLE, FilterStage.IDLE));
+    }
+
+    @Test
+    public void flightsDbUsesStatisticsTest() {
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .departure().greater(START + Duration.ofDays(29).toSeconds())
+                .idleOnTheGround().less(Duration.ofMinutes(30).toSeconds())
+                .build();
+        List<Flight> expected = flightsFilter.filter(flightList);
+        assertNull(flightsDB.getStatistics());
+        FlightStatistics statistics = flightsDB.analyze();
+        assertEquals(flightList.size(), statistics.getFlightCount());
+        assertEquals(expected, flightsDB.filter(flightsFilter));
+        flightsDB.createIndexes();
+        assertEquals(expected, flightsDB.filter(flightsFilter));
+    }
+
+    @Test
+    public void staleStatisticsAreRebuiltInBackgroundTest() throws InterruptedException {
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+        FlightsFilter flightsFilter = new FlightsFilterBuilder().idleOnTheGround().less(Duration.ofMinutes(30).toSeconds()).build();
+        FlightStatistics statistics = flightsDB.analyze();
+        int removed = flightList.size() / 5;
+        for (Flight flight : flightList.subList(0, removed)) {
+            flightsDB.remove(flight);
+        }
+        // the filter is planned with the stale statistics and does not wait for the new ones
+        assertEquals(flightsFilter.filter(flightList.subList(removed, flightList.size())), flightsDB.filter(flightsFilter));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (flightsDB.getStatistics() == statistics && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+        assertEquals(flightList.size() - removed, flightsDB.getStatistics().getFlightCount());
+    }
+}
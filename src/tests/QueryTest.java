@@ -0,0 +1,161 @@
+package tests;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import com.gridnine.testing.utils.FlightsQuery;
+import com.gridnine.testing.utils.RoaringBitmap;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryTest {
+    private static final long START = 1_700_000_000L;
+
+    private final List<Flight> flightList = new FlightGenerator(21)
+            .departures(START, Duration.ofDays(10).toSeconds())
+            .segments(1, 4)
+            .invalidSegmentRatio(0.05)
+            .createFlights(20_000);
+
+    private static RoaringBitmap toBitmap(BitSet bitSet) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        bitSet.stream().forEach(bitmap::add);
+        return bitmap;
+    }
+
+    private static void assertSameValues(BitSet expected, RoaringBitmap actual) {
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+        assertEquals(expected.cardinality(), actual.cardinality());
+    }
+
+    @Test
+    public void bitmapOperationsTest() {
+        Random random = new Random(5);
+        int universe = 300_000;
+        // sparse values give array containers, dense ones bitmap containers
+        BitSet sparse = new BitSet();
+        BitSet dense = new BitSet();
+        for (int i = 0; i < universe; i++) {
+            if (random.nextInt(100) == 0)
+                sparse.set(i);
+            if (random.nextInt(3) != 0)
+                dense.set(i);
+        }
+        RoaringBitmap sparseBitmap = toBitmap(sparse);
+        RoaringBitmap denseBitmap = toBitmap(dense);
+        assertSameValues(sparse, sparseBitmap);
+        assertTrue(sparseBitmap.getSizeInBytes() < denseBitmap.getSizeInBytes());
+
+        BitSet and = (BitSet) sparse.clone();
+        and.and(dense);
+        assertSameValues(and, sparseBitmap.and(denseBitmap));
+        assertSameValues(and, denseBitmap.and(sparseBitmap));
+        BitSet or = (BitSet) sparse.clone();
+        or.or(dense);
+        assertSameValues(or, sparseBitmap.or(denseBitmap));
+        BitSet andNot = (BitSet) dense.clone();
+        andNot.andNot(sparse);
+        assertSameValues(andNot, denseBitmap.andNot(sparseBitmap));
+        BitSet not = (BitSet) dense.clone();
+        not.flip(0, universe);
+        assertSameValues(not, denseBitmap.not(universe));
+
+        for (int i = 0; i < 1000; i++) {
+            int value = random.nextInt(universe);
+            assertEquals(dense.get(value), denseBitmap.contains(value));
+        }
+        assertEquals(toBitmap(sparse), sparseBitmap.or(new RoaringBitmap()));
+        assertTrue(RoaringBitmap.range(0, 0).isEmpty());
+        assertEquals(70_000, RoaringBitmap.range(1000, 71_000).cardinality());
+        assertThrows(IllegalArgumentException.class, () -> new RoaringBitmap().add(-1));
+    }
+
+    @Test
+    public void queryCompositionTest() {
+        long dayA = START + Duration.ofDays(2).toSeconds();
+        long dayB = START + Duration.ofDays(6).toSeconds();
+        long day = Duration.ofDays(1).toSeconds();
+        long twoHours = Duration.ofHours(2).toSeconds();
+        // departs in window A or B, and not idle over 2h
+        FlightsQuery query = new FlightsFilterBuilder()
+                .group(new FlightsFilterBuilder()
+                        .departure().greater_or_equals(dayA).less(dayA + day)
+                        .or()
+                        .departure().greater_or_equals(dayB).less(dayB + day))
+                .not().idleOnTheGround().greater(twoHours)
+                .buildQuery();
+        FlightsFilter windowA = new FlightsFilterBuilder().departure().greater_or_equals(dayA).less(dayA + day).build();
+        FlightsFilter windowB = new FlightsFilterBuilder().departure().greater_or_equals(dayB).less(dayB + day).build();
+        FlightsFilter longIdle = new FlightsFilterBuilder().idleOnTheGround().greater(twoHours).build();
+        List<Flight> expected = flightList.stream()
+                .filter(flight -> (windowA.test(flight) || windowB.test(flight)) && !longIdle.test(flight))
+                .collect(Collectors.toList());
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, query.filter(flightList));
+        assertEquals(3, query.getFilters().size());
+
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+        assertEquals(expected, flightsDB.filter(query));
+        assertEquals(3, flightsDB.getCachedBitmapCount());
+        assertEquals(expected, flightsDB.filter(query));
+        assertEquals(3, flightsDB.getCachedBitmapCount());
+
+        // only the invalid flights
+        FlightsQuery invalid = new FlightsFilterBuilder().not().removeInvalidFlights().buildQuery();
+        FlightsFilter valid = new FlightsFilterBuilder().removeInvalidFlights().build();
+        assertEquals(flightList.stream().filter(flight -> !valid.test(flight)).collect(Collectors.toList()),
+                flightsDB.filter(invalid));
+
+        flightsDB.add(flightList.get(0));
+        assertEquals(0, flightsDB.getCachedBitmapCount());
+        assertEquals(expected.size() + (query.filter(List.of(flightList.get(0))).size()), flightsDB.filter(query).size());
+    }
+
+    @Test
+    public void boundedBitmapCacheTest() {
+        FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+        assertThrows(IllegalArgumentException.class, () -> flightsDB.setBitmapCacheLimits(0, 1));
+        flightsDB.setBitmapCacheLimits(2, Long.MAX_VALUE);
+        List<FlightsQuery> queries = new ArrayList<>();
+        for (int hours = 1; hours <= 4; hours++) {
+            queries.add(new FlightsFilterBuilder().not().idleOnTheGround().greater(Duration.ofHours(hours).toSeconds()).buildQuery());
+        }
+        for (FlightsQuery query : queries) {
+            assertEquals(query.filter(flightList), flightsDB.filter(query));
+        }
+        assertEquals(2, flightsDB.getCachedBitmapCount());
+
+        // the bytes are bounded as well, a bitmap over the limit is not cached at all
+        long bytes = flightsDB.getCachedBitmapBytes();
+        assertTrue(bytes > 0);
+        flightsDB.setBitmapCacheLimits(2, bytes - 1);
+        assertTrue(flightsDB.getCachedBitmapCount() < 2);
+        assertTrue(flightsDB.getCachedBitmapBytes() <= bytes - 1);
+        flightsDB.setBitmapCacheLimits(2, 1);
+        assertEquals(queries.get(0).filter(flightList), flightsDB.filter(queries.get(0)));
+        assertEquals(0, flightsDB.getCachedBitmapCount());
+        assertEquals(0, flightsDB.getCachedBitmapBytes());
+    }
+
+    @Test
+    public void wrongUsageQueryBuilderTest() {
+        assertThrows(IllegalStateException.class, () -> new FlightsFilterBuilder()
+                .departure().less(START).or().arrival().less(START).build());
+        assertThrows(IllegalStateException.class, () -> new FlightsFilterBuilder()
+                .departure().less(START).not().buildQuery());
+        assertThrows(IllegalStateException.class, () -> new FlightsFilterBuilder()
+                .departure().less(START).or().buildQuery());
+        assertThrows(IllegalStateException.class, () -> new FlightsFilterBuilder().not().not());
+    }
+}
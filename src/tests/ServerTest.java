@@ -0,0 +1,124 @@
+package tests;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightBuilder;
+import com.gridnine.testing.export.FlightExporter;
+import com.gridnine.testing.server.FlightsQueryParser;
+import com.gridnine.testing.server.FlightsQueryServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerTest {
+    private final List<Flight> flightList = FlightBuilder.createFlights();
+    private final long threeDaysFromNowTime = flightList.get(0).getSegments().get(0).getDepartureDate().toEpochSecond(ZoneOffset.UTC);
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private FlightsQueryServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new FlightsQueryServer(FlightsDB.newInstance(new DataBaseImpl(flightList)),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, Duration.ofMillis(100));
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(Duration.ZERO);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getPort() + path;
+    }
+
+    private static String ndjson(List<Flight> flights) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FlightExporter(FlightExporter.Format.NDJSON).export(flights, Channels.newChannel(out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void singleQueryTest() throws Exception {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(url("/flights?departure=lt:" + threeDaysFromNowTime))));
+        assertEquals(200, response.statusCode());
+        assertEquals("application/x-ndjson; charset=utf-8", response.headers().firstValue("Content-Type").orElse(null));
+        // the same lines as an NDJSON export, seconds included
+        assertEquals(ndjson(List.of(flightList.get(2))), response.body());
+
+        response = send(HttpRequest.newBuilder(URI.create(url("/flights?idle=gte:7200&invalid=remove"))));
+        assertEquals(2, response.body().split("\"segments\"").length - 1);
+    }
+
+    @Test
+    void batchAndErrorsTest() throws Exception {
+        String body = "departure=lt:" + threeDaysFromNowTime + "\n?idle=gte:7200\n";
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(url("/flights/batch"))).POST(HttpRequest.BodyPublishers.ofString(body)));
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"query\":0,\"count\":1}\r\n" + ndjson(List.of(flightList.get(2)))
+                + "{\"query\":1,\"count\":2}\r\n" + ndjson(FlightsQueryParser.parse("idle=gte:7200").filter(flightList)), response.body());
+
+        assertEquals(400, send(HttpRequest.newBuilder(URI.create(url("/flights?arrival=almost:1")))).statusCode());
+        assertEquals(400, send(HttpRequest.newBuilder(URI.create(url("/flights")))).statusCode());
+        assertEquals(405, send(HttpRequest.newBuilder(URI.create(url("/flights/batch")))).statusCode());
+        assertEquals(404, send(HttpRequest.newBuilder(URI.create(url("/flightsXYZ?idle=gte:7200")))).statusCode());
+        assertEquals(404, send(HttpRequest.newBuilder(URI.create(url("/flights/batch/extra"))).POST(HttpRequest.BodyPublishers.ofString(body))).statusCode());
+    }
+
+    /**
+     * Sends the headers and a part of the body of a batch request, the handler holds its permit while it waits for the rest.
+     */
+    private Socket startStalledBatch() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        String request = "POST /flights/batch HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Length: 1000\r\n\r\nidle=gte:7200";
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+        return socket;
+    }
+
+    private HttpResponse<String> awaitStatus(int status) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        HttpResponse<String> response;
+        do {
+            response = send(HttpRequest.newBuilder(URI.create(url("/flights?idle=gte:7200"))));
+        } while (response.statusCode() != status && System.nanoTime() - deadline < 0);
+        return response;
+    }
+
+    @Test
+    void backPressureTest() throws Exception {
+        // both permits of the server are taken by requests whose bodies never complete
+        try (Socket first = startStalledBatch(); Socket second = startStalledBatch()) {
+            HttpResponse<String> response = awaitStatus(503);
+            assertEquals(503, response.statusCode());
+            assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+            assertTrue(response.body().contains("too many concurrent queries"));
+            assertTrue(first.isConnected() && second.isConnected());
+        }
+        // closing the connections ends the stalled requests and returns their permits
+        assertEquals(200, awaitStatus(200).statusCode());
+    }
+}
@@ -0,0 +1,120 @@
+package tests;
+
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.ShardedFlightsDB;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardTest {
+    private static final long START_EPOCH = 1_700_000_000L;
+    private final List<Flight> flightList = new FlightGenerator(11)
+            .departures(START_EPOCH, Duration.ofDays(10).toSeconds())
+            .createFlights(5000);
+
+    @Test
+    public void scatterGatherTest() {
+        List<FlightsFilter> flightsFilters = List.of(
+                new FlightsFilterBuilder().departure().less(START_EPOCH + Duration.ofDays(1).toSeconds()).build(),
+                new FlightsFilterBuilder().arrival().greater(START_EPOCH + Duration.ofDays(5).toSeconds())
+                        .idleOnTheGround().greater(Duration.ofHours(2).toSeconds()).build(),
+                new FlightsFilterBuilder().removeInvalidFlights().build(),
+                new FlightsFilterBuilder().departure().less(START_EPOCH).build());
+        for (ShardedFlightsDB.Partitioning partitioning : ShardedFlightsDB.Partitioning.values()) {
+            try (ShardedFlightsDB shardedFlightsDB = new ShardedFlightsDB(flightList, 4, partitioning)) {
+                assertEquals(flightList.size(), shardedFlightsDB.size());
+                for (int shard = 0; shard < shardedFlightsDB.getShardCount(); shard++) {
+                    int shardSize = shardedFlightsDB.getShard(shard).getAll().size();
+                    assertTrue(shardSize > 1000 && shardSize < 1500, partitioning + " shard size " + shardSize);
+                }
+                for (FlightsFilter flightsFilter : flightsFilters) {
+                    assertEquals(flightsFilter.filter(flightList), shardedFlightsDB.filter(flightsFilter));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void changesThroughShardedDBTest() {
+        FlightsFilter flightsFilter = new FlightsFilterBuilder().arrival().greater(START_EPOCH + Duration.ofDays(5).toSeconds())
+                .idleOnTheGround().greater(Duration.ofHours(1).toSeconds()).build();
+        List<Flight> newFlights = new FlightGenerator(12)
+                .departures(START_EPOCH - Duration.ofDays(5).toSeconds(), Duration.ofDays(20).toSeconds())
+                .createFlights(500);
+        for (ShardedFlightsDB.Partitioning partitioning : ShardedFlightsDB.Partitioning.values()) {
+            List<Flight> expected = new ArrayList<>(flightList);
+            try (ShardedFlightsDB shardedFlightsDB = new ShardedFlightsDB(flightList, 4, partitioning)) {
+                assertThrows(UnsupportedOperationException.class, () -> shardedFlightsDB.getShard(0).add(newFlights.get(0)));
+                assertThrows(UnsupportedOperationException.class, () -> shardedFlightsDB.getShard(0).getAll().clear());
+                for (int i = 0; i < newFlights.size(); i++) {
+                    Flight newFlight = newFlights.get(i);
+                    switch (i % 3) {
+                        case 0:
+                            shardedFlightsDB.add(newFlight);
+                            expected.add(newFlight);
+                            break;
+                        case 1:
+                            // the new flight may lie outside the time range of the shard of the old one
+                            assertTrue(shardedFlightsDB.update(expected.get(i * 7), newFlight));
+                            expected.set(i * 7, newFlight);
+                            break;
+                        default:
+                            assertTrue(shardedFlightsDB.remove(expected.remove(i * 5)));
+                            break;
+                    }
+                    if (i % 50 == 0)
+                        assertEquals(flightsFilter.filter(expected), shardedFlightsDB.filter(flightsFilter));
+                }
+                assertEquals(expected.remove(flightList.get(0)), shardedFlightsDB.remove(flightList.get(0)));
+                assertFalse(shardedFlightsDB.remove(flightList.get(0)));
+                assertEquals(expected.size(), shardedFlightsDB.size());
+                assertEquals(flightsFilter.filter(expected), shardedFlightsDB.filter(flightsFilter));
+            }
+        }
+    }
+
+    @Test
+    public void duplicateInstancesTest() {
+        // the same instance stored several times: every change acts on its first occurrence, as in DataBaseImpl
+        FlightsFilter flightsFilter = new FlightsFilterBuilder().arrival().greater(START_EPOCH).build();
+        List<Flight> newFlights = new FlightGenerator(14)
+                .departures(START_EPOCH, Duration.ofDays(20).toSeconds())
+                .createFlights(10);
+        for (ShardedFlightsDB.Partitioning partitioning : ShardedFlightsDB.Partitioning.values()) {
+            List<Flight> expected = new ArrayList<>(flightList.subList(0, 100));
+            expected.add(expected.get(3));
+            try (ShardedFlightsDB shardedFlightsDB = new ShardedFlightsDB(expected, 4, partitioning)) {
+                Flight repeated = expected.get(3);
+                for (int i = 0; i < 3; i++) {
+                    shardedFlightsDB.add(repeated);
+                    expected.add(repeated);
+                }
+                assertEquals(flightsFilter.filter(expected), shardedFlightsDB.filter(flightsFilter));
+
+                assertTrue(shardedFlightsDB.remove(repeated));
+                expected.remove(repeated);
+                assertEquals(flightsFilter.filter(expected), shardedFlightsDB.filter(flightsFilter));
+
+                assertTrue(shardedFlightsDB.update(repeated, newFlights.get(0)));
+                expected.set(expected.indexOf(repeated), newFlights.get(0));
+                assertTrue(shardedFlightsDB.update(repeated, newFlights.get(0)));
+                expected.set(expected.indexOf(repeated), newFlights.get(0));
+                assertEquals(flightsFilter.filter(expected), shardedFlightsDB.filter(flightsFilter));
+
+                while (expected.remove(repeated)) {
+                    assertTrue(shardedFlightsDB.remove(repeated));
+                }
+                assertFalse(shardedFlightsDB.remove(repeated));
+                assertEquals(expected.size(), shardedFlightsDB.size());
+                assertEquals(flightsFilter.filter(expected), shardedFlightsDB.filter(flightsFilter));
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package tests;
+
+import com.gridnine.testing.dataBase.FlightGenerator;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.dataBase.SnapshotDataBase;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.utils.FlightsFilter;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotDataBaseTest {
+    private static final long START = 1_700_000_000L;
+
+    private final List<Flight> flightList = new FlightGenerator(22)
+            .departures(START, Duration.ofDays(10).toSeconds())
+            .segments(1, 4)
+            .invalidSegmentRatio(0.05)
+            .createFlights(5_000);
+
+    @Test
+    public void sameContentAsListTest() {
+        SnapshotDataBase snapshotDataBase = new SnapshotDataBase(flightList.subList(0, 1000));
+        List<Flight> expected = new ArrayList<>(flightList.subList(0, 1000));
+        Random random = new Random(3);
+        for (int i = 1000; i < flightList.size(); i++) {
+            Flight flight = flightList.get(i);
+            switch (random.nextInt(4)) {
+                case 0:
+                    Flight removed = expected.remove(random.nextInt(expected.size()));
+                    assertTrue(snapshotDataBase.remove(removed));
+                    assertFalse(snapshotDataBase.remove(removed));
+                    break;
+                case 1:
+                    int index = random.nextInt(expected.size());
+                    assertTrue(snapshotDataBase.update(expected.get(index), flight));
+                    expected.set(index, flight);
+                    break;
+                default:
+                    snapshotDataBase.add(flight);
+                    expected.add(flight);
+            }
+        }
+        assertEquals(expected, snapshotDataBase.getAll());
+        List<Flight> batch = flightList.subList(0, 600);
+        long version = snapshotDataBase.getVersion();
+        snapshotDataBase.addAll(batch);
+        expected.addAll(batch);
+        assertEquals(expected, snapshotDataBase.getAll());
+        assertEquals(version + 1, snapshotDataBase.getVersion());
+    }
+
+    @Test
+    public void snapshotIsolationTest() {
+        SnapshotDataBase snapshotDataBase = new SnapshotDataBase(flightList);
+        FlightsDB flightsDB = FlightsDB.newInstance(snapshotDataBase);
+        List<Flight> before = flightsDB.getAll();
+        flightsDB.remove(flightList.get(10));
+        flightsDB.add(flightList.get(10));
+        assertEquals(flightList, before);
+        assertEquals(flightList.size(), flightsDB.getAll().size());
+        assertSame(flightList.get(10), flightsDB.getAll().get(flightList.size() - 1));
+        assertThrows(UnsupportedOperationException.class, () -> before.add(flightList.get(0)));
+    }
+
+    @Test
+    public void concurrentReadsAndWritesTest() throws Exception {
+        SnapshotDataBase snapshotDataBase = new SnapshotDataBase(flightList.subList(0, 1000));
+        FlightsFilter flightsFilter = new FlightsFilterBuilder()
+                .idleOnTheGround().greater(Duration.ofHours(1).toSeconds())
+                .removeInvalidFlights()
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int writer = 0; writer < 2; writer++) {
+                int from = 1000 + writer * 2000;
+                writers.add(executor.submit(() -> {
+                    for (Flight flight : flightList.subList(from, from + 2000)) {
+                        snapshotDataBase.add(flight);
+                    }
+                }));
+            }
+            Future<Integer> reader = executor.submit(() -> {
+                int reads = 0;
+                while (writing.get() || reads == 0) {
+                    List<Flight> snapshot = snapshotDataBase.getAll();
+                    int size = snapshot.size();
+                    // the snapshot does not change while the filter runs
+                    List<Flight> filtered = flightsFilter.doParallel().filter(snapshot);
+                    assertEquals(size, snapshot.size());
+                    assertEquals(flightsFilter.filter(snapshot), filtered);
+                    reads++;
+                }
+                return reads;
+            });
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(5000, snapshotDataBase.getAll().size());
+        assertEquals(4001, snapshotDataBase.getVersion());
+        assertTrue(snapshotDataBase.getAll().containsAll(flightList));
+    }
+}
@@ -0,0 +1,103 @@
+package tests;
+
+import com.gridnine.testing.dataBase.DataBaseImpl;
+import com.gridnine.testing.dataBase.FlightsDB;
+import com.gridnine.testing.dataBase.FlightsView;
+import com.gridnine.testing.domain.Flight;
+import com.gridnine.testing.domain.FlightBuilder;
+import com.gridnine.testing.domain.Segment;
+import com.gridnine.testing.utils.FlightsFilterBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ViewTest {
+    private final List<Flight> flightList = FlightBuilder.createFlights();
+    private final FlightsDB flightsDB = FlightsDB.newInstance(new DataBaseImpl(flightList));
+
+    @Test
+    public void incrementalViewTest() {
+        FlightsView idleView = flightsDB.registerView(new FlightsFilterBuilder().idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds()).build());
+        assertEquals(List.of(flightList.get(4), flightList.get(5)), idleView.getResult());
+        assertSame(idleView.getResult(), idleView.getResult());
+
+        LocalDateTime departure = LocalDateTime.now();
+        Flight longStopFlight = new Flight(List.of(new Segment(departure, departure.plusHours(1)), new Segment(departure.plusHours(4), departure.plusHours(5))));
+        flightsDB.add(longStopFlight);
+        assertEquals(List.of(flightList.get(4), flightList.get(5), longStopFlight), idleView.getResult());
+
+        flightsDB.remove(flightList.get(4));
+        assertEquals(List.of(flightList.get(5), longStopFlight), idleView.getResult());
+
+        assertTrue(flightsDB.update(flightList.get(5), flightList.get(0)));
+        assertEquals(List.of(longStopFlight), idleView.getResult());
+        assertFalse(flightsDB.update(flightList.get(5), flightList.get(0)));
+
+        flightsDB.unregisterView(idleView);
+        flightsDB.remove(longStopFlight);
+        assertEquals(1, idleView.size());
+        assertEquals(5, flightsDB.getAll().size());
+    }
+
+    @Test
+    public void updateKeepsSourceOrderTest() {
+        FlightsView idleView = flightsDB.registerView(new FlightsFilterBuilder().idleOnTheGround().greater_or_equals(Duration.ofHours(2).toSeconds()).build());
+        LocalDateTime departure = LocalDateTime.now();
+        Flight longStopFlight = new Flight(List.of(new Segment(departure, departure.plusHours(1)), new Segment(departure.plusHours(4), departure.plusHours(5))));
+        // the replaced flight stays on its place in getAll(), so it must stay before the later matches in the view
+        assertTrue(flightsDB.update(flightList.get(0), longStopFlight));
+        assertEquals(List.of(longStopFlight, flightList.get(4), flightList.get(5)), idleView.getResult());
+        assertEquals(idleView.getFlightsFilter().filter(flightsDB.getAll()), idleView.getResult());
+
+        flightsDB.remove(longStopFlight);
+        flightsDB.add(longStopFlight);
+        assertEquals(idleView.getFlightsFilter().filter(flightsDB.getAll()), idleView.getResult());
+    }
+
+    @Test
+    public void snapshotTest() {
+        DataBaseImpl dataBase = new DataBaseImpl(flightList);
+        List<Flight> snapshot = dataBase.getAll();
+        assertSame(snapshot, dataBase.getAll());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(flightList.get(0)));
+
+        assertTrue(dataBase.remove(flightList.get(1)));
+        assertFalse(dataBase.remove(flightList.get(1)));
+        assertTrue(dataBase.update(flightList.get(3), flightList.get(1)));
+        dataBase.add(flightList.get(0));
+        // the old snapshot is not changed by the writes
+        assertEquals(flightList, snapshot);
+        assertEquals(List.of(flightList.get(0), flightList.get(2), flightList.get(1), flightList.get(4), flightList.get(5), flightList.get(0)),
+                dataBase.getAll());
+
+        // the first occurrence of a repeated flight is removed first
+        assertTrue(dataBase.remove(flightList.get(0)));
+        assertEquals(List.of(flightList.get(2), flightList.get(1), flightList.get(4), flightList.get(5), flightList.get(0)), dataBase.getAll());
+        assertTrue(dataBase.remove(flightList.get(0)));
+        assertFalse(dataBase.remove(flightList.get(0)));
+    }
+
+    @Test
+    public void compactionTest() {
+        DataBaseImpl dataBase = new DataBaseImpl(List.of());
+        List<Flight> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Flight flight = new Flight(List.of());
+            dataBase.add(flight);
+            expected.add(flight);
+        }
+        for (int i = 0; i < 900; i++) {
+            assertTrue(dataBase.remove(expected.remove(i % expected.size())));
+        }
+        assertEquals(expected, dataBase.getAll());
+        Flight replacement = new Flight(List.of());
+        assertTrue(dataBase.update(expected.get(50), replacement));
+        expected.set(50, replacement);
+        assertEquals(expected, dataBase.getAll());
+    }
+}
@@ -0,0 +1,136 @@
+package com.gridnine.testing.utils;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Ядра EpochKernels на Vector API (jdk.incubator.vector): значения колонки сравниваются по SPECIES_PREFERRED
+ * элементов за инструкцию, результат сравнения (VectorMask) превращается в биты маски смешиванием с весами дорожек
+ * и свёрткой OR по 64 сегментам: VectorMask.toLong() в JDK 17 не интринсифицирован и медленнее скалярного цикла.
+ * Все операторы сводятся к сравнению LT, другие сравнения не становятся константой для C2 и не векторизуются.
+ * Лежит в отдельном корне исходников src/vector: он компилируется в тот же каталог классов, что и src/com, командой
+ * {@code javac --add-modules jdk.incubator.vector -cp <классы src/com> -d <те же классы> $(find src/vector -name '*.java')}.
+ * EpochKernels загружает класс по имени, только если модуль подключён при запуске, иначе используются скалярные ядра.
+ */
+final class VectorEpochKernels implements EpochKernels.Kernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    // LANE_BITS[c] holds the bits of the lanes of the c-th vector of a 64-bit word: 1L << (c * LANES + lane)
+    private static final LongVector[] LANE_BITS = laneBits();
+
+    private static LongVector[] laneBits() {
+        LongVector[] laneBits = new LongVector[Long.SIZE / LANES];
+        long[] bits = new long[LANES];
+        for (int chunk = 0; chunk < laneBits.length; chunk++) {
+            for (int lane = 0; lane < LANES; lane++) {
+                bits[lane] = 1L << (chunk * LANES + lane);
+            }
+            laneBits[chunk] = LongVector.fromArray(SPECIES, bits, 0);
+        }
+        return laneBits;
+    }
+
+    /**
+     * Every operator is reduced to "value < operand" with a shifted operand or a negated result:
+     * the comparison passed to LongVector.compare() must be a constant for C2 to intrinsify it,
+     * and a comparison parameter of the hot loop never is.
+     */
+    @Override
+    public void compare(long[] values, int from, int to, Operators operators, long operand, long[] mask) {
+        boolean maxOperand = operand == Long.MAX_VALUE;
+        int word = 0;
+        for (int start = from; start < to; start += Long.SIZE) {
+            int end = Math.min(to, start + Long.SIZE);
+            long range = end - start == Long.SIZE ? -1L : (1L << (end - start)) - 1;
+            long bits;
+            switch (operators) {
+                case LESS:
+                    bits = less(values, start, end, operand);
+                    break;
+                case GREATER_OR_EQUALS:
+                    bits = ~less(values, start, end, operand);
+                    break;
+                case GREATER:
+                    bits = maxOperand ? 0 : ~less(values, start, end, operand + 1);
+                    break;
+                case LESS_OR_EQUALS:
+                    bits = maxOperand ? -1L : less(values, start, end, operand + 1);
+                    break;
+                case EQUALS:
+                    bits = ~less(values, start, end, operand) & (maxOperand ? -1L : less(values, start, end, operand + 1));
+                    break;
+                default:
+                    throw new IllegalStateException("VectorEpochKernels: unknown operator " + operators);
+            }
+            mask[word++] = bits & range;
+        }
+    }
+
+    /**
+     * @return bits of the segments start..end (at most 64) whose value is less than the operand
+     */
+    private static long less(long[] values, int start, int end, long operand) {
+        long bits = 0;
+        if (end - start == Long.SIZE) {
+            LongVector operands = LongVector.broadcast(SPECIES, operand);
+            // a static zero vector is not a constant for C2 and stops the intrinsics, so it is created here
+            LongVector zero = LongVector.zero(SPECIES);
+            LongVector lanes = zero;
+            for (int chunk = 0; chunk < LANE_BITS.length; chunk++) {
+                VectorMask<Long> matches = LongVector.fromArray(SPECIES, values, start + chunk * LANES).compare(VectorOperators.LT, operands);
+                lanes = lanes.or(zero.blend(LANE_BITS[chunk], matches));
+            }
+            bits = lanes.reduceLanes(VectorOperators.OR);
+        } else {
+            // the last word of the range is shorter than 64 segments
+            for (int i = start; i < end; i++) {
+                if (values[i] < operand)
+                    bits |= 1L << (i - start);
+            }
+        }
+        return bits;
+    }
+
+    @Override
+    public void invalidSegments(long[] departureEpochs, long[] arrivalEpochs, int from, int to, long[] mask) {
+        int word = 0;
+        int start = from;
+        for (; start <= to - Long.SIZE; start += Long.SIZE) {
+            LongVector zero = LongVector.zero(SPECIES);
+            LongVector bits = zero;
+            for (int chunk = 0; chunk < LANE_BITS.length; chunk++) {
+                int i = start + chunk * LANES;
+                VectorMask<Long> invalid = LongVector.fromArray(SPECIES, arrivalEpochs, i)
+                        .compare(VectorOperators.LT, LongVector.fromArray(SPECIES, departureEpochs, i));
+                bits = bits.or(zero.blend(LANE_BITS[chunk], invalid));
+            }
+            mask[word++] = bits.reduceLanes(VectorOperators.OR);
+        }
+        if (start < to) {
+            long bits = 0;
+            for (int i = start; i < to; i++) {
+                if (arrivalEpochs[i] < departureEpochs[i])
+                    bits |= 1L << (i - start);
+            }
+            mask[word] = bits;
+        }
+    }
+
+    @Override
+    public void gaps(long[] departureEpochs, long[] arrivalEpochs, int from, int to, long[] gaps) {
+        if (to <= from)
+            return;
+        gaps[0] = 0;
+        int i = from + 1;
+        for (; i <= to - LANES; i += LANES) {
+            LongVector.fromArray(SPECIES, departureEpochs, i)
+                    .sub(LongVector.fromArray(SPECIES, arrivalEpochs, i - 1))
+                    .intoArray(gaps, i - from);
+        }
+        for (; i < to; i++) {
+            gaps[i - from] = departureEpochs[i] - arrivalEpochs[i - 1];
+        }
+    }
+}